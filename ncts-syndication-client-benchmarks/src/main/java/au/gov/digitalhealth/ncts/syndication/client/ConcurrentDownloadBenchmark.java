@@ -0,0 +1,96 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * Time to download hundreds of small entries from a {@link LocalNctsServer} at
+ * once, with a platform thread per entry from the client's pool or a virtual
+ * thread per entry, over each {@link TransportType}. Run with
+ * <code>-prof gc</code> to compare the memory allocated by each mode, the
+ * virtual threads mode needs Java 21 or later and the JDK transport Java 11 or
+ * later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentDownloadBenchmark {
+
+    @Param({ "platform", "virtual" })
+    public String threads;
+
+    @Param({ "200", "800" })
+    public int entries;
+
+    @Param({ "APACHE", "JDK" })
+    public TransportType transport;
+
+    private LocalNctsServer server;
+    private SyndicationClient client;
+    private File outputDirectory;
+
+    @Setup
+    public void startServer() throws IOException {
+        if ("virtual".equals(threads) && !SyndicationClient.isVirtualThreadsSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, run with -p threads=platform");
+        }
+        if (!transport.isSupported()) {
+            throw new IllegalStateException(transport + " transport is not supported, run with -p transport=APACHE");
+        }
+        server = new LocalNctsServer(new SyntheticFeedGenerator().setEntries(entries).setArtefactSize(16 * 1024))
+            .setCacheArtefacts(true);
+        outputDirectory = Files.createTempDirectory("concurrent-download-benchmark").toFile();
+        // both modes may have a thread and a connection for every entry
+        client = new SyndicationClient(server.getFeedUrl(), server.getTokenUrl(), outputDirectory, "benchmark",
+            "benchmark").setParallelDownloads(true)
+                .setMaxConcurrentDownloads(entries)
+                .setMaxConnections(entries)
+                .setMaxConnectionsPerRoute(entries)
+                .setVirtualThreads("virtual".equals(threads))
+                .setTransportType(transport)
+                .setFeedTimeToLive(TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteDownloads() throws IOException {
+        FileUtils.cleanDirectory(outputDirectory);
+    }
+
+    @TearDown
+    public void stopServer() throws IOException {
+        client.close();
+        server.close();
+        FileUtils.deleteDirectory(outputDirectory);
+    }
+
+    @Benchmark
+    public Map<String, List<DownloadResult>> downloadAll()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        return client.download(false, SyntheticFeedGenerator.CATEGORY_PREFIX + 0);
+    }
+}
@@ -0,0 +1,106 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * Time to download many small entries from a {@link LocalNctsServer} one after
+ * another, over a pooled client whose connection and token are reused for
+ * every entry, or with a new client per request as before connections were
+ * pooled, where every token and download request opens its own connection.
+ * The server is plain HTTP, so the difference is the TCP handshakes and token
+ * requests saved, over HTTPS each connection would also cost a TLS handshake.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+// without TCP_NODELAY the JDK HTTP server delays responses on kept-alive
+// connections until the client acknowledges the headers
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class ConnectionReuseBenchmark {
+
+    @Param({ "pooled", "per-request" })
+    public String connections;
+
+    @Param({ "100" })
+    public int entries;
+
+    @Param({ "4" })
+    public int kilobytes;
+
+    private LocalNctsServer server;
+    private List<Entry> feedEntries;
+    private NctsFileDownloader pooledDownloader;
+    private File outputDirectory;
+
+    @Setup
+    public void startServer() throws IOException {
+        server = new LocalNctsServer(new SyntheticFeedGenerator().setEntries(entries)
+            .setArtefactSize(kilobytes * 1024L)).setCacheArtefacts(true);
+        feedEntries = new ArrayList<>(new NctsFeedReader(server.getFeedUrl())
+            .getMatchingEntries(SyntheticFeedGenerator.CATEGORY_PREFIX + 0));
+        pooledDownloader = new NctsFileDownloader(URI.create(server.getTokenUrl()), "benchmark", "benchmark",
+            new TransferEngine(), PooledHttpClientFactory.create());
+        outputDirectory = Files.createTempDirectory("connection-reuse-benchmark").toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteDownloads() throws IOException {
+        FileUtils.cleanDirectory(outputDirectory);
+    }
+
+    @TearDown
+    public void stopServer() throws IOException {
+        pooledDownloader.close();
+        server.close();
+        FileUtils.deleteDirectory(outputDirectory);
+    }
+
+    @Benchmark
+    public List<DownloadResult> downloadEach()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        List<DownloadResult> results = new ArrayList<>(feedEntries.size());
+        for (Entry entry : feedEntries) {
+            if ("pooled".equals(connections)) {
+                results.add(pooledDownloader.downloadEntry(entry, outputDirectory));
+            } else {
+                try (CloseableHttpClient client = HttpClients.custom()
+                    .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE)
+                    .build();
+                        NctsFileDownloader downloader = new NctsFileDownloader(URI.create(server.getTokenUrl()),
+                            "benchmark", "benchmark", new TransferEngine(), client)) {
+                    results.add(downloader.downloadEntry(entry, outputDirectory));
+                }
+            }
+        }
+        return results;
+    }
+}
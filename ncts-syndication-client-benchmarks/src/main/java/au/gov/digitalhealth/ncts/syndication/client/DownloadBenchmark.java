@@ -0,0 +1,83 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * End to end time to download and verify an entry from a
+ * {@link LocalNctsServer}, as a single stream or in concurrent segments, over
+ * pooled connections. {@link ConnectionReuseBenchmark} compares pooled
+ * connections with a client per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+// without TCP_NODELAY the JDK HTTP server delays responses on kept-alive
+// connections until the client acknowledges the headers
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class DownloadBenchmark {
+
+    @Param({ "1", "64" })
+    public int megabytes;
+
+    @Param({ "1", "4" })
+    public int segments;
+
+    private LocalNctsServer server;
+    private NctsFileDownloader downloader;
+    private Entry entry;
+    private File outputDirectory;
+
+    @Setup
+    public void startServer() throws IOException {
+        server = new LocalNctsServer(new SyntheticFeedGenerator().setEntries(1)
+            .setArtefactSize(megabytes * 1024L * 1024L)).setCacheArtefacts(true);
+        entry = new NctsFeedReader(server.getFeedUrl())
+            .getLatestMatchingEntry(SyntheticFeedGenerator.CATEGORY_PREFIX + 0);
+        downloader = new NctsFileDownloader(URI.create(server.getTokenUrl()), "benchmark", "benchmark",
+            new TransferEngine(), PooledHttpClientFactory.create())
+                .setSegments(segments)
+                .setMinSegmentedLength(0);
+        outputDirectory = Files.createTempDirectory("download-benchmark").toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteDownload() throws IOException {
+        FileUtils.cleanDirectory(outputDirectory);
+    }
+
+    @TearDown
+    public void stopServer() throws IOException {
+        downloader.close();
+        server.close();
+        FileUtils.deleteDirectory(outputDirectory);
+    }
+
+    @Benchmark
+    public DownloadResult download() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        return downloader.downloadEntry(entry, outputDirectory);
+    }
+}
@@ -0,0 +1,63 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to read and index a feed from a local file, keeping every category or
+ * only one of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeedReaderBenchmark {
+
+    private static final int CATEGORIES = 20;
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int entries;
+
+    private File feed;
+    private String feedUrl;
+
+    @Setup
+    public void writeFeed() throws IOException {
+        feed = new SyntheticFeedGenerator().setEntries(entries)
+            .setCategories(CATEGORIES)
+            .writeFeed(File.createTempFile("feed-", ".xml"), "http://localhost");
+        feedUrl = feed.toURI().toString();
+    }
+
+    @TearDown
+    public void deleteFeed() throws IOException {
+        Files.deleteIfExists(feed.toPath());
+    }
+
+    @Benchmark
+    public NctsFeedReader readAllCategories() throws IOException {
+        return new NctsFeedReader(feedUrl);
+    }
+
+    @Benchmark
+    public NctsFeedReader readOneCategory() throws IOException {
+        return new NctsFeedReader(feedUrl, null, (SyntheticFeedGenerator.CATEGORY_PREFIX + 0)::equals);
+    }
+}
@@ -0,0 +1,94 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * Time to check that a file already in the output directory matches its entry,
+ * by hashing it or by trusting the verification cache, so nothing is
+ * downloaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationBenchmark {
+
+    @Param({ "16", "512" })
+    public int megabytes;
+
+    private NctsFileDownloader hashingDownloader;
+    private NctsFileDownloader cachingDownloader;
+    private Entry entry;
+    private File outputDirectory;
+
+    @Setup
+    public void writeFile() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        outputDirectory = Files.createTempDirectory("verification-benchmark").toFile();
+        File file = new File(outputDirectory, "entry.zip");
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(megabytes);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < megabytes; i++) {
+                random.nextBytes(block);
+                digest.update(block);
+                out.write(block);
+            }
+        }
+        entry = new Entry("urn:uuid:verification", Hex.encodeHexString(digest.digest()),
+            "http://localhost/entry.zip", file.length(), "http://snomed.info/sct/32506021000036107",
+            "http://snomed.info/sct/32506021000036107/version/20180101", "SCT_RF2_FULL", "scheme");
+
+        // the token is never requested as the existing file always matches
+        URI tokenUrl = URI.create("http://localhost/token");
+        hashingDownloader = new NctsFileDownloader(tokenUrl, "benchmark", "benchmark").setForceVerification(true);
+        cachingDownloader = new NctsFileDownloader(tokenUrl, "benchmark", "benchmark");
+        cachingDownloader.downloadEntry(entry, outputDirectory);
+    }
+
+    @TearDown
+    public void deleteFile() throws IOException {
+        hashingDownloader.close();
+        cachingDownloader.close();
+        FileUtils.deleteDirectory(outputDirectory);
+    }
+
+    @Benchmark
+    public DownloadResult hashExistingFile()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        return hashingDownloader.downloadEntry(entry, outputDirectory);
+    }
+
+    @Benchmark
+    public DownloadResult trustVerificationCache()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        return cachingDownloader.downloadEntry(entry, outputDirectory);
+    }
+}
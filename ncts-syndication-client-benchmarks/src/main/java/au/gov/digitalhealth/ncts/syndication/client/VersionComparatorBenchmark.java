@@ -0,0 +1,81 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.gov.digitalhealth.ncts.syndication.client.SyntheticFeedGenerator.VersionFormat;
+
+/**
+ * Cost of comparing entry versions in each supported format, both for a single
+ * comparison and for finding the latest of a category's entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionComparatorBenchmark {
+
+    private static final int ENTRIES = 1000;
+
+    @Param({ "SNOMED", "NUMBER", "SEMANTIC" })
+    public String format;
+
+    private final NctsEntryVersionComparator comparator = new NctsEntryVersionComparator();
+    private Entry[] entries;
+    private Entry older;
+    private Entry newer;
+
+    @Setup
+    public void createEntries() throws IOException {
+        File feed = new SyntheticFeedGenerator().setEntries(ENTRIES)
+            .setVersionFormat(VersionFormat.valueOf(format))
+            .writeFeed(File.createTempFile("feed-", ".xml"), "http://localhost");
+        List<Entry> ordered;
+        try {
+            ordered = new ArrayList<>(new NctsFeedReader(feed.toURI().toString())
+                .getEntriesByContentItemIdentifier(SyntheticFeedGenerator.CATEGORY_PREFIX + 0)
+                .values()
+                .iterator()
+                .next());
+        } finally {
+            Files.delete(feed.toPath());
+        }
+        newer = ordered.get(ENTRIES / 2);
+        older = ordered.get(ENTRIES / 2 + 1);
+        Collections.shuffle(ordered, new Random(ENTRIES));
+        entries = ordered.toArray(new Entry[ENTRIES]);
+    }
+
+    @Benchmark
+    public int compare() {
+        return comparator.compare(newer, older);
+    }
+
+    @Benchmark
+    public Entry[] sort() {
+        Entry[] sorted = entries.clone();
+        Arrays.sort(sorted, comparator);
+        return sorted;
+    }
+}
@@ -2,7 +2,13 @@ package au.gov.digitalhealth.ncts.syndication.client;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -13,6 +19,7 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
 import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.VerificationFailureException;
 
 /**
  * Command line executable class that downloads entries from the NCTS syndication feed based on the specified categories
@@ -28,6 +35,13 @@ public class DownloadSyndicationArtefact {
     private static final String OUTPUT_DIRECTORY_OPTION = "out";
     private static final String TOKEN_URL_OPTION = "token";
     private static final String FEED_URL_OPTION = "feed";
+    private static final String VERIFY_OPTION = "verify";
+    private static final String TRANSPORT_OPTION = "transport";
+    private static final String SERVE_OPTION = "serve";
+    private static final String INTERVAL_OPTION = "interval";
+    private static final String PUBLIC_URL_OPTION = "publicUrl";
+    private static final String MIRROR_OPTION = "mirror";
+    private static final long DEFAULT_SYNC_INTERVAL = 60;
 
     static SyndicationClient client = new SyndicationClient();
 
@@ -72,8 +86,26 @@ public class DownloadSyndicationArtefact {
                     .setOutputDirectory(outputDirectory)
                     .setClientId(clientId)
                     .setClientSecret(clientSecret);
+                if (line.hasOption(TRANSPORT_OPTION)) {
+                    client.setTransportType(getTransportType(line.getOptionValue(TRANSPORT_OPTION)));
+                }
+                if (line.hasOption(MIRROR_OPTION)) {
+                    client.setMirrors(getMirrors(line.getOptionValues(MIRROR_OPTION)));
+                }
 
-                client.download(latestOnly, categories);
+                if (line.hasOption(VERIFY_OPTION)) {
+                    VerificationReport report = client.verify(latestOnly, categories);
+                    System.out.println(report);
+                    if (!report.isValid()) {
+                        throw new VerificationFailureException(report);
+                    }
+                } else if (line.hasOption(SERVE_OPTION)) {
+                    serve(latestOnly, categories, (int) getNumber(line, SERVE_OPTION, 0),
+                        getNumber(line, INTERVAL_OPTION, DEFAULT_SYNC_INTERVAL),
+                        line.getOptionValue(PUBLIC_URL_OPTION, null));
+                } else {
+                    client.download(latestOnly, categories);
+                }
             }
         } catch (ParseException exp) {
             System.err.println("Invalid arguments:" + exp.getMessage());
@@ -82,6 +114,66 @@ public class DownloadSyndicationArtefact {
         }
     }
 
+    /**
+     * Synchronises the categories into the output directory and serves them as a
+     * mirror, synchronising them again every interval, until the process is
+     * stopped
+     */
+    private static void serve(boolean latestOnly, String[] categories, int port, long interval, String publicUrl)
+            throws NoSuchAlgorithmException, IOException, HashValidationFailureException, ParseException {
+        SyndicationMirror mirror = new SyndicationMirror(client, latestOnly, categories);
+        try {
+            mirror.setPublicBaseUrl(publicUrl);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+        try {
+            mirror.sync();
+            mirror.start(port).scheduleSync(interval, TimeUnit.MINUTES);
+            System.out.println("Serving mirror feed at " + mirror.getFeedUrl() + " and token endpoint at "
+                    + mirror.getTokenUrl());
+            Runtime.getRuntime().addShutdownHook(new Thread(mirror::close));
+            mirror.awaitClose();
+        } finally {
+            mirror.close();
+        }
+    }
+
+    private static long getNumber(CommandLine line, String option, long defaultValue) throws ParseException {
+        if (!line.hasOption(option)) {
+            return defaultValue;
+        }
+        try {
+            long value = Long.parseLong(line.getOptionValue(option));
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new ParseException("Value for " + option + " is out of range " + value);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new ParseException("Value for " + option + " is not a number " + line.getOptionValue(option));
+        }
+    }
+
+    private static List<URI> getMirrors(String[] values) throws ParseException {
+        List<URI> mirrors = new ArrayList<>();
+        for (String value : values) {
+            try {
+                mirrors.add(new URI(value));
+            } catch (URISyntaxException e) {
+                throw new ParseException("Invalid mirror URL " + value);
+            }
+        }
+        return mirrors;
+    }
+
+    private static TransportType getTransportType(String name) throws ParseException {
+        try {
+            return TransportType.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Unknown transport " + name);
+        }
+    }
+
     private static void printHelp(Options options) {
         HelpFormatter formatter = new HelpFormatter();
         formatter.printHelp("java " + DownloadSyndicationArtefact.class.getName(), options);
@@ -140,6 +232,54 @@ public class DownloadSyndicationArtefact {
                 .required(false)
                 .build());
 
+        options.addOption(
+            Option.builder(VERIFY_OPTION)
+                .desc(
+                    "If provided, this option will cause the process to verify the files already in the output directory against the feed entries for each category specified, reporting missing and corrupt files rather than downloading anything")
+                .hasArg(false)
+                .required(false)
+                .build());
+
+        options.addOption(
+            Option.builder(TRANSPORT_OPTION)
+                .desc(
+                    "HTTP client to make requests with, 'apache' (the default) or 'jdk' for the JDK HTTP client using HTTP/2, which needs Java 11 or later")
+                .hasArg()
+                .required(false)
+                .build());
+
+        options.addOption(
+            Option.builder(MIRROR_OPTION)
+                .desc(
+                    "Base URL of a mirror to try for each entry before the URL in the feed, either an http or https URL or a file URL of a directory, in the order to try them")
+                .numberOfArgs(Option.UNLIMITED_VALUES)
+                .required(false)
+                .build());
+
+        options.addOption(
+            Option.builder(SERVE_OPTION)
+                .desc(
+                    "If provided, this option will cause the process to download the entries for each category specified to the output directory and serve them as a mirror on the port specified, with a feed and token endpoint other clients can use in place of the NCTS, until the process is stopped")
+                .hasArg()
+                .required(false)
+                .build());
+
+        options.addOption(
+            Option.builder(PUBLIC_URL_OPTION)
+                .desc(
+                    "Base URL other clients reach the mirror at when serving a mirror, such as http://mirror-host:8080, which the links in the mirror's feed use, defaults to the mirror on localhost if not set")
+                .hasArg()
+                .required(false)
+                .build());
+
+        options.addOption(
+            Option.builder(INTERVAL_OPTION)
+                .desc(
+                    "Minutes between downloads of new entries when serving a mirror, defaults to 60 if not set")
+                .hasArg()
+                .required(false)
+                .build());
+
         options.addOption(
             Option.builder(CLIENT_ID_OPTION)
                 .longOpt("client-id")
@@ -0,0 +1,568 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * Pull-through mirror of the NCTS syndication feed for a local network. The
+ * entries in the selected categories are synchronised into the output directory
+ * of a {@link SyndicationClient} and served over HTTP, along with a feed of
+ * those entries with their links rewritten to the mirror's public base URL, so
+ * other clients can use the mirror's feed and token URLs in place of the NCTS.
+ * <p>
+ * Artefacts are served straight from their files, with single byte range
+ * requests and <code>If-Range</code> honoured so segmented and resumed downloads
+ * work, and the feed and artefacts both answer conditional requests with
+ * <code>ETag</code> and <code>Last-Modified</code> validators. The mirror's token
+ * endpoint issues a token to any client without checking its credentials, so
+ * the mirror should only be exposed to trusted networks.
+ */
+public class SyndicationMirror implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SyndicationMirror.class.getName());
+
+    static final String ACCESS_TOKEN = "ncts-syndication-mirror";
+
+    private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    private static final String NCTS_NAMESPACE =
+            "http://ns.electronichealth.net.au/ncts/syndication/asf/extensions/1.0.0";
+    private static final String ARTEFACTS_PATH = "/artefacts/";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final SyndicationClient client;
+    private final boolean latestOnly;
+    private final String[] categories;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final Object syncLock = new Object();
+    private volatile Snapshot snapshot;
+    private volatile String publicBaseUrl;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a mirror of the entries in the specified categories, which are
+     * synchronised into the client's output directory
+     *
+     * @param client client to synchronise the entries with
+     * @param latestOnly if true only the latest entry in each category is
+     *            mirrored, otherwise all entries in each category are mirrored
+     * @param categories syndication feed categories to mirror
+     */
+    public SyndicationMirror(SyndicationClient client, boolean latestOnly, String... categories) {
+        this.client = client;
+        this.latestOnly = latestOnly;
+        this.categories = categories;
+    }
+
+    /**
+     * Downloads the entries in the mirrored categories which aren't already up to
+     * date in the output directory and starts serving the entries found. The
+     * previously synchronised entries continue to be served until this completes,
+     * and are kept if it fails.
+     *
+     * @throws IOException if the feed or an entry cannot be downloaded
+     * @throws NoSuchAlgorithmException if the SHA256 algorithm can't be loaded
+     * @throws HashValidationFailureException if a downloaded file's SHA256
+     *             doesn't match the hash specified in the feed
+     */
+    public void sync() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        synchronized (syncLock) {
+            Map<String, Artefact> artefacts = new TreeMap<>();
+            for (List<DownloadResult> results : client.download(latestOnly, categories).values()) {
+                for (DownloadResult result : results) {
+                    Artefact artefact = new Artefact(result.getEntry(), result.getFile());
+                    artefacts.put(artefact.getName(), artefact);
+                }
+            }
+
+            // an unchanged snapshot is kept so clients' cached copies of the feed stay valid
+            Snapshot current = snapshot;
+            if (current == null || !current.artefacts.equals(artefacts)) {
+                snapshot = new Snapshot(artefacts, Instant.now().truncatedTo(ChronoUnit.SECONDS));
+                logger.info(() -> "Mirroring " + artefacts.size() + " entries from " + client.getFeedUrl());
+            } else {
+                logger.info(() -> "Mirrored entries from " + client.getFeedUrl() + " are unchanged");
+            }
+        }
+    }
+
+    /**
+     * Starts serving the mirror, which serves the feed once it has been
+     * synchronised
+     *
+     * @param port port to listen on, or 0 for any free port
+     * @return this mirror
+     * @throws IOException if the server cannot be started
+     */
+    public synchronized SyndicationMirror start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/token", this::serveToken);
+        server.createContext("/syndication.xml", this::serveFeed);
+        server.createContext(ARTEFACTS_PATH, this::serveArtefact);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        logger.info(() -> "Serving mirror feed at " + getFeedUrl());
+        return this;
+    }
+
+    /**
+     * Synchronises the mirror repeatedly with the specified delay between the end
+     * of one synchronisation and the start of the next. A synchronisation which
+     * fails is logged, and the previously synchronised entries continue to be
+     * served.
+     *
+     * @param delay delay between synchronisations
+     * @param unit unit of the delay
+     * @return this mirror
+     */
+    public synchronized SyndicationMirror scheduleSync(long delay, TimeUnit unit) {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Failed synchronising mirror, still serving the previous entries", e);
+            }
+        }, delay, delay, unit);
+        return this;
+    }
+
+    /**
+     * @return base URL of the mirror on this host
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return base URL other clients reach the mirror at, which the links in the
+     *         feed are rewritten to
+     */
+    public String getPublicBaseUrl() {
+        String url = publicBaseUrl;
+        return url == null ? getBaseUrl() : url;
+    }
+
+    /**
+     * Sets the base URL other clients reach the mirror at, such as
+     * <code>http://mirror-host:8080</code>, defaults to the mirror on this host
+     * which is only reachable from this host
+     *
+     * @param publicBaseUrl http or https URL, or null for the default
+     * @return this mirror
+     */
+    public SyndicationMirror setPublicBaseUrl(String publicBaseUrl) {
+        if (publicBaseUrl == null) {
+            this.publicBaseUrl = null;
+            return this;
+        }
+        URI uri = URI.create(publicBaseUrl);
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())
+                || uri.getHost() == null) {
+            throw new IllegalArgumentException("Public base URL must be an http or https URL but was "
+                    + publicBaseUrl);
+        }
+        this.publicBaseUrl = publicBaseUrl.replaceAll("/+$", "");
+        return this;
+    }
+
+    public String getFeedUrl() {
+        return getPublicBaseUrl() + "/syndication.xml";
+    }
+
+    public String getTokenUrl() {
+        return getPublicBaseUrl() + "/token";
+    }
+
+    /**
+     * Waits until the mirror is closed, or the calling thread is interrupted
+     */
+    public void awaitClose() {
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops serving and synchronising the mirror, leaving the synchronised files
+     * in place
+     */
+    @Override
+    public synchronized void close() {
+        if (closed.getCount() == 0) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+        closed.countDown();
+    }
+
+    private void serveToken(HttpExchange exchange) throws IOException {
+        byte[] token = ("{\"access_token\":\"" + ACCESS_TOKEN + "\",\"expires_in\":\"3600\"}")
+            .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, token.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(token);
+        }
+    }
+
+    private void serveFeed(HttpExchange exchange) throws IOException {
+        Snapshot current = snapshot;
+        if (!isReadRequest(exchange)) {
+            return;
+        }
+        if (current == null) {
+            exchange.getResponseHeaders().set("Retry-After", "60");
+            sendEmptyResponse(exchange, 503);
+            return;
+        }
+
+        byte[] feed = current.getFeed(getPublicBaseUrl());
+        String etag = '"' + DigestUtils.sha256Hex(feed) + '"';
+        exchange.getResponseHeaders().set("Content-Type", "application/atom+xml");
+        if (isNotModified(exchange, etag, current.updated.toEpochMilli())) {
+            return;
+        }
+        if (isHead(exchange)) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(feed.length));
+            sendEmptyResponse(exchange, 200);
+            return;
+        }
+        exchange.sendResponseHeaders(200, feed.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(feed);
+        }
+    }
+
+    private void serveArtefact(HttpExchange exchange) throws IOException {
+        Snapshot current = snapshot;
+        if (!isReadRequest(exchange)) {
+            return;
+        }
+        // only the synchronised files are served, so the path can't reach any other file
+        Artefact artefact = current == null ? null
+                : current.artefacts.get(exchange.getRequestURI().getPath().substring(ARTEFACTS_PATH.length()));
+        if (artefact == null || !artefact.file.isFile()) {
+            sendEmptyResponse(exchange, 404);
+            return;
+        }
+
+        String etag = '"' + artefact.sha256 + '"';
+        long lastModified = artefact.file.lastModified();
+        long length = artefact.file.length();
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (isNotModified(exchange, etag, lastModified)) {
+            return;
+        }
+
+        long start = 0;
+        long count = length;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag) || ifRange.equals(httpDate(lastModified)))) {
+            // multiple ranges aren't supported, so anything but one range is
+            // answered with the whole file
+            Matcher matcher = RANGE.matcher(range.trim());
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                if (matcher.group(1).isEmpty()) {
+                    count = Math.min(Long.parseLong(matcher.group(2)), length);
+                    start = length - count;
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    long end = matcher.group(2).isEmpty() ? length - 1
+                            : Math.min(Long.parseLong(matcher.group(2)), length - 1);
+                    count = end - start + 1;
+                }
+                if (start >= length || count <= 0) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + length);
+                    sendEmptyResponse(exchange, 416);
+                    return;
+                }
+                status = 206;
+                exchange.getResponseHeaders()
+                    .set("Content-Range", "bytes " + start + "-" + (start + count - 1) + "/" + length);
+            }
+        }
+
+        if (isHead(exchange)) {
+            exchange.getResponseHeaders().set("Content-Length", Long.toString(count));
+            sendEmptyResponse(exchange, status);
+            return;
+        }
+        exchange.sendResponseHeaders(status, count);
+        try (FileChannel file = FileChannel.open(artefact.file.toPath(), StandardOpenOption.READ);
+                OutputStream out = exchange.getResponseBody()) {
+            transfer(file, start, count, Channels.newChannel(out));
+        }
+    }
+
+    /**
+     * Transfers the range of the file with {@link FileChannel#transferTo}, which
+     * leaves copying the file to the operating system where it can
+     */
+    private static void transfer(FileChannel file, long start, long count, WritableByteChannel target)
+            throws IOException {
+        long position = start;
+        long end = start + count;
+        while (position < end) {
+            long transferred = file.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("File truncated at " + position + " of " + end + " bytes while serving it");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * @return true if the request is a GET or HEAD, otherwise responds that the
+     *         method isn't allowed
+     */
+    private static boolean isReadRequest(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        sendEmptyResponse(exchange, 405);
+        return false;
+    }
+
+    private static boolean isHead(HttpExchange exchange) {
+        return "HEAD".equals(exchange.getRequestMethod());
+    }
+
+    /**
+     * Sets the validators of the response, and responds with
+     * <code>304 Not Modified</code> if the request's conditions show the client
+     * already has the current content
+     *
+     * @return true if the not modified response was sent
+     */
+    private static boolean isNotModified(HttpExchange exchange, String etag, long lastModified)
+            throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", httpDate(lastModified));
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag);
+        } else if (ifModifiedSince != null) {
+            notModified = isNotModifiedSince(ifModifiedSince, lastModified);
+        } else {
+            notModified = false;
+        }
+        if (notModified) {
+            sendEmptyResponse(exchange, 304);
+        }
+        return notModified;
+    }
+
+    private static boolean isNotModifiedSince(String ifModifiedSince, long lastModified) {
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME)
+                .toInstant()
+                .toEpochMilli();
+            // HTTP dates are only to the second
+            return lastModified / 1000 <= since / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String httpDate(long time) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC));
+    }
+
+    private static void sendEmptyResponse(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    /**
+     * A synchronised entry and the file it was downloaded to
+     */
+    private static final class Artefact {
+        private final Entry entry;
+        private final File file;
+        private final String sha256;
+
+        Artefact(Entry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+            this.sha256 = entry.getSha256();
+        }
+
+        String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entry.getId(), file, sha256);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Artefact)) {
+                return false;
+            }
+            Artefact other = (Artefact) obj;
+            return Objects.equals(entry.getId(), other.entry.getId()) && file.equals(other.file)
+                    && Objects.equals(sha256, other.sha256);
+        }
+    }
+
+    /**
+     * The entries served from one synchronisation, and the feed of them once it
+     * has been written
+     */
+    private final class Snapshot {
+        private final Map<String, Artefact> artefacts;
+        private final Instant updated;
+        private String feedBaseUrl;
+        private byte[] feed;
+
+        Snapshot(Map<String, Artefact> artefacts, Instant updated) {
+            this.artefacts = Collections.unmodifiableMap(artefacts);
+            this.updated = updated;
+        }
+
+        /**
+         * @return the feed with its links under the base URL, written again only
+         *         if the base URL has changed
+         */
+        synchronized byte[] getFeed(String baseUrl) {
+            if (!baseUrl.equals(feedBaseUrl)) {
+                feed = writeFeed(baseUrl);
+                feedBaseUrl = baseUrl;
+            }
+            return feed;
+        }
+
+        private byte[] writeFeed(String baseUrl) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+                writer.writeStartDocument("UTF-8", "1.0");
+                writer.setDefaultNamespace(ATOM_NAMESPACE);
+                writer.setPrefix("ncts", NCTS_NAMESPACE);
+                writer.writeStartElement(ATOM_NAMESPACE, "feed");
+                writer.writeDefaultNamespace(ATOM_NAMESPACE);
+                writer.writeNamespace("ncts", NCTS_NAMESPACE);
+                writeElement(writer, ATOM_NAMESPACE, "title", "Mirror of " + client.getFeedUrl());
+                writeElement(writer, ATOM_NAMESPACE, "id", "urn:uuid:"
+                        + UUID.nameUUIDFromBytes(client.getFeedUrl().toString().getBytes(StandardCharsets.UTF_8)));
+                writeElement(writer, ATOM_NAMESPACE, "updated", updated.toString());
+                for (Artefact artefact : artefacts.values()) {
+                    writeEntry(writer, artefact, baseUrl);
+                }
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Cannot write mirror feed", e);
+            }
+            return out.toByteArray();
+        }
+
+        private void writeEntry(XMLStreamWriter writer, Artefact artefact, String baseUrl)
+                throws XMLStreamException {
+            Entry entry = artefact.entry;
+            writer.writeStartElement(ATOM_NAMESPACE, "entry");
+            writeElement(writer, ATOM_NAMESPACE, "title", artefact.getName());
+            writer.writeEmptyElement(ATOM_NAMESPACE, "link");
+            writer.writeAttribute("rel", "alternate");
+            writer.writeAttribute("href", baseUrl + ARTEFACTS_PATH + encode(artefact.getName()));
+            writer.writeAttribute("length", Long.toString(entry.getLength()));
+            writer.writeAttribute(NCTS_NAMESPACE, "sha256Hash", artefact.sha256);
+            writer.writeEmptyElement(ATOM_NAMESPACE, "category");
+            writer.writeAttribute("term", entry.getCategory());
+            if (entry.getCategoryScheme() != null) {
+                writer.writeAttribute("scheme", entry.getCategoryScheme());
+            }
+            writeElement(writer, ATOM_NAMESPACE, "id", entry.getId());
+            writeElement(writer, ATOM_NAMESPACE, "updated", updated.toString());
+            writeElement(writer, NCTS_NAMESPACE, "contentItemIdentifier", entry.getContentItemIdentifier());
+            writeElement(writer, NCTS_NAMESPACE, "contentItemVersion", entry.getContentItemVersion());
+            writer.writeEndElement();
+        }
+
+        private void writeElement(XMLStreamWriter writer, String namespace, String name, String text)
+                throws XMLStreamException {
+            if (text != null) {
+                writer.writeStartElement(namespace, name);
+                writer.writeCharacters(text);
+                writer.writeEndElement();
+            }
+        }
+    }
+
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
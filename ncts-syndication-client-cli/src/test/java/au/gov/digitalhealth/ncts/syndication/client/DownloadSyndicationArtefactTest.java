@@ -1,19 +1,27 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
 import static org.easymock.EasyMock.expect;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URI;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.easymock.EasyMockSupport;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.VerificationFailureException;
 
 @Test(singleThreaded = true)
 public class DownloadSyndicationArtefactTest extends EasyMockSupport {
@@ -30,6 +38,17 @@ public class DownloadSyndicationArtefactTest extends EasyMockSupport {
         resetAll();
     }
 
+    private void expectDefaultSettings() {
+        expect(DownloadSyndicationArtefact.client.setFeedUrl(SyndicationClient.FEED_URL))
+            .andReturn(DownloadSyndicationArtefact.client);
+        expect(DownloadSyndicationArtefact.client.setTokenUrl(SyndicationClient.TOKEN_URL))
+            .andReturn(DownloadSyndicationArtefact.client);
+        expect(DownloadSyndicationArtefact.client.setOutputDirectory(new File(System.getProperty("user.dir"))))
+            .andReturn(DownloadSyndicationArtefact.client);
+        expect(DownloadSyndicationArtefact.client.setClientId(null)).andReturn(DownloadSyndicationArtefact.client);
+        expect(DownloadSyndicationArtefact.client.setClientSecret(null)).andReturn(DownloadSyndicationArtefact.client);
+    }
+
     @Test(description = "category parameter only")
     public void categoryTestOnly() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
         expect(DownloadSyndicationArtefact.client.setFeedUrl(SyndicationClient.FEED_URL))
@@ -87,6 +106,120 @@ public class DownloadSyndicationArtefactTest extends EasyMockSupport {
         verifyAll();
     }
 
+    @Test(description = "verify files rather than download them")
+    public void verifyOnly() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        expectDefaultSettings();
+        expect(DownloadSyndicationArtefact.client.verify(true, "foo"))
+            .andReturn(new VerificationReport(Collections.emptyMap()));
+        replayAll();
+
+        DownloadSyndicationArtefact.main(new String[] { "-verify", "-latest", "-category", "foo" });
+
+        verifyAll();
+    }
+
+    @Test(description = "verification failure", expectedExceptions = { VerificationFailureException.class })
+    public void verifyFailure() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        Entry entry = new Entry("id", "sha256", "http://feed.url/missing.zip", 123, "contentItemIdentifier", "1",
+            "foo", "categoryScheme");
+        VerificationResult missing = new VerificationResult(entry, new File("missing.zip"),
+            VerificationResult.Status.MISSING, -1, null);
+        expectDefaultSettings();
+        expect(DownloadSyndicationArtefact.client.verify(false, "foo"))
+            .andReturn(new VerificationReport(Collections.singletonMap("foo", Collections.singletonList(missing))));
+        replayAll();
+
+        try {
+            DownloadSyndicationArtefact.main(new String[] { "-verify", "-category", "foo" });
+        } finally {
+            verifyAll();
+        }
+    }
+
+    @Test(description = "transport selected")
+    public void transportSelected() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        expectDefaultSettings();
+        expect(DownloadSyndicationArtefact.client.setTransportType(TransportType.JDK))
+            .andReturn(DownloadSyndicationArtefact.client);
+        expect(DownloadSyndicationArtefact.client.download(false, "foo")).andReturn(null);
+        replayAll();
+
+        DownloadSyndicationArtefact.main(new String[] { "-transport", "jdk", "-category", "foo" });
+
+        verifyAll();
+    }
+
+    @Test(description = "unknown transport", expectedExceptions = { IllegalArgumentException.class })
+    public void unknownTransport() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        expectDefaultSettings();
+        replayAll();
+
+        DownloadSyndicationArtefact.main(new String[] { "-transport", "carrier-pigeon", "-category", "foo" });
+    }
+
+    @Test(description = "mirrors set")
+    public void mirrorsSet() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        expectDefaultSettings();
+        expect(DownloadSyndicationArtefact.client.setMirrors(Arrays.asList(URI.create("http://mirror:8080/artefacts"),
+            URI.create("file:/shared/ncts")))).andReturn(DownloadSyndicationArtefact.client);
+        expect(DownloadSyndicationArtefact.client.download(false, "foo")).andReturn(null);
+        replayAll();
+
+        DownloadSyndicationArtefact.main(new String[] { "-mirror", "http://mirror:8080/artefacts", "-mirror",
+                "file:/shared/ncts", "-category", "foo" });
+
+        verifyAll();
+    }
+
+    @Test(description = "serve a mirror until interrupted")
+    public void serveMirror() throws Exception {
+        CountDownLatch synchronised = new CountDownLatch(1);
+        expectDefaultSettings();
+        expect(DownloadSyndicationArtefact.client.download(true, "foo")).andAnswer(() -> {
+            synchronised.countDown();
+            return Collections.emptyMap();
+        });
+        expect(DownloadSyndicationArtefact.client.getFeedUrl()).andStubReturn(URI.create(TEST_FEED_URL));
+        replayAll();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread serving = new Thread(() -> {
+            try {
+                DownloadSyndicationArtefact.main(new String[] { "-serve", "0", "-latest", "-category", "foo" });
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        serving.start();
+        assertTrue(synchronised.await(10, TimeUnit.SECONDS), "the mirror should be synchronised");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (serving.isAlive() && System.currentTimeMillis() < deadline) {
+            serving.interrupt();
+            serving.join(100);
+        }
+
+        assertTrue(!serving.isAlive(), "the mirror should stop serving when interrupted");
+        assertNull(failure.get());
+        verifyAll();
+    }
+
+    @Test(description = "invalid mirror port", expectedExceptions = { IllegalArgumentException.class })
+    public void invalidServePort() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        expectDefaultSettings();
+        replayAll();
+
+        DownloadSyndicationArtefact.main(new String[] { "-serve", "http", "-category", "foo" });
+    }
+
+    @Test(description = "invalid mirror public URL", expectedExceptions = { IllegalArgumentException.class })
+    public void invalidPublicUrl() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        expectDefaultSettings();
+        replayAll();
+
+        DownloadSyndicationArtefact.main(
+            new String[] { "-serve", "0", "-publicUrl", "ftp://mirror-host", "-category", "foo" });
+    }
+
     @Test(description = "request help message")
     public void printHelp() throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
         ByteArrayOutputStream bo = new ByteArrayOutputStream();
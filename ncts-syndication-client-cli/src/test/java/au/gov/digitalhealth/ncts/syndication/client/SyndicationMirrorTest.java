@@ -0,0 +1,214 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SyndicationMirrorTest {
+
+    private static final File storeDir = new File("target/mirror-store");
+    private static final File agentDir = new File("target/mirror-agent");
+    private static final long ARTEFACT_SIZE = 64 * 1024;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(4)
+        .setCategories(2)
+        .setArtefactSize(ARTEFACT_SIZE);
+
+    @Test(description = "Clients download the mirrored entries from the mirror rather than the origin")
+    public void servesMirroredEntries() throws Exception {
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                SyndicationClient client = originClient(origin);
+                SyndicationMirror mirror = new SyndicationMirror(client, false, generator.getCategory(0))) {
+            mirror.sync();
+            mirror.start(0);
+            int originArtefactRequests = origin.getArtefactRequests();
+            int originTokenRequests = origin.getTokenRequests();
+
+            try (SyndicationClient agent = new SyndicationClient(mirror.getFeedUrl(), mirror.getTokenUrl(), agentDir,
+                "agent", "agent").setDownloadSegments(2).setMinSegmentedDownloadLength(0)) {
+                Map<String, List<DownloadResult>> results = agent.download(false, generator.getCategory(0));
+
+                List<DownloadResult> downloads = results.get(generator.getCategory(0));
+                assertEquals(downloads.size(), 2);
+                for (DownloadResult download : downloads) {
+                    assertTrue(download.isFreshlyDownloaded());
+                    assertTrue(download.getEntry().getUrl().startsWith(mirror.getBaseUrl()),
+                        download.getEntry().getUrl());
+                    assertTrue(FileUtils.contentEquals(download.getFile(),
+                        new File(storeDir, download.getFile().getName())));
+                }
+            }
+            assertEquals(origin.getArtefactRequests(), originArtefactRequests,
+                "the origin should not be asked for artefacts by the agent");
+            assertEquals(origin.getTokenRequests(), originTokenRequests,
+                "the origin should not be asked for tokens by the agent");
+        }
+    }
+
+    @Test(description = "Artefacts are served with byte ranges and conditional requests")
+    public void servesRangesAndConditionalRequests() throws Exception {
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                SyndicationClient client = originClient(origin);
+                SyndicationMirror mirror = new SyndicationMirror(client, true, generator.getCategory(1))) {
+            mirror.sync();
+            mirror.start(0);
+            String name = generator.getArtefactName(generator.getLatestEntry(1));
+            String url = mirror.getBaseUrl() + "/artefacts/" + name;
+            byte[] content = Files.readAllBytes(new File(storeDir, name).toPath());
+
+            HttpURLConnection whole = open(url, null, null);
+            assertEquals(whole.getResponseCode(), 200);
+            assertEquals(whole.getHeaderField("Accept-Ranges"), "bytes");
+            assertEquals(read(whole), content);
+            String etag = whole.getHeaderField("ETag");
+            assertEquals(etag, '"' + generator.getArtefactSha256(generator.getLatestEntry(1)) + '"');
+
+            HttpURLConnection range = open(url, "Range", "bytes=10-19");
+            assertEquals(range.getResponseCode(), 206);
+            assertEquals(range.getHeaderField("Content-Range"), "bytes 10-19/" + ARTEFACT_SIZE);
+            assertEquals(read(range), Arrays.copyOfRange(content, 10, 20));
+
+            HttpURLConnection suffix = open(url, "Range", "bytes=-5");
+            assertEquals(suffix.getResponseCode(), 206);
+            assertEquals(read(suffix), Arrays.copyOfRange(content, content.length - 5, content.length));
+
+            HttpURLConnection unsatisfiable = open(url, "Range", "bytes=" + ARTEFACT_SIZE + "-");
+            assertEquals(unsatisfiable.getResponseCode(), 416);
+            assertEquals(unsatisfiable.getHeaderField("Content-Range"), "bytes */" + ARTEFACT_SIZE);
+
+            HttpURLConnection staleRange = open(url, "Range", "bytes=10-19");
+            staleRange.setRequestProperty("If-Range", "\"stale\"");
+            assertEquals(staleRange.getResponseCode(), 200, "a changed artefact should be served whole");
+
+            assertEquals(open(url, "If-None-Match", etag).getResponseCode(), 304);
+            assertEquals(open(url, "If-Modified-Since", whole.getHeaderField("Last-Modified")).getResponseCode(),
+                304);
+            assertEquals(open(mirror.getBaseUrl() + "/artefacts/missing.zip", null, null).getResponseCode(), 404);
+        }
+    }
+
+    @Test(description = "An unchanged synchronisation keeps the feed, so cached copies stay valid")
+    public void unchangedSyncKeepsFeed() throws Exception {
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                SyndicationClient client = originClient(origin);
+                SyndicationMirror mirror = new SyndicationMirror(client, true, generator.getCategory(0))) {
+            HttpURLConnection unsynchronised = open(new SyndicationMirror(client, true).start(0), null, null);
+            assertEquals(unsynchronised.getResponseCode(), 503);
+
+            mirror.sync();
+            mirror.start(0);
+            HttpURLConnection feed = open(mirror.getFeedUrl(), null, null);
+            assertEquals(feed.getResponseCode(), 200);
+            String etag = feed.getHeaderField("ETag");
+            assertNotNull(etag);
+            String lastModified = feed.getHeaderField("Last-Modified");
+
+            mirror.sync();
+
+            assertEquals(open(mirror.getFeedUrl(), "If-None-Match", etag).getResponseCode(), 304);
+            assertEquals(open(mirror.getFeedUrl(), "If-Modified-Since", lastModified).getResponseCode(), 304);
+        }
+    }
+
+    @Test(description = "Feed links use the public base URL whatever Host the feed is requested with")
+    public void linksUsePublicBaseUrl() throws Exception {
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                SyndicationClient client = originClient(origin);
+                SyndicationMirror mirror = new SyndicationMirror(client, true, generator.getCategory(0))
+                    .setPublicBaseUrl("http://mirror-host:8080/")) {
+            mirror.sync();
+            mirror.start(0);
+            assertEquals(mirror.getFeedUrl(), "http://mirror-host:8080/syndication.xml");
+
+            String first = requestFeed(mirror, "client.example");
+            String second = requestFeed(mirror, "other.example");
+
+            String name = generator.getArtefactName(generator.getLatestEntry(0));
+            assertTrue(first.contains("href=\"http://mirror-host:8080/artefacts/" + name + "\""), first);
+            assertFalse(first.contains("client.example"), "the Host header should not be used in links");
+            assertEquals(second, first, "every Host should be served the same feed");
+        }
+    }
+
+    @Test(description = "Only http and https public base URLs are accepted")
+    public void rejectsOtherPublicBaseUrls() {
+        try {
+            new SyndicationMirror(null, true).setPublicBaseUrl("ftp://mirror-host/ncts");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("ftp://mirror-host/ncts"), e.getMessage());
+        }
+    }
+
+    @BeforeMethod
+    public void cleanDirectories() throws IOException {
+        for (File dir : new File[] { storeDir, agentDir }) {
+            dir.mkdirs();
+            FileUtils.cleanDirectory(dir);
+        }
+    }
+
+    private static SyndicationClient originClient(LocalNctsServer origin) {
+        return new SyndicationClient(origin.getFeedUrl(), origin.getTokenUrl(), storeDir, "test", "test");
+    }
+
+    private static HttpURLConnection open(SyndicationMirror mirror, String header, String value) throws IOException {
+        try {
+            HttpURLConnection connection = open(mirror.getFeedUrl(), header, value);
+            connection.getResponseCode();
+            return connection;
+        } finally {
+            mirror.close();
+        }
+    }
+
+    private static HttpURLConnection open(String url, String header, String value) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (header != null) {
+            connection.setRequestProperty(header, value);
+        }
+        return connection;
+    }
+
+    /**
+     * Requests the feed with the Host header, which HttpURLConnection won't send
+     * a value of its own for
+     */
+    private static String requestFeed(SyndicationMirror mirror, String host) throws IOException {
+        try (Socket socket = new Socket("localhost", new URL(mirror.getBaseUrl()).getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /syndication.xml HTTP/1.0\r\nHost: " + host + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String response = new String(IOUtils.toByteArray(socket.getInputStream()), StandardCharsets.UTF_8);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            return response.substring(response.indexOf("\r\n\r\n") + 4);
+        }
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
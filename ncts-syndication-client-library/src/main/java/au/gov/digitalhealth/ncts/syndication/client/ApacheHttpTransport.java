@@ -0,0 +1,117 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicNameValuePair;
+
+/**
+ * {@link Transport} making requests with Apache HttpClient, over a pool of
+ * HTTP/1.1 connections kept alive between requests, see
+ * {@link PooledHttpClientFactory}.
+ */
+public final class ApacheHttpTransport implements Transport {
+
+    private final CloseableHttpClient httpClient;
+    private final boolean ownsHttpClient;
+
+    /**
+     * Constructs a new transport with its own pooled client with the default
+     * settings, which is closed by {@link #close()}
+     */
+    public ApacheHttpTransport() {
+        this(PooledHttpClientFactory.create(), true);
+    }
+
+    /**
+     * Constructs a new transport making requests through the specified client,
+     * which is left open by {@link #close()}
+     *
+     * @param httpClient client to make requests with
+     */
+    public ApacheHttpTransport(CloseableHttpClient httpClient) {
+        this(httpClient, false);
+    }
+
+    ApacheHttpTransport(CloseableHttpClient httpClient, boolean ownsHttpClient) {
+        this.httpClient = httpClient;
+        this.ownsHttpClient = ownsHttpClient;
+    }
+
+    @Override
+    public TransportResponse fetchFeed(TransportRequest request) throws IOException {
+        return execute(request, new HttpGet(request.getUri()));
+    }
+
+    @Override
+    public TransportResponse fetchToken(TransportRequest request, Map<String, String> form) throws IOException {
+        HttpPost post = new HttpPost(request.getUri());
+        List<NameValuePair> data = new ArrayList<>();
+        form.forEach((name, value) -> data.add(new BasicNameValuePair(name, value)));
+        post.setEntity(new UrlEncodedFormEntity(data, "utf-8"));
+        return execute(request, post);
+    }
+
+    @Override
+    public TransportResponse openStream(TransportRequest request) throws IOException {
+        return execute(request, new HttpGet(request.getUri()));
+    }
+
+    /**
+     * Closes the HTTP client if it was created by this transport, a client passed
+     * to the constructor is left open
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsHttpClient) {
+            httpClient.close();
+        }
+    }
+
+    private TransportResponse execute(TransportRequest request, HttpRequestBase method) throws IOException {
+        request.getHeaders().forEach(method::setHeader);
+        // a method aborted before it is executed fails as soon as it is executed
+        request.setAbortHandler(method::abort);
+        return new Response(httpClient.execute(method));
+    }
+
+    private static final class Response implements TransportResponse {
+        private final CloseableHttpResponse response;
+
+        Response(CloseableHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatus() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            Header header = response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getEntity().getContent();
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.close();
+        }
+    }
+}
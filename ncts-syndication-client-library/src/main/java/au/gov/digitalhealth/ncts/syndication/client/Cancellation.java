@@ -0,0 +1,91 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.DownloadCancelledException;
+
+/**
+ * Cancels a download running on another thread. Cancelling aborts the requests
+ * registered while they are in progress, and any registered afterwards, and
+ * interrupts the thread running the download so it stops waiting, for example
+ * before a retry.
+ */
+final class Cancellation {
+
+    /**
+     * Cancellation of a download which is never cancelled
+     */
+    static final Cancellation NONE = new Cancellation();
+
+    private final Set<TransportRequest> requests = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+    private Thread thread;
+
+    /**
+     * Runs the download on the current thread, which is interrupted if the
+     * download is cancelled while it runs
+     */
+    <T> T run(Callable<T> download) throws Exception {
+        synchronized (this) {
+            thread = Thread.currentThread();
+        }
+        try {
+            check();
+            return download.call();
+        } finally {
+            synchronized (this) {
+                thread = null;
+                if (cancelled) {
+                    // don't leave the interrupt for the next task run by the thread
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    void cancel() {
+        if (this == NONE) {
+            throw new IllegalStateException("Cannot cancel a download which is never cancelled");
+        }
+        synchronized (this) {
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+        requests.forEach(TransportRequest::abort);
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws DownloadCancelledException if the download has been cancelled
+     */
+    void check() throws DownloadCancelledException {
+        if (cancelled) {
+            throw new DownloadCancelledException("Download cancelled");
+        }
+    }
+
+    /**
+     * Registers the request to be aborted if the download is cancelled, it is
+     * aborted straight away if the download has already been cancelled
+     */
+    void register(TransportRequest request) {
+        if (this == NONE) {
+            return;
+        }
+        requests.add(request);
+        if (cancelled) {
+            request.abort();
+        }
+    }
+
+    void unregister(TransportRequest request) {
+        requests.remove(request);
+    }
+}
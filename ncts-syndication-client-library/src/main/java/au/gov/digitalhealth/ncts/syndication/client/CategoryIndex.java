@@ -0,0 +1,99 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationFeedException;
+
+/**
+ * Immutable index of the entries in one category of a feed, built once when the
+ * feed is read so queries don't need to copy, sort or search the entries.
+ * <p>
+ * Entries are grouped by content item identifier and each group is sorted by
+ * version, latest first. The latest entry of the category is found when the
+ * index is built. If it cannot be determined, because the category has more than
+ * one content item identifier or versions which cannot be compared, the
+ * exception raised is kept and thrown whenever the latest entry is requested,
+ * leaving the other queries usable.
+ */
+final class CategoryIndex {
+
+    private final Set<Entry> entries;
+    private final Map<String, List<Entry>> entriesByContentItem;
+    private final Set<Entry> latest;
+    private final RuntimeException latestFailure;
+
+    CategoryIndex(Collection<Entry> categoryEntries) {
+        Comparator<Entry> latestFirst = new NctsEntryVersionComparator().reversed();
+        entries = Collections.unmodifiableSet(new HashSet<>(categoryEntries));
+
+        Map<String, List<Entry>> groups = new LinkedHashMap<>();
+        for (Entry entry : categoryEntries) {
+            groups.computeIfAbsent(entry.getContentItemIdentifier(), id -> new ArrayList<>()).add(entry);
+        }
+
+        RuntimeException failure = null;
+        for (Map.Entry<String, List<Entry>> group : groups.entrySet()) {
+            try {
+                group.getValue().sort(latestFirst);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            group.setValue(Collections.unmodifiableList(group.getValue()));
+        }
+        entriesByContentItem = Collections.unmodifiableMap(groups);
+
+        if (failure == null && groups.size() > 1) {
+            try {
+                // raises the same exception as comparing entries with different identifiers
+                Iterator<List<Entry>> heads = groups.values().iterator();
+                latestFirst.compare(heads.next().get(0), heads.next().get(0));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure == null && groups.isEmpty()) {
+            failure = new SyndicationFeedException("No latest entry for set " + entries);
+        }
+
+        latestFailure = failure;
+        latest = failure == null ? Collections.singleton(groups.values().iterator().next().get(0)) : null;
+    }
+
+    /**
+     * @return all the entries in the category
+     */
+    Set<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return the entries in the category grouped by content item identifier,
+     *         each group sorted latest first
+     */
+    Map<String, List<Entry>> getEntriesByContentItem() {
+        return entriesByContentItem;
+    }
+
+    /**
+     * @return a set containing only the latest entry in the category
+     * @throws RuntimeException the failure which prevented the latest entry being
+     *             determined
+     */
+    Set<Entry> getLatest() {
+        if (latestFailure != null) {
+            throw latestFailure;
+        }
+        return latest;
+    }
+}
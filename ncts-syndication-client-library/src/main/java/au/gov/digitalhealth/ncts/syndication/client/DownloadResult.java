@@ -10,14 +10,27 @@ import java.io.File;
  */
 public class DownloadResult {
 
+    private Entry entry;
     private File file;
     private boolean freshlyDownloaded;
 
     public DownloadResult(File file, boolean downloaded) {
+        this(null, file, downloaded);
+    }
+
+    public DownloadResult(Entry entry, File file, boolean downloaded) {
+        this.entry = entry;
         this.file = file;
         this.freshlyDownloaded = downloaded;
     }
 
+    /**
+     * @return the feed entry the file was downloaded for
+     */
+    public Entry getEntry() {
+        return entry;
+    }
+
     /**
      * @return location of the file
      */
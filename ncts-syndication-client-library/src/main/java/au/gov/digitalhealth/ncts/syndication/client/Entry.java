@@ -1,33 +1,68 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
-import java.io.File;
+import org.apache.commons.codec.binary.Hex;
 
 /**
  * Class that encapsulates the information about an entry in the NCTS
  * syndication feed
+ * <p>
+ * Entries are kept compact as a feed can have many of them: the category,
+ * category scheme and content item identifier are interned as they are shared by
+ * many entries, a SHA256 in hexadecimal is held as its 32 bytes, and the content
+ * item version is held only by its parsed {@link EntryVersion}.
  */
 public class Entry {
+    private static final int SHA256_LENGTH = 32;
+
     private final String id;
-    private final String sha256;
+    private final byte[] sha256;
+    private final String sha256Text;
     private final String url;
     private final long length;
     private final String contentItemIdentifier;
-    private final String contentItemVersion;
+    private final EntryVersion version;
     private final String category;
     private final String categoryScheme;
 
-    private File file;
-
     public Entry(String id, String sha256, String url, long length, String contentItemIdentifier,
             String contentItemVersion, String category, String categoryScheme) {
         this.id = id;
-        this.sha256 = sha256;
+        this.sha256 = parseSha256(sha256);
+        this.sha256Text = this.sha256 == null ? sha256 : null;
         this.url = url;
         this.length = length;
-        this.contentItemIdentifier = contentItemIdentifier;
-        this.contentItemVersion = contentItemVersion;
-        this.category = category;
-        this.categoryScheme = categoryScheme;
+        this.contentItemIdentifier = intern(contentItemIdentifier);
+        this.version = contentItemVersion == null ? null : new EntryVersion(contentItemVersion);
+        this.category = intern(category);
+        this.categoryScheme = intern(categoryScheme);
+    }
+
+    private static String intern(String value) {
+        return value == null ? null : value.intern();
+    }
+
+    /**
+     * @return the bytes of a SHA256 in lower case hexadecimal, or null if the
+     *         value is anything else and has to be kept as it is
+     */
+    private static byte[] parseSha256(String hex) {
+        if (hex == null || hex.length() != SHA256_LENGTH * 2) {
+            return null;
+        }
+        byte[] bytes = new byte[SHA256_LENGTH];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = lowerCaseHexDigit(hex.charAt(2 * i));
+            int low = lowerCaseHexDigit(hex.charAt(2 * i + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    private static int lowerCaseHexDigit(char c) {
+        return Character.isUpperCase(c) ? -1 : Character.digit(c, 16);
     }
 
     public String getId() {
@@ -35,7 +70,7 @@ public class Entry {
     }
 
     public String getSha256() {
-        return sha256;
+        return sha256 == null ? sha256Text : Hex.encodeHexString(sha256);
     }
 
     public String getUrl() {
@@ -51,7 +86,7 @@ public class Entry {
     }
 
     public String getContentItemVersion() {
-        return contentItemVersion;
+        return version == null ? null : version.getVersionString();
     }
 
     public String getCategory() {
@@ -62,12 +97,12 @@ public class Entry {
         return categoryScheme;
     }
 
-    public File getFile() {
-        return file;
-    }
-
-    public void setFile(File file) {
-        this.file = file;
+    /**
+     * @return the content item version parsed for comparison, or null if the
+     *         entry has no content item version
+     */
+    EntryVersion getVersionKey() {
+        return version;
     }
 
     @Override
@@ -97,9 +132,9 @@ public class Entry {
 
     @Override
     public String toString() {
-        return "Entry [id=" + id + ", sha256=" + sha256 + ", url=" + url + ", length=" + length
-                + ", contentItemIdentifier=" + contentItemIdentifier + ", contentItemVersion=" + contentItemVersion
-                + ", category=" + category + ", categoryScheme=" + categoryScheme + ", file=" + file + "]";
+        return "Entry [id=" + id + ", sha256=" + getSha256() + ", url=" + url + ", length=" + length
+                + ", contentItemIdentifier=" + contentItemIdentifier + ", contentItemVersion="
+                + getContentItemVersion() + ", category=" + category + ", categoryScheme=" + categoryScheme + "]";
     }
 
 }
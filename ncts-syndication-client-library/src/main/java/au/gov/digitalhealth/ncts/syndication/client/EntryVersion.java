@@ -0,0 +1,96 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.skuzzle.semantic.Version;
+import de.skuzzle.semantic.Version.VersionFormatException;
+
+/**
+ * Immutable key parsed once, when the entry is created, from an {@link Entry}'s
+ * content item version string and used by {@link NctsEntryVersionComparator}
+ * to compare entries without parsing their version strings again.
+ * <p>
+ * A version is a SNOMED CT version URI with a module and effective time, a
+ * number, or anything else which is compared as a semantic version. The
+ * semantic version is only parsed the first time it is needed, and a failure
+ * to parse it is kept to be reported by each comparison needing it.
+ */
+final class EntryVersion {
+
+    private static final Pattern SNOMED_VERSION_PATTERN = Pattern.compile(NctsFeedReader.SNOMED_VERSION_REGEXP);
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+
+    private final String module;
+    private final String number;
+    private final String versionString;
+    private volatile Version semanticVersion;
+    private volatile VersionFormatException semanticVersionFailure;
+
+    EntryVersion(String versionString) {
+        this.versionString = versionString;
+        Matcher snomedVersion = SNOMED_VERSION_PATTERN.matcher(versionString);
+        if (snomedVersion.matches()) {
+            module = snomedVersion.group(1).intern();
+            number = snomedVersion.group(2);
+        } else {
+            module = null;
+            number = NUMBER_PATTERN.matcher(versionString).matches() ? versionString : null;
+        }
+    }
+
+    /**
+     * @return the version string the key was parsed from
+     */
+    String getVersionString() {
+        return versionString;
+    }
+
+    /**
+     * @return true if the version is a SNOMED CT version URI
+     */
+    boolean isSnomedVersion() {
+        return module != null;
+    }
+
+    /**
+     * @return the module of a SNOMED CT version URI, otherwise null
+     */
+    String getModule() {
+        return module;
+    }
+
+    /**
+     * @return true if the version is a number rather than a SNOMED CT version URI
+     */
+    boolean isNumber() {
+        return module == null && number != null;
+    }
+
+    /**
+     * @return the effective time of a SNOMED CT version URI or the version
+     *         number, otherwise null
+     */
+    String getNumber() {
+        return number;
+    }
+
+    /**
+     * @return the version string parsed as a semantic version
+     * @throws VersionFormatException if the version string is not a semantic
+     *             version
+     */
+    Version getSemanticVersion() {
+        if (semanticVersion == null && semanticVersionFailure == null) {
+            try {
+                semanticVersion = Version.parseVersion(versionString);
+            } catch (VersionFormatException e) {
+                semanticVersionFailure = e;
+            }
+        }
+        if (semanticVersionFailure != null) {
+            throw semanticVersionFailure;
+        }
+        return semanticVersion;
+    }
+}
@@ -0,0 +1,152 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpHeaders;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * On disk copy of the last syndication feed read from a URL, along with the
+ * <code>ETag</code> and <code>Last-Modified</code> headers it was served with
+ * and the feed's <code>updated</code> time. The headers are used to make
+ * conditional requests for the feed, so an unchanged feed is read from the cache
+ * rather than being downloaded again.
+ * <p>
+ * Each feed URL is cached in its own pair of files in the cache directory, named
+ * after the SHA256 of the URL, so a directory can be shared by feeds and by
+ * several clients.
+ */
+final class FeedCache {
+
+    private static final Logger logger = Logger.getLogger(FeedCache.class.getName());
+
+    private final String feedUrl;
+    private final Path directory;
+    private final Path body;
+    private final Path metadataFile;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private Metadata metadata;
+
+    FeedCache(File directory, String feedUrl) {
+        this.feedUrl = feedUrl;
+        this.directory = directory.toPath();
+        String name = "feed-" + DigestUtils.sha256Hex(feedUrl);
+        this.body = this.directory.resolve(name + ".xml");
+        this.metadataFile = this.directory.resolve(name + ".json");
+        this.metadata = readMetadata();
+    }
+
+    /**
+     * Adds <code>If-None-Match</code> and <code>If-Modified-Since</code> headers
+     * from the cached feed to the request, if there is a cached feed
+     */
+    void addConditionalHeaders(TransportRequest request) {
+        if (metadata != null) {
+            if (metadata.etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, metadata.etag);
+            }
+            if (metadata.lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, metadata.lastModified);
+            }
+        }
+    }
+
+    /**
+     * @return true if there is a cached feed to use in response to a
+     *         <code>304 Not Modified</code>
+     */
+    boolean hasFeed() {
+        return metadata != null;
+    }
+
+    Path getFeed() {
+        return body;
+    }
+
+    /**
+     * @return the <code>updated</code> time of the cached feed
+     */
+    String getUpdated() {
+        return metadata == null ? null : metadata.updated;
+    }
+
+    /**
+     * Writes the content of a feed response to a new temporary file in the cache
+     * directory, to be parsed and then either passed to
+     * {@link #store(Path, TransportResponse, String)} or deleted
+     */
+    Path download(InputStream content) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "feed-", ".tmp");
+        Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+        return temp;
+    }
+
+    /**
+     * Replaces the cached feed with a downloaded feed which has been successfully
+     * parsed
+     *
+     * @param downloaded file returned by {@link #download(InputStream)}
+     * @param response response the feed was read from
+     * @param updated the feed's <code>updated</code> time
+     */
+    void store(Path downloaded, TransportResponse response, String updated) throws IOException {
+        Metadata newMetadata = new Metadata();
+        newMetadata.url = feedUrl;
+        newMetadata.etag = response.getHeader(HttpHeaders.ETAG);
+        newMetadata.lastModified = response.getHeader(HttpHeaders.LAST_MODIFIED);
+        newMetadata.updated = updated;
+
+        move(downloaded, body);
+        if (newMetadata.etag == null && newMetadata.lastModified == null) {
+            Files.deleteIfExists(metadataFile);
+            metadata = null;
+        } else {
+            Path temp = Files.createTempFile(directory, "feed-", ".tmp");
+            Files.write(temp, gson.toJson(newMetadata).getBytes(StandardCharsets.UTF_8));
+            move(temp, metadataFile);
+            metadata = newMetadata;
+        }
+    }
+
+    private Metadata readMetadata() {
+        if (!Files.isRegularFile(metadataFile) || !Files.isRegularFile(body)) {
+            return null;
+        }
+        try {
+            Metadata saved = gson.fromJson(new String(Files.readAllBytes(metadataFile), StandardCharsets.UTF_8),
+                Metadata.class);
+            return saved != null && feedUrl.equals(saved.url) ? saved : null;
+        } catch (IOException | JsonParseException e) {
+            logger.warning(() -> "Ignoring unreadable feed cache " + metadataFile + ": " + e);
+            return null;
+        }
+    }
+
+    private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class Metadata {
+        String url;
+        String etag;
+        String lastModified;
+        String updated;
+    }
+}
@@ -0,0 +1,33 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+/**
+ * When downloaded files are forced to storage, see
+ * {@link NctsFileDownloader#setFsyncPolicy(FsyncPolicy)}.
+ * <p>
+ * A downloaded file is always validated under a temporary name and atomically
+ * renamed into place, so a reader never sees a partly written file. Forcing the
+ * file and its directory to storage additionally makes sure a file under its
+ * final name is complete after a crash. Files are only recorded in the
+ * verification cache once they have been forced, so a file which may not have
+ * reached storage is hashed again by the next run rather than trusted.
+ */
+public enum FsyncPolicy {
+    /**
+     * Files are never forced, leaving it to the operating system to write them
+     * out
+     */
+    NEVER,
+
+    /**
+     * Each file is forced before it is renamed into place, and its directory
+     * once it has been renamed
+     */
+    PER_FILE,
+
+    /**
+     * Files and their directories are forced together when
+     * {@link NctsFileDownloader#sync()} is called, once a batch of downloads has
+     * finished
+     */
+    PER_BATCH
+}
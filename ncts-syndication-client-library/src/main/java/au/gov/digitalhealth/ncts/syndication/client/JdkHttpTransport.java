@@ -0,0 +1,34 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+/**
+ * Creates transports making requests with the JDK HTTP client. The client needs
+ * Java 11, this version is used on earlier versions of Java where it isn't
+ * supported - the library jar is a multi-release jar with the version used on
+ * Java 11 and later under <code>META-INF/versions/11</code>.
+ */
+final class JdkHttpTransport {
+
+    private JdkHttpTransport() {
+    }
+
+    /**
+     * @return true if the running version of Java has the JDK HTTP client
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @param connectTimeout time in milliseconds to wait to establish a
+     *            connection
+     * @param requestTimeout time in milliseconds to wait for the response to a
+     *            request to start
+     * @return a new transport using its own JDK HTTP client
+     * @throws UnsupportedOperationException if the JDK HTTP client isn't
+     *             supported
+     */
+    static Transport create(int connectTimeout, int requestTimeout) {
+        throw new UnsupportedOperationException("The JDK HTTP client requires Java 11 or later, running on Java "
+                + System.getProperty("java.version"));
+    }
+}
@@ -4,7 +4,6 @@ import java.util.Comparator;
 
 import au.gov.digitalhealth.ncts.syndication.client.exception.MismatchingContentItemIdentifierException;
 import au.gov.digitalhealth.ncts.syndication.client.exception.MismatchingEntryVersionFormatException;
-import de.skuzzle.semantic.Version;
 import de.skuzzle.semantic.Version.VersionFormatException;
 
 /**
@@ -20,13 +19,14 @@ import de.skuzzle.semantic.Version.VersionFormatException;
  * ihtsdotools.org/display/DOCURI/2.1+URIs+for+Editions+and+Versions</a></li>
  * </ul>
  * Note that SNOMED CT version URIs for both entries must have the same module identifier.
+ * <p>
+ * Version strings are parsed once per {@link Entry} and the parsed version kept
+ * with the entry, so comparing the same entries repeatedly doesn't parse them
+ * again.
  */
 public class NctsEntryVersionComparator implements Comparator<Entry> {
     @Override
     public int compare(Entry o1, Entry o2) {
-        String o1VersionString = o1.getContentItemVersion();
-        String o2VersionString = o2.getContentItemVersion();
-
         if (!o1.getContentItemIdentifier().equals(o2.getContentItemIdentifier())) {
             throw new MismatchingContentItemIdentifierException(
                 "Cannot compare entries with mismatching content item identifiers "
@@ -34,41 +34,38 @@ public class NctsEntryVersionComparator implements Comparator<Entry> {
                     + " and " + o2);
         }
 
-        if (o1VersionString.matches(NctsFeedReader.SNOMED_VERSION_REGEXP)) {
-            String o1Module = o1VersionString.replaceFirst(NctsFeedReader.SNOMED_VERSION_REGEXP, "$1");
-            o1VersionString = o1VersionString.replaceFirst(NctsFeedReader.SNOMED_VERSION_REGEXP, "$2");
-            if (!o2VersionString.matches(NctsFeedReader.SNOMED_VERSION_REGEXP)) {
+        EntryVersion o1Version = o1.getVersionKey();
+        EntryVersion o2Version = o2.getVersionKey();
+
+        if (o1Version.isSnomedVersion()) {
+            if (!o2Version.isSnomedVersion()) {
                 throw new MismatchingEntryVersionFormatException(
                         "Comparing two entries versions from the feed, one is a SNOMED CT "
                                 + "version URI, the other isn't. Entries were " + o1 + " and " + o2);
             }
 
-            String o2Module = o2VersionString.replaceFirst(NctsFeedReader.SNOMED_VERSION_REGEXP, "$1");
-
-            if (!o1Module.equals(o2Module)) {
+            if (!o1Version.getModule().equals(o2Version.getModule())) {
                 throw new MismatchingEntryVersionFormatException(
                         "Comparing two entries versions from the feed with SNOMED CT "
-                                + "version URIs with mismatching modules " + o1Module + " and " + o2Module
-                                + ". Entries were " + o1 + " and " + o2);
+                                + "version URIs with mismatching modules " + o1Version.getModule() + " and "
+                                + o2Version.getModule() + ". Entries were " + o1 + " and " + o2);
             }
-            o2VersionString = o2VersionString.replaceFirst("http://snomed.info/sct/\\d+/version/(\\d+)", "$1");
+            return o1Version.getNumber().compareTo(o2Version.getNumber());
         }
 
-        if (o1VersionString.matches("\\d+") || o2VersionString.matches("\\d+")) {
-            if (!(o1VersionString.matches("\\d+") && o2VersionString.matches("\\d+"))) {
+        if (o1Version.isNumber() || o2Version.isNumber()) {
+            if (!(o1Version.isNumber() && o2Version.isNumber())) {
                 throw new MismatchingEntryVersionFormatException(
                     "One entry format is a number the other is not, entry versions are " + o1.getContentItemVersion()
                             + " and " + o2.getContentItemVersion() + " entries were " + o1 + " and " + o2);
             }
             else {
-                return o1VersionString.compareTo(o2VersionString);
+                return o1Version.getNumber().compareTo(o2Version.getNumber());
             }
         }
 
         try {
-            Version o1Version = Version.parseVersion(o1VersionString);
-            Version o2Version = Version.parseVersion(o2VersionString);
-            return o1Version.compareTo(o2Version);
+            return o1Version.getSemanticVersion().compareTo(o2Version.getSemanticVersion());
         } catch (VersionFormatException e) {
             throw new UnsupportedVersionFormatException(
                     "Latest entry cannot be determined, version strings for entries are not pure numbers"
@@ -77,4 +74,4 @@ public class NctsEntryVersionComparator implements Comparator<Entry> {
                     e);
         }
     }
-}
\ No newline at end of file
+}
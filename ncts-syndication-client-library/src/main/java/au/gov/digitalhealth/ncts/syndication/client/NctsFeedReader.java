@@ -1,20 +1,27 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.Namespace;
-import org.jdom2.input.SAXBuilder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.client.CloseableHttpClient;
 
 import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationFeedException;
 
@@ -25,11 +32,25 @@ import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationFeedExc
 public class NctsFeedReader {
     static final String SNOMED_VERSION_REGEXP = "http://snomed.info/sct/(\\d+)/version/(\\d+)";
     private static final Logger logger = Logger.getLogger(NctsFeedReader.class.getName());
-    private static final Namespace NCTS_NAMESPACE = Namespace
-        .getNamespace("http://ns.electronichealth.net.au/ncts/syndication/asf/extensions/1.0.0");
-    private static final Namespace ATOM_NAMESPACE = Namespace.getNamespace("http://www.w3.org/2005/Atom");
+    private static final String NCTS_NAMESPACE =
+            "http://ns.electronichealth.net.au/ncts/syndication/asf/extensions/1.0.0";
+    private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
 
     private Map<String, Set<Entry>> entries = new HashMap<>();
+    private Map<String, CategoryIndex> index;
+    private final Predicate<String> categoryFilter;
+    private String updated;
+    private boolean readFromCache;
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
 
     /**
      * Constructs a new NCTS feed reader for the specified URL. If the URL cannot be
@@ -41,40 +62,166 @@ public class NctsFeedReader {
      * @throws IOException if the document at the feedUrl cannot be read
      */
     public NctsFeedReader(String feedUrl) throws IOException {
-        logger.info(() -> "Initialising NctsFeedReader from feed " + feedUrl);
-        SAXBuilder saxBuilder = new SAXBuilder();
-        Document doc = null;
-        try {
-            doc = saxBuilder.build(feedUrl);
-        } catch (JDOMException e) {
-            throw new SyndicationFeedException("Cannot parse syndication feed", e);
-        }
-
-        Element rootElement = doc.getRootElement();
-        List<Element> feedEntries = rootElement.getChildren("entry", ATOM_NAMESPACE);
+        this(feedUrl, null);
+    }
 
-        for (Element entryElement : feedEntries) {
-            List<Element> entryCategoryElements = entryElement.getChildren("category", ATOM_NAMESPACE);
+    /**
+     * Constructs a new NCTS feed reader for the specified URL, fetching the feed
+     * with the specified {@link CloseableHttpClient} so the connection can be
+     * pooled and reused by later requests. If the URL cannot be read or the
+     * document at that URL cannot be parsed as expected an exception will be
+     * thrown.
+     * 
+     * @param feedUrl the URL of the NCTS syndication feed to read
+     * @param httpClient client to fetch the feed with, or null to read the feed
+     *            URL directly
+     * 
+     * @throws IOException if the document at the feedUrl cannot be read
+     */
+    public NctsFeedReader(String feedUrl, CloseableHttpClient httpClient) throws IOException {
+        this(feedUrl, httpClient, category -> true);
+    }
 
-            String id = entryElement.getChildText("id", ATOM_NAMESPACE);
+    /**
+     * Constructs a new NCTS feed reader for the specified URL which only keeps
+     * entries in categories matching the specified predicate. Entries in other
+     * categories are discarded as the feed is read, so they are not available
+     * from the reader and are not checked for duplicates. If the URL cannot be
+     * read or the document at that URL cannot be parsed as expected an exception
+     * will be thrown.
+     * 
+     * @param feedUrl the URL of the NCTS syndication feed to read
+     * @param httpClient client to fetch the feed with, or null to read the feed
+     *            URL directly
+     * @param categoryFilter predicate which is true for the categories to keep
+     * 
+     * @throws IOException if the document at the feedUrl cannot be read
+     */
+    public NctsFeedReader(String feedUrl, CloseableHttpClient httpClient, Predicate<String> categoryFilter)
+            throws IOException {
+        this(feedUrl, httpClient, categoryFilter, null);
+    }
 
-            if (entryCategoryElements.size() != 1) {
-                throw new SyndicationFeedException("Entry " + id + " doesn't have exactly one category");
-            }
+    /**
+     * Constructs a new NCTS feed reader for the specified URL which only keeps
+     * entries in categories matching the specified predicate, caching the feed in
+     * the specified directory.
+     * <p>
+     * The last feed read from the URL is kept in the cache directory with its
+     * <code>ETag</code> and <code>Last-Modified</code> response headers, which are
+     * sent as <code>If-None-Match</code> and <code>If-Modified-Since</code> headers
+     * when the feed is next requested. If the server responds that the feed is
+     * not modified the cached copy is read instead of downloading it again.
+     * Caching requires an HTTP client, and the feed is only replaced in the cache
+     * once it has been read successfully.
+     * 
+     * @param feedUrl the URL of the NCTS syndication feed to read
+     * @param httpClient client to fetch the feed with, or null to read the feed
+     *            URL directly without caching
+     * @param categoryFilter predicate which is true for the categories to keep
+     * @param cacheDirectory directory to cache the feed in, or null to not cache
+     *            the feed
+     * 
+     * @throws IOException if the document at the feedUrl cannot be read
+     */
+    public NctsFeedReader(String feedUrl, CloseableHttpClient httpClient, Predicate<String> categoryFilter,
+            File cacheDirectory) throws IOException {
+        this(feedUrl, httpClient, categoryFilter, cacheDirectory, RetryPolicy.none());
+    }
 
-            Element entryCategoryElement = entryCategoryElements.iterator().next();
-            Element link = getLink(entryElement);
-            Entry entry = new Entry(id, link.getAttributeValue("sha256Hash", NCTS_NAMESPACE),
-                link.getAttributeValue("href"), Long.parseLong(link.getAttributeValue("length")),
-                entryElement.getChildText("contentItemIdentifier", NCTS_NAMESPACE),
-                entryElement.getChildText("contentItemVersion", NCTS_NAMESPACE),
-                entryCategoryElement.getAttributeValue("term"), entryCategoryElement.getAttributeValue("scheme"));
+    /**
+     * Constructs a new NCTS feed reader as
+     * {@link #NctsFeedReader(String, CloseableHttpClient, Predicate, File)} does,
+     * retrying reading the feed according to the specified {@link RetryPolicy}
+     * if it fails for a reason which may be transient. Retries require an HTTP
+     * client.
+     * 
+     * @param feedUrl the URL of the NCTS syndication feed to read
+     * @param httpClient client to fetch the feed with, or null to read the feed
+     *            URL directly without caching or retrying
+     * @param categoryFilter predicate which is true for the categories to keep
+     * @param cacheDirectory directory to cache the feed in, or null to not cache
+     *            the feed
+     * @param retryPolicy policy to retry reading the feed with
+     * 
+     * @throws IOException if the document at the feedUrl cannot be read
+     */
+    public NctsFeedReader(String feedUrl, CloseableHttpClient httpClient, Predicate<String> categoryFilter,
+            File cacheDirectory, RetryPolicy retryPolicy) throws IOException {
+        this(httpClient == null ? null : new ApacheHttpTransport(httpClient), feedUrl, categoryFilter, cacheDirectory,
+            retryPolicy);
+    }
 
-            addEntry(entry);
+    /**
+     * Constructs a new NCTS feed reader as
+     * {@link #NctsFeedReader(String, CloseableHttpClient, Predicate, File, RetryPolicy)}
+     * does, fetching the feed with the specified {@link Transport}. Caching and
+     * retries require a transport.
+     * 
+     * @param transport transport to fetch the feed with, or null to read the feed
+     *            URL directly without caching or retrying
+     * @param feedUrl the URL of the NCTS syndication feed to read
+     * @param categoryFilter predicate which is true for the categories to keep
+     * @param cacheDirectory directory to cache the feed in, or null to not cache
+     *            the feed
+     * @param retryPolicy policy to retry reading the feed with
+     * 
+     * @throws IOException if the document at the feedUrl cannot be read
+     */
+    public NctsFeedReader(Transport transport, String feedUrl, Predicate<String> categoryFilter,
+            File cacheDirectory, RetryPolicy retryPolicy) throws IOException {
+        logger.info(() -> "Initialising NctsFeedReader from feed " + feedUrl);
+        this.categoryFilter = categoryFilter;
+        if (transport == null) {
+            try (InputStream content = new URL(feedUrl).openStream()) {
+                parse(content, feedUrl);
+            }
+        } else {
+            FeedCache cache = cacheDirectory == null ? null : new FeedCache(cacheDirectory, feedUrl);
+            retryPolicy.execute("reading syndication feed " + feedUrl, () -> {
+                entries = new HashMap<>();
+                updated = null;
+                TransportRequest request = new TransportRequest(feedUrl);
+                try (TransferWatch watch = retryPolicy.watch(request, "read of syndication feed " + feedUrl)) {
+                    try {
+                        if (cache != null) {
+                            readThroughCache(feedUrl, transport, cache, request, watch);
+                        } else {
+                            read(feedUrl, transport, request, watch);
+                        }
+                    } catch (IOException e) {
+                        throw watch.failure(e);
+                    }
+                }
+                return null;
+            });
         }
 
+        Map<String, CategoryIndex> categoryIndexes = new HashMap<>();
+        entries.forEach((category, categoryEntries) -> categoryIndexes.put(category,
+            new CategoryIndex(categoryEntries)));
+        index = Collections.unmodifiableMap(categoryIndexes);
+        entries = null;
+
         logger.info(() -> "Feed " + feedUrl + " successfully read");
-        entries.keySet().forEach(c -> logger.info("Category " + c + " has " + entries.get(c).size() + " entries"));
+        index.keySet()
+            .forEach(c -> logger.info("Category " + c + " has " + index.get(c).getEntries().size() + " entries"));
+    }
+
+    /**
+     * @return the <code>updated</code> time of the feed, or null if the feed
+     *         doesn't have one
+     */
+    public String getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return true if the feed was unchanged since it was cached, and was read from
+     *         the cache instead of being downloaded
+     */
+    public boolean isReadFromCache() {
+        return readFromCache;
     }
 
     /**
@@ -86,7 +233,7 @@ public class NctsFeedReader {
      *         biggest content item version
      */
     public Entry getLatestMatchingEntry(String category) {
-        return getMatchingEntries(true, category).get(category).iterator().next();
+        return index.get(category).getLatest().iterator().next();
     }
 
     /**
@@ -97,7 +244,22 @@ public class NctsFeedReader {
      *         in the feed
      */
     public Set<Entry> getMatchingEntries(String category) {
-        return Collections.unmodifiableSet(entries.get(category));
+        return index.get(category).getEntries();
+    }
+
+    /**
+     * Gets the entries for a given category grouped by content item identifier,
+     * with the entries for each content item identifier sorted by version with
+     * the latest first
+     * 
+     * @param category required category for matching entries
+     * @return unmodifiable {@link Map} of content item identifier to the
+     *         {@link Entry} objects in the category with that identifier, empty if
+     *         the category does not occur in the feed
+     */
+    public Map<String, List<Entry>> getEntriesByContentItemIdentifier(String category) {
+        CategoryIndex categoryIndex = index.get(category);
+        return categoryIndex == null ? Collections.emptyMap() : categoryIndex.getEntriesByContentItem();
     }
 
     /**
@@ -120,42 +282,195 @@ public class NctsFeedReader {
      *            {@link Entry} otherwise all {@link Entry}s for each
      *            category in the feed will be returned
      * @return {@link Map} keyed by the specified categories containing one
-     *         {@link Set} per category containine the matching {@link Entry}
-     *         objects. Note that if a category is specified but does not occur in
+     *         unmodifiable {@link Set} per category containine the matching
+     *         {@link Entry} objects. Note that if a category is specified but does not occur in
      *         the feed content the category will not appear as a key in the
      *         returned map.
      */
     public Map<String, Set<Entry>> getMatchingEntries(boolean latestOnly, String... categories) {
         Map<String, Set<Entry>> matchingEntries = new HashMap<>();
-        Set<String> categorySet = new HashSet<>(Arrays.asList(categories));
-
-        for (String category : entries.keySet()) {
-            if (categorySet.contains(category)) {
-                HashSet<Entry> set = new HashSet<>();
-                set.addAll(entries.get(category));
-                if (latestOnly) {
-                    set.retainAll(Arrays.asList(getLatestEntry(set)));
+        for (String category : categories) {
+            CategoryIndex categoryIndex = index.get(category);
+            if (categoryIndex != null) {
+                matchingEntries.put(category, latestOnly ? categoryIndex.getLatest() : categoryIndex.getEntries());
+            }
+        }
+        return matchingEntries;
+    }
+
+    private void read(String feedUrl, Transport transport, TransportRequest request, TransferWatch watch)
+            throws IOException {
+        try (TransportResponse response = transport.fetchFeed(request)) {
+            if (response.getStatus() != HttpStatus.SC_OK) {
+                throw RetryPolicy.failure(response, "Cannot read syndication feed " + feedUrl);
+            }
+            try (InputStream content = watch.monitor(response.getBody())) {
+                parse(content, feedUrl);
+            }
+        }
+    }
+
+    private void readThroughCache(String feedUrl, Transport transport, FeedCache cache, TransportRequest request,
+            TransferWatch watch) throws IOException {
+        cache.addConditionalHeaders(request);
+        try (TransportResponse response = transport.fetchFeed(request)) {
+            int status = response.getStatus();
+            if (status == HttpStatus.SC_NOT_MODIFIED && cache.hasFeed()) {
+                logger.info(() -> "Feed " + feedUrl + " is not modified - reading cached copy " + cache.getFeed());
+                try (InputStream content = Files.newInputStream(cache.getFeed())) {
+                    parse(content, feedUrl);
+                }
+                readFromCache = true;
+            } else if (status == HttpStatus.SC_OK) {
+                Path downloaded;
+                try (InputStream content = watch.monitor(response.getBody())) {
+                    downloaded = cache.download(content);
+                }
+                try {
+                    try (InputStream content = Files.newInputStream(downloaded)) {
+                        parse(content, feedUrl);
+                    }
+                    cache.store(downloaded, response, updated);
+                } finally {
+                    Files.deleteIfExists(downloaded);
                 }
-                matchingEntries.put(category, set);
+            } else {
+                throw RetryPolicy.failure(response, "Cannot read syndication feed " + feedUrl);
             }
         }
+    }
 
-        return matchingEntries;
+    /**
+     * Streams through the feed creating an {@link Entry} from each Atom entry.
+     * Only the elements and attributes an {@link Entry} needs are read, all other
+     * content including the text of each entry's rights and summary is skipped
+     * without being retained.
+     */
+    private void parse(InputStream content, String feedUrl) throws IOException {
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(feedUrl, content);
+            try {
+                reader.nextTag();
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if (isElement(reader, ATOM_NAMESPACE, "entry")) {
+                        Entry entry = parseEntry(reader);
+                        if (entry != null) {
+                            addEntry(entry);
+                        }
+                    } else if (isElement(reader, ATOM_NAMESPACE, "updated")) {
+                        updated = reader.getElementText();
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            if (e.getNestedException() instanceof IOException) {
+                // the feed couldn't be read rather than parsed, which may be retried
+                throw (IOException) e.getNestedException();
+            }
+            throw new SyndicationFeedException("Cannot parse syndication feed", e);
+        }
+    }
+
+    /**
+     * @return the entry, or null if it is not in a category matching the filter
+     */
+    private Entry parseEntry(XMLStreamReader reader) throws XMLStreamException {
+        String id = null;
+        String contentItemIdentifier = null;
+        String contentItemVersion = null;
+        String term = null;
+        String scheme = null;
+        String href = null;
+        String length = null;
+        String sha256 = null;
+        int categories = 0;
+        int links = 0;
+
+        while (nextChildElement(reader)) {
+            if (isElement(reader, ATOM_NAMESPACE, "id")) {
+                id = firstText(id, reader);
+            } else if (isElement(reader, ATOM_NAMESPACE, "category")) {
+                if (categories++ == 0) {
+                    term = reader.getAttributeValue(null, "term");
+                    scheme = reader.getAttributeValue(null, "scheme");
+                }
+                skipElement(reader);
+            } else if (isElement(reader, ATOM_NAMESPACE, "link")) {
+                if (links++ == 0) {
+                    href = reader.getAttributeValue(null, "href");
+                    length = reader.getAttributeValue(null, "length");
+                    sha256 = reader.getAttributeValue(NCTS_NAMESPACE, "sha256Hash");
+                }
+                skipElement(reader);
+            } else if (isElement(reader, NCTS_NAMESPACE, "contentItemIdentifier")) {
+                contentItemIdentifier = firstText(contentItemIdentifier, reader);
+            } else if (isElement(reader, NCTS_NAMESPACE, "contentItemVersion")) {
+                contentItemVersion = firstText(contentItemVersion, reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+
+        if (categories != 1) {
+            throw new SyndicationFeedException("Entry " + id + " doesn't have exactly one category");
+        }
+        if (!categoryFilter.test(term)) {
+            return null;
+        }
+        if (links != 1) {
+            throw new SyndicationFeedException("Entry " + id + " does not have exactly one link");
+        }
+
+        return new Entry(id, sha256, href, Long.parseLong(length), contentItemIdentifier, contentItemVersion, term,
+            scheme);
     }
 
-    private Entry getLatestEntry(HashSet<Entry> set) {
-        return set.stream().max(new NctsEntryVersionComparator()).orElseThrow(
-            () -> new SyndicationFeedException("No latest entry for set " + set));
+    /**
+     * Advances to the next child element of the current element, returning false
+     * once the current element's end tag is reached
+     */
+    private boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
     }
 
-    private Element getLink(Element entry) {
-        List<Element> links = entry.getChildren("link", ATOM_NAMESPACE);
+    /**
+     * Reads the text of the current element, or skips it if an earlier element
+     * with the same name has already been read, returning the first text found
+     */
+    private String firstText(String existing, XMLStreamReader reader) throws XMLStreamException {
+        if (existing != null) {
+            skipElement(reader);
+            return existing;
+        }
+        return reader.getElementText();
+    }
 
-        if (links.size() != 1) {
-            throw new SyndicationFeedException(
-                "Entry " + entry.getChild("id", ATOM_NAMESPACE) + " does not have exactly one link");
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
         }
-        return links.iterator().next();
+    }
+
+    private boolean isElement(XMLStreamReader reader, String namespace, String localName) {
+        return localName.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI());
     }
 
     private void addEntry(Entry entry) {
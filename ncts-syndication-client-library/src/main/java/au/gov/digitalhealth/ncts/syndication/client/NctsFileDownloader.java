@@ -1,65 +1,195 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
-import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Type;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
-import java.security.DigestOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.HttpRequest;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
+import org.apache.http.HttpStatus;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 
-import au.gov.digitalhealth.ncts.syndication.client.exception.AuthenticationException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.DownloadCancelledException;
 import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
 
 /**
  * Class that reads an NCTS Atom feed and presents it as {@link Entry} objects
  * organised by category.
  */
-public class NctsFileDownloader {
+public class NctsFileDownloader implements Closeable {
 
     private static final Logger logger = Logger.getLogger(NctsFileDownloader.class.getName());
 
+    /**
+     * Default minimum length of an entry for it to be downloaded in segments when
+     * more than one segment is configured
+     */
+    public static final long DEFAULT_MIN_SEGMENTED_LENGTH = 64L * 1024 * 1024;
+
+    /**
+     * Suffix of the side file entries are downloaded to before being validated
+     * and moved to their final name
+     */
+    public static final String PART_SUFFIX = ".part";
+
+    /**
+     * Suffix of the file recording which entry a part file belongs to, allowing an
+     * interrupted download to be resumed
+     */
+    public static final String RESUME_STATE_SUFFIX = ".part.json";
+
+    /**
+     * Suffix of the side file content from a mirror is copied to and verified in
+     * before it replaces the part file, so a part file kept to resume a download
+     * isn't lost to a mirror with stale or corrupt content
+     */
+    public static final String MIRROR_PART_SUFFIX = ".mirror.part";
+
+    /**
+     * Name of the file in each output directory recording the SHA256, size,
+     * modification time and file key of files already verified against the feed
+     */
+    public static final String VERIFICATION_CACHE_FILE = ".ncts-verification-cache.json";
+
+    /**
+     * Suffix of the link created next to an output file before it is moved over
+     * the output file, when files are kept in a content store
+     */
+    private static final String LINK_SUFFIX = ".link";
+
+    private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
     private Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
-    private String token;
-    private URI tokenUrl;
-    private String clientId;
-    private String clientSecret;
+    private final OAuthTokenProvider tokenProvider;
+    private TransferEngine transferEngine;
+    private final Transport transport;
+    private final boolean ownsTransport;
+    private final ConcurrentMap<File, ReentrantLock> outputFileLocks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<File, VerificationCache> verificationCaches = new ConcurrentHashMap<>();
+    private boolean forceVerification;
+    private int segments = 1;
+    private long minSegmentedLength = DEFAULT_MIN_SEGMENTED_LENGTH;
+    private File contentStoreDirectory;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.NEVER;
+    private RetryPolicy retryPolicy = RetryPolicy.none();
+    private boolean virtualThreads;
+    private List<URI> mirrors = Collections.emptyList();
+    private final ConcurrentMap<File, String> unsyncedFiles = new ConcurrentHashMap<>();
+    private final Set<File> unsyncedDirectories = ConcurrentHashMap.newKeySet();
 
     public NctsFileDownloader(URI tokenUrl, String clientId, String clientSecret) {
+        this(tokenUrl, clientId, clientSecret, new TransferEngine());
+    }
+
+    /**
+     * Constructs a new downloader which copies and hashes content using the
+     * specified {@link TransferEngine}, allowing its buffers to be shared with
+     * other downloaders.
+     *
+     * @param tokenUrl URL to authenticate against
+     * @param clientId clientID for authentication
+     * @param clientSecret client secret for authentication
+     * @param transferEngine engine used to copy and hash downloaded content
+     */
+    public NctsFileDownloader(URI tokenUrl, String clientId, String clientSecret, TransferEngine transferEngine) {
+        this(tokenUrl, clientId, clientSecret, transferEngine, null);
+    }
+
+    /**
+     * Constructs a new downloader which makes all token and download requests
+     * through the specified {@link CloseableHttpClient}, so its pooled connections
+     * are reused across requests and shared with other users of the client.
+     * <p>
+     * The client should be able to lease at least as many connections to a host
+     * as the number of download segments used. The downloader does not close a
+     * client passed to it, if the client is null the downloader creates and owns
+     * its own client which is closed by {@link #close()}.
+     *
+     * @param tokenUrl URL to authenticate against
+     * @param clientId clientID for authentication
+     * @param clientSecret client secret for authentication
+     * @param transferEngine engine used to copy and hash downloaded content
+     * @param httpClient client to make requests with, or null for the downloader
+     *            to create its own
+     */
+    public NctsFileDownloader(URI tokenUrl, String clientId, String clientSecret, TransferEngine transferEngine,
+            CloseableHttpClient httpClient) {
+        super();
+        this.transferEngine = transferEngine;
+        this.ownsTransport = httpClient == null;
+        this.transport = ownsTransport ? new ApacheHttpTransport() : new ApacheHttpTransport(httpClient);
+        this.tokenProvider = new OAuthTokenProvider(this.transport, tokenUrl, clientId, clientSecret);
+    }
+
+    /**
+     * Constructs a new downloader authenticating with tokens from the specified
+     * {@link OAuthTokenProvider}, allowing tokens to be shared with other
+     * downloaders and clients using the same credentials.
+     *
+     * @param tokenProvider provider of the access tokens sent with each request
+     * @param transferEngine engine used to copy and hash downloaded content
+     * @param httpClient client to make requests with, or null for the downloader
+     *            to create its own
+     */
+    public NctsFileDownloader(OAuthTokenProvider tokenProvider, TransferEngine transferEngine,
+            CloseableHttpClient httpClient) {
+        this(tokenProvider, httpClient == null ? null : new ApacheHttpTransport(httpClient), transferEngine);
+    }
+
+    /**
+     * Constructs a new downloader making all download requests through the
+     * specified {@link Transport}, authenticating with tokens from the specified
+     * {@link OAuthTokenProvider}.
+     * <p>
+     * The downloader does not close a transport passed to it, if the transport is
+     * null the downloader creates and owns its own {@link ApacheHttpTransport}
+     * which is closed by {@link #close()}.
+     *
+     * @param tokenProvider provider of the access tokens sent with each request
+     * @param transport transport to make requests with, or null for the
+     *            downloader to create its own
+     * @param transferEngine engine used to copy and hash downloaded content
+     */
+    public NctsFileDownloader(OAuthTokenProvider tokenProvider, Transport transport,
+            TransferEngine transferEngine) {
         super();
-        this.tokenUrl = tokenUrl;
-        this.clientId = clientId;
-        this.clientSecret = clientSecret;
+        this.transferEngine = transferEngine;
+        this.ownsTransport = transport == null;
+        this.transport = ownsTransport ? new ApacheHttpTransport() : transport;
+        this.tokenProvider = tokenProvider;
     }
 
     /**
@@ -70,17 +200,43 @@ public class NctsFileDownloader {
      * they are from and with the filename from the URL the {@link Entry} is at.
      * <p>
      * If a file already exists it will be checked against the SHA256 and length
-     * from the entry in the feed. If it matches this download will be skipped. If
+     * from the entry in the feed. If it matches this download will be skipped. The
+     * SHA256 of files that have already been verified is kept in a
+     * {@link #VERIFICATION_CACHE_FILE} in the output directory, and a file whose
+     * size, modification time and file key are unchanged since it was verified is
+     * trusted without hashing it again unless
+     * {@link #setForceVerification(boolean)} is set. If
      * it does not match, a warning is logged and the file is deleted and downloaded
      * again - this can be useful in cases where a download was killed and a partial
      * file remains.
      * <p>
      * If the file doesn't exist at all it will be downloaded.
      * <p>
+     * If mirrors are set, see {@link #setMirrors(List)}, each mirror is tried in
+     * turn for the entry's content before the URL in the feed.
+     * <p>
+     * Downloads failing for reasons which may be transient are retried according
+     * to the {@link RetryPolicy}, see {@link #setRetryPolicy(RetryPolicy)}. A
+     * single stream download resumes from where the failed attempt stopped.
+     * <p>
+     * Content is downloaded to a {@link #PART_SUFFIX} file next to the output file
+     * and only atomically renamed into place once validated, forcing it to storage
+     * first according to the {@link FsyncPolicy}. If a download is interrupted the
+     * part file is kept and the next call for the same entry resumes the download
+     * from the end of the part file rather than starting again.
+     * <p>
      * Once the file is downloaded, the SHA256 and length is checked against the
      * details in the {@link Entry} from the feed. If the SHA256 or length don't
      * match the file will be deleted (to prevent its use) and an exception is
      * thrown.
+     * <p>
+     * If a content store directory is set, see
+     * {@link #setContentStoreDirectory(File)}, the content is kept in the store
+     * named by its SHA256 and the output file is a link to it. Entries with the
+     * same content are then only downloaded and stored once.
+     * <p>
+     * This method can be called concurrently, downloads of entries resolving to
+     * the same file or the same content are serialised.
      * 
      * @param entry           the {@link Entry} to download
      * @param outputDirectory the base directory to download to, the {@link Entry}
@@ -100,103 +256,963 @@ public class NctsFileDownloader {
      */
     public DownloadResult downloadEntry(Entry entry, File outputDirectory)
             throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        return downloadEntry(entry, outputDirectory, Cancellation.NONE);
+    }
+
+    /**
+     * Downloads the entry as {@link #downloadEntry(Entry, File)} does, stopping
+     * with a {@link DownloadCancelledException} if the download is cancelled.
+     * Cancelling aborts the transfer in progress and deletes the part file
+     * rather than keeping it to be resumed.
+     */
+    DownloadResult downloadEntry(Entry entry, File outputDirectory, Cancellation cancellation)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        File out = getOutputFile(entry, outputDirectory);
+
+        ReentrantLock outLock = getLock(out);
+        outLock.lock();
+        try {
+            cancellation.check();
+            File stored = getStoredFile(entry);
+            if (stored == null) {
+                return downloadEntryToFile(entry, out, cancellation);
+            }
+            ReentrantLock storedLock = getLock(stored);
+            storedLock.lock();
+            try {
+                return downloadEntryToStore(entry, stored, out, cancellation);
+            } finally {
+                storedLock.unlock();
+            }
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * Verifies that the local copy of the specified {@link Entry} in the
+     * specified directory matches the SHA256 and length from the feed, without
+     * downloading anything. The file is always hashed, ignoring the
+     * verification cache, and the cache is updated with the outcome.
+     * <p>
+     * This method can be called concurrently, and is serialised with downloads
+     * of entries resolving to the same file.
+     * 
+     * @param entry the {@link Entry} to verify
+     * @param outputDirectory the directory the entry was downloaded to
+     * @return result indicating whether the file is valid, missing or corrupt
+     * @throws NoSuchAlgorithmException if the SHA256 algorithm can't be loaded
+     * @throws IOException if an error occurs reading the file
+     */
+    public VerificationResult verifyEntry(Entry entry, File outputDirectory)
+            throws IOException, NoSuchAlgorithmException {
         File out = getOutputFile(entry, outputDirectory);
-        entry.setFile(out);
 
+        ReentrantLock lock = getLock(out);
+        lock.lock();
+        try {
+            if (!out.isFile()) {
+                return new VerificationResult(entry, out, VerificationResult.Status.MISSING, -1, null);
+            }
+            long length = out.length();
+            VerificationCache verificationCache = getVerificationCache(out);
+            if (length != entry.getLength()) {
+                verificationCache.remove(out);
+                return new VerificationResult(entry, out, VerificationResult.Status.CORRUPT, length, null);
+            }
+            String sha256 = sha256(out);
+            if (!sha256.equals(entry.getSha256())) {
+                verificationCache.remove(out);
+                return new VerificationResult(entry, out, VerificationResult.Status.CORRUPT, length, sha256);
+            }
+            verificationCache.record(out, sha256);
+            return new VerificationResult(entry, out, VerificationResult.Status.VALID, length, sha256);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DownloadResult downloadEntryToFile(Entry entry, File out, Cancellation cancellation)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
         if (out.exists() && out.isFile()) {
-            if (!sha256AndLengthMatch(entry, out)) {
+            if (!existingFileMatches(entry, out)) {
                 logger.warning(() -> "File " + out.getAbsolutePath() + " exists for entry " + entry.getId()
                         + " but does not match feed entry sha256 and/or length - deleting file and redownloading it.");
                 if (!out.delete()) {
                     throw new IOException("Unable to delete existing cached file " + out.getAbsolutePath()
                             + " whose sha256 doesn't match the feed. Unable to redownload the file with the corrected sha256");
                 }
-                downloadFile(entry, out);
-                return new DownloadResult(out, true);
+                downloadFile(entry, out, cancellation);
+                return new DownloadResult(entry, out, true);
             } else {
                 logger.info(() -> "File " + out.getAbsolutePath() + " exists for entry " + entry.getId()
                         + " with matching sha256 and length - skipping dowload.");
-                return new DownloadResult(out, false);
+                return new DownloadResult(entry, out, false);
             }
         } else {
             logger.info(() -> "File " + out.getAbsolutePath() + " does not exists for entry " + entry.getId()
                     + " - starting download for new file.");
-            downloadFile(entry, out);
-            return new DownloadResult(out, true);
+            downloadFile(entry, out, cancellation);
+            return new DownloadResult(entry, out, true);
         }
+    }
 
+    /**
+     * Makes the output file a link to the entry's content in the store. The
+     * content is only downloaded if the store doesn't already have a copy
+     * matching the feed, and an existing output file matching the feed is moved
+     * into the store rather than downloaded again. An output file already linked
+     * to valid stored content is found with a metadata lookup alone.
+     */
+    private DownloadResult downloadEntryToStore(Entry entry, File stored, File out, Cancellation cancellation)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Files.createDirectories(contentStoreDirectory.toPath());
+        boolean storedFileMatches = stored.isFile() && existingFileMatches(entry, stored);
+        if (storedFileMatches && out.exists() && Files.isSameFile(out.toPath(), stored.toPath())) {
+            logger.info(() -> "File " + out.getAbsolutePath() + " is linked to stored content " + stored.getName()
+                    + " matching entry " + entry.getId() + " - skipping download.");
+            return new DownloadResult(entry, out, false);
+        }
+
+        boolean downloaded = false;
+        if (!storedFileMatches) {
+            if (out.isFile() && !Files.isSymbolicLink(out.toPath()) && existingFileMatches(entry, out)) {
+                logger.info(() -> "Moving existing file " + out.getAbsolutePath() + " for entry " + entry.getId()
+                        + " into the content store.");
+                moveIntoPlace(out.toPath(), stored.toPath());
+                placed(stored, entry.getSha256());
+            } else {
+                logger.info(() -> "Content " + stored.getName() + " for entry " + entry.getId()
+                        + " is not in the content store - starting download.");
+                downloadFile(entry, stored, cancellation);
+                downloaded = true;
+            }
+        } else {
+            logger.info(() -> "Content " + stored.getName() + " for entry " + entry.getId()
+                    + " is already in the content store - skipping download.");
+        }
+
+        link(stored, out);
+        getVerificationCache(out).remove(out);
+        directoryChanged(out);
+        return new DownloadResult(entry, out, downloaded);
     }
 
-    private void downloadFile(Entry entry, File out)
+    /**
+     * Replaces the output file with a hard link to the stored file, or a symbolic
+     * link if the file system doesn't support hard links or the store is on a
+     * different file system. The link is created beside the output file and
+     * moved over it, so the output file is never missing.
+     */
+    private void link(File stored, File out) throws IOException {
+        Path link = new File(out.getParentFile(), out.getName() + LINK_SUFFIX).toPath();
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, stored.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.fine(() -> "Unable to hard link " + out.getAbsolutePath() + " to " + stored.getAbsolutePath()
+                    + " - using a symbolic link: " + e);
+            try {
+                Files.createSymbolicLink(link, stored.getAbsoluteFile().toPath());
+            } catch (UnsupportedOperationException | IOException symbolicLinkException) {
+                symbolicLinkException.addSuppressed(e);
+                throw symbolicLinkException;
+            }
+        }
+        moveIntoPlace(link, out.toPath());
+    }
+
+    /**
+     * Downloads the entry to a side file named after the output file with a
+     * {@link #PART_SUFFIX}, which is only renamed over the output file once its
+     * SHA256 and length have been validated.
+     * <p>
+     * Single stream downloads also record the URL, SHA256 and length of the entry
+     * in a resume state file alongside the part file. If a download fails part way
+     * through the part file and resume state are kept, and the next attempt to
+     * download the same entry hashes the content already present and requests
+     * only the remainder of the file using a range request.
+     */
+    private void downloadFile(Entry entry, File out, Cancellation cancellation)
             throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        HttpClientBuilder builder = HttpClients.custom();
-        builder.addInterceptorFirst((HttpRequest request, HttpContext context) -> {
-            request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + getBearerTokenFromAuthServer());
-        });
-        try (DigestOutputStream dos = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(out)),
-                digest);
-                CloseableHttpClient httpClient = builder.build();
-                CloseableHttpResponse response = httpClient.execute(new HttpGet(entry.getUrl()));) {
-            InputStream is = response.getEntity().getContent();
-            int inByte;
-            while ((inByte = is.read()) != -1) {
-                dos.write(inByte);
-            }
-        }
-        String downloadedFileSha256 = Hex.encodeHexString(digest.digest());
-
-        long length = out.length();
+        File part = new File(out.getParentFile(), out.getName() + PART_SUFFIX);
+        File resumeState = new File(out.getParentFile(), out.getName() + RESUME_STATE_SUFFIX);
+
+        String downloadedFileSha256;
+        try {
+            downloadedFileSha256 = downloadFromMirrors(entry, part, resumeState,
+                new File(out.getParentFile(), out.getName() + MIRROR_PART_SUFFIX), cancellation);
+            if (downloadedFileSha256 == null) {
+                downloadedFileSha256 = retryPolicy.execute("downloading " + entry.getUrl(),
+                    () -> downloadToPart(entry, part, resumeState, cancellation));
+            }
+        } catch (IOException e) {
+            if (cancellation.isCancelled()) {
+                logger.info(() -> "Download of " + entry.getUrl() + " cancelled - deleting " + part.getAbsolutePath());
+                deleteIfExists(resumeState);
+                deleteIfExists(part);
+            }
+            throw e;
+        }
+
+        long length = part.length();
         if (!sha256AndLengthMatch(entry, length, downloadedFileSha256)) {
-            if (!out.delete()) {
-                logger.warning(() -> "Unable to delete downloaded file " + out.getAbsolutePath()
+            deleteIfExists(resumeState);
+            if (!part.delete()) {
+                logger.warning(() -> "Unable to delete downloaded file " + part.getAbsolutePath()
                         + " whose sha256 doesn't match the feed.");
             }
             throw new HashValidationFailureException(out, downloadedFileSha256, length, entry.getSha256(),
                     entry.getLength());
         }
+
+        if (fsyncPolicy == FsyncPolicy.PER_FILE) {
+            force(part);
+        }
+        moveIntoPlace(part.toPath(), out.toPath());
+        deleteIfExists(resumeState);
+        placed(out, downloadedFileSha256);
+    }
+
+    /**
+     * Renames the file over the target in one step where the file system
+     * supports it, so the target is never seen partly replaced
+     */
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Records a validated file renamed into place in the verification cache,
+     * once it has been forced to storage if the {@link FsyncPolicy} requires it
+     */
+    private void placed(File file, String sha256) throws IOException {
+        if (fsyncPolicy == FsyncPolicy.PER_BATCH) {
+            unsyncedFiles.put(file.getAbsoluteFile(), sha256);
+            return;
+        }
+        if (fsyncPolicy == FsyncPolicy.PER_FILE) {
+            forceDirectory(file.getAbsoluteFile().getParentFile());
+        }
+        getVerificationCache(file).record(file, sha256);
+    }
+
+    private void directoryChanged(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (fsyncPolicy == FsyncPolicy.PER_FILE) {
+            forceDirectory(directory);
+        } else if (fsyncPolicy == FsyncPolicy.PER_BATCH) {
+            unsyncedDirectories.add(directory);
+        }
+    }
+
+    /**
+     * Forces the files downloaded since the last call, and the directories they
+     * were renamed into, to storage if the {@link FsyncPolicy} is
+     * {@link FsyncPolicy#PER_BATCH}, and writes the verification caches of the
+     * directories downloaded or verified into. Should be called once a batch of
+     * downloads or verifications is complete, files not synced are hashed again
+     * by the next download rather than trusted.
+     *
+     * @throws IOException if a file can't be forced to storage
+     */
+    public void sync() throws IOException {
+        Map<File, String> files = new HashMap<>(unsyncedFiles);
+        Set<File> directories = new HashSet<>(unsyncedDirectories);
+        for (File file : files.keySet()) {
+            force(file);
+            directories.add(file.getParentFile());
+        }
+        directories.forEach(this::forceDirectory);
+        unsyncedDirectories.removeAll(directories);
+        for (Map.Entry<File, String> file : files.entrySet()) {
+            if (unsyncedFiles.remove(file.getKey(), file.getValue())) {
+                getVerificationCache(file.getKey()).record(file.getKey(), file.getValue());
+            }
+        }
+        verificationCaches.values().forEach(VerificationCache::flush);
+    }
+
+    private static void force(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces a directory to storage so renames into it are durable. Not every
+     * platform allows a directory to be opened, where it can't be the rename is
+     * left to the file system.
+     */
+    private void forceDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.fine(() -> "Unable to force directory " + directory + " to storage: " + e);
+        }
+    }
+
+    /**
+     * Tries each mirror in turn for the entry's content, by the entry's file name
+     * and then by its SHA256, copying each candidate to a
+     * {@link #MIRROR_PART_SUFFIX} file and verifying it there. Content which
+     * doesn't match the feed is discarded and the next candidate tried, so a
+     * stale or corrupt mirror only costs the time to read it. A part file kept
+     * to resume a download from the feed URL, and its resume state, are only
+     * replaced once a mirror's content has been verified.
+     *
+     * @return the SHA256 of the content moved to the part file, matching the
+     *         feed, or null if no mirror has the entry's content
+     */
+    private String downloadFromMirrors(Entry entry, File part, File resumeState, File candidate,
+            Cancellation cancellation) throws IOException, NoSuchAlgorithmException {
+        List<String> names = new ArrayList<>();
+        names.add(getFileName(entry));
+        if (SHA256_PATTERN.matcher(entry.getSha256()).matches()) {
+            names.add(entry.getSha256());
+        }
+
+        for (URI mirror : mirrors) {
+            for (String name : names) {
+                cancellation.check();
+                URI source = resolve(mirror, name);
+                String sha256;
+                try {
+                    sha256 = "file".equals(source.getScheme())
+                            ? copyFromFile(entry, Paths.get(source), candidate)
+                            : downloadFromMirror(source, candidate, cancellation);
+                } catch (IOException e) {
+                    deleteIfExists(candidate);
+                    if (cancellation.isCancelled()) {
+                        throw e;
+                    }
+                    logger.info(() -> "Unable to get entry " + entry.getId() + " from mirror " + source + ": " + e);
+                    continue;
+                }
+                if (sha256 == null) {
+                    continue;
+                }
+                if (sha256AndLengthMatch(entry, candidate.length(), sha256)) {
+                    // a part file left without its resume state is downloaded again rather than resumed
+                    deleteIfExists(resumeState);
+                    moveIntoPlace(candidate.toPath(), part.toPath());
+                    logger.info(() -> "Copied entry " + entry.getId() + " from mirror " + source);
+                    return sha256;
+                }
+                logger.warning(() -> "Content of " + source + " does not match feed entry " + entry.getId()
+                        + " sha256 and/or length - ignoring it.");
+                deleteIfExists(candidate);
+            }
+        }
+        return null;
+    }
+
+    private static URI resolve(URI mirror, String name) {
+        String base = mirror.toString();
+        return URI.create(base.endsWith("/") ? base + name : base + "/" + name);
+    }
+
+    /**
+     * Copies a file from a mirror directory with {@link FileChannel#transferTo},
+     * which leaves copying the file to the operating system where it can, then
+     * hashes the copy so the content verified is the content kept
+     *
+     * @return the SHA256 of the copy, or null if the mirror doesn't have the file
+     *         or it is the wrong length
+     */
+    private String copyFromFile(Entry entry, Path source, File candidate)
+            throws IOException, NoSuchAlgorithmException {
+        if (!Files.isRegularFile(source) || Files.size(source) != entry.getLength()) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(candidate.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("Mirror file " + source + " ended after " + position + " bytes");
+                }
+                position += transferred;
+            }
+        }
+        return sha256(candidate);
+    }
+
+    /**
+     * Downloads the content from an HTTP mirror. The request has no bearer token,
+     * which is only for the NCTS, and isn't retried as the next mirror or the
+     * feed URL is tried instead.
+     *
+     * @return the SHA256 of the content downloaded, or null if the mirror doesn't
+     *         have it
+     */
+    private String downloadFromMirror(URI source, File candidate, Cancellation cancellation)
+            throws IOException, NoSuchAlgorithmException {
+        TransportRequest request = new TransportRequest(source);
+        try (TransferWatch watch = retryPolicy.watch(request, "download of " + source, cancellation)) {
+            try (TransportResponse response = transport.openStream(request)) {
+                if (response.getStatus() != HttpStatus.SC_OK) {
+                    logger.fine(() -> "Mirror responded with status " + response.getStatus() + " for " + source);
+                    return null;
+                }
+                try (FileChannel channel = FileChannel.open(candidate.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    return transferBody(response, channel, MessageDigest.getInstance("SHA-256"), watch);
+                }
+            } catch (IOException e) {
+                throw watch.failure(e);
+            }
+        }
+    }
+
+    /**
+     * Makes one attempt at downloading the entry to the part file, resuming a
+     * single stream download kept from an earlier attempt
+     */
+    private String downloadToPart(Entry entry, File part, File resumeState, Cancellation cancellation)
+            throws IOException, NoSuchAlgorithmException {
+        cancellation.check();
+        if (isResumable(entry, part, resumeState)) {
+            return resumeStream(entry, part, cancellation);
+        }
+        deleteIfExists(part);
+        deleteIfExists(resumeState);
+        if (segments > 1 && entry.getLength() > 1 && entry.getLength() >= minSegmentedLength) {
+            return downloadSegmented(entry, part, cancellation);
+        }
+        writeResumeState(entry, resumeState);
+        return downloadStream(entry, part, 0, MessageDigest.getInstance("SHA-256"), cancellation);
+    }
+
+    private boolean isResumable(Entry entry, File part, File resumeState) {
+        if (!part.isFile() || !resumeState.isFile() || part.length() > entry.getLength()) {
+            return false;
+        }
+        try {
+            ResumeState state = gson.fromJson(
+                new String(Files.readAllBytes(resumeState.toPath()), StandardCharsets.UTF_8), ResumeState.class);
+            return state != null && entry.getUrl().equals(state.url) && entry.getSha256().equals(state.sha256)
+                    && entry.getLength() == state.length;
+        } catch (IOException | JsonParseException e) {
+            logger.warning(() -> "Ignoring unreadable resume state " + resumeState.getAbsolutePath() + ": " + e);
+            return false;
+        }
+    }
+
+    private void writeResumeState(Entry entry, File resumeState) throws IOException {
+        ResumeState state = new ResumeState();
+        state.url = entry.getUrl();
+        state.sha256 = entry.getSha256();
+        state.length = entry.getLength();
+        Files.write(resumeState.toPath(), gson.toJson(state).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String resumeStream(Entry entry, File part, Cancellation cancellation)
+            throws NoSuchAlgorithmException, IOException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long offset;
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+            offset = transferEngine.digest(channel, digest);
+        }
+
+        if (offset == entry.getLength()) {
+            logger.info(() -> "Partial download " + part.getAbsolutePath() + " is already complete.");
+            return Hex.encodeHexString(digest.digest());
+        }
+
+        logger.info(() -> "Resuming download of " + entry.getUrl() + " to " + part.getAbsolutePath()
+                + " from byte " + offset + " of " + entry.getLength());
+        return downloadStream(entry, part, offset, digest, cancellation);
+    }
+
+    /**
+     * Downloads the entry into the part file, requesting only the content after
+     * the offset if it is greater than zero. The digest must already contain the
+     * content of the part file up to the offset. If the server doesn't honour the
+     * range request the part file is truncated and the whole entry downloaded.
+     * Content received before a failure is kept in the part file to be resumed.
+     */
+    private String downloadStream(Entry entry, File part, long offset, MessageDigest digest,
+            Cancellation cancellation) throws IOException {
+        try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE)) {
+            TransportRequest request = new TransportRequest(entry.getUrl());
+            if (offset > 0) {
+                request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+            }
+            try (TransferWatch watch = retryPolicy.watch(request, "download of " + entry.getUrl(), cancellation)) {
+                try (TransportResponse response = execute(request)) {
+                    int status = response.getStatus();
+                    if (offset > 0 && status == HttpStatus.SC_PARTIAL_CONTENT
+                            && getContentRange(response).startsWith("bytes " + offset + "-")) {
+                        channel.position(offset);
+                        return transferBody(response, channel, digest, watch);
+                    } else if (status == HttpStatus.SC_OK) {
+                        restart(channel, digest, offset);
+                        return transferBody(response, channel, digest, watch);
+                    } else if (offset == 0 || RetryPolicy.isTransientStatus(status)) {
+                        throw RetryPolicy.failure(response, "Cannot download " + entry.getUrl());
+                    }
+                    logger.info(() -> "Unexpected status " + status + " resuming " + entry.getUrl());
+                } catch (IOException e) {
+                    throw watch.failure(e);
+                }
+            }
+
+            restart(channel, digest, offset);
+            TransportRequest fullRequest = new TransportRequest(entry.getUrl());
+            try (TransferWatch watch = retryPolicy.watch(fullRequest, "download of " + entry.getUrl(),
+                cancellation)) {
+                try (TransportResponse response = execute(fullRequest)) {
+                    if (response.getStatus() != HttpStatus.SC_OK) {
+                        throw RetryPolicy.failure(response, "Cannot download " + entry.getUrl());
+                    }
+                    return transferBody(response, channel, digest, watch);
+                } catch (IOException e) {
+                    throw watch.failure(e);
+                }
+            }
+        }
+    }
+
+    private void restart(FileChannel channel, MessageDigest digest, long offset) throws IOException {
+        if (offset > 0) {
+            logger.info("Server did not resume from byte " + offset + " - restarting download from the beginning.");
+        }
+        digest.reset();
+        channel.truncate(0);
+        channel.position(0);
+    }
+
+    private String transferBody(TransportResponse response, FileChannel channel, MessageDigest digest,
+            TransferWatch watch) throws IOException {
+        try {
+            transferEngine.transfer(watch.monitor(response.getBody()), channel, digest);
+        } catch (IOException e) {
+            try {
+                channel.force(false);
+            } catch (IOException forceException) {
+                e.addSuppressed(forceException);
+            }
+            throw e;
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private String getContentRange(TransportResponse response) {
+        String contentRange = response.getHeader(HttpHeaders.CONTENT_RANGE);
+        return contentRange == null ? "" : contentRange;
+    }
+
+    private void deleteIfExists(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /**
+     * Downloads the entry as a number of byte ranges fetched concurrently and
+     * written into their position in a file pre-sized to the entry's length. The
+     * first range is requested before the others, if the server responds with the
+     * whole file instead of the range it is streamed into the file as a single
+     * download.
+     */
+    private String downloadSegmented(Entry entry, File part, Cancellation cancellation)
+            throws NoSuchAlgorithmException, IOException {
+        long length = entry.getLength();
+        long segmentLength = (length + segments - 1) / segments;
+        int segmentCount = (int) ((length + segmentLength - 1) / segmentLength);
+
+        List<TransportRequest> requests = new ArrayList<>();
+        for (int i = 0; i < segmentCount; i++) {
+            TransportRequest request = new TransportRequest(entry.getUrl());
+            long start = i * segmentLength;
+            request.setHeader(HttpHeaders.RANGE,
+                "bytes=" + start + "-" + (Math.min(length, start + segmentLength) - 1));
+            requests.add(request);
+        }
+
+        ExecutorService executor = virtualThreads ? VirtualThreads.newExecutor("ncts-segment-")
+                : Executors.newFixedThreadPool(segmentCount - 1, new DownloadThreadFactory("ncts-segment-"));
+        boolean complete = false;
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw");
+                TransferWatch firstWatch = retryPolicy.watch(requests.get(0), "download of " + entry.getUrl(),
+                    cancellation)) {
+            FileChannel channel = file.getChannel();
+            try (TransportResponse first = execute(requests.get(0))) {
+                int status = first.getStatus();
+                if (status == HttpStatus.SC_OK) {
+                    logger.info(() -> "Server did not honour range request for " + entry.getUrl()
+                            + " - downloading as a single stream.");
+                    file.setLength(0);
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    transferEngine.transfer(firstWatch.monitor(first.getBody()), channel, digest);
+                    complete = true;
+                    return Hex.encodeHexString(digest.digest());
+                }
+
+                file.setLength(length);
+                List<Future<Void>> futures = new ArrayList<>();
+                for (int i = 1; i < segmentCount; i++) {
+                    TransportRequest request = requests.get(i);
+                    long start = i * segmentLength;
+                    long end = Math.min(length, start + segmentLength) - 1;
+                    futures.add(executor.submit(() -> {
+                        try (TransferWatch watch = retryPolicy.watch(request,
+                            "download of " + entry.getUrl() + " range " + start + "-" + end, cancellation)) {
+                            try (TransportResponse response = execute(request)) {
+                                writeSegment(response, channel, start, end, watch);
+                            } catch (IOException e) {
+                                throw watch.failure(e);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                try {
+                    writeSegment(first, channel, 0, segmentLength - 1, firstWatch);
+                } catch (IOException | RuntimeException e) {
+                    requests.forEach(TransportRequest::abort);
+                    throw e;
+                }
+                awaitSegments(futures, requests);
+            } catch (IOException e) {
+                throw firstWatch.failure(e);
+            }
+            complete = true;
+        } finally {
+            executor.shutdownNow();
+            if (!complete && part.exists() && !part.delete()) {
+                logger.warning(() -> "Unable to delete incomplete download " + part.getAbsolutePath());
+            }
+        }
+
+        return sha256(part);
+    }
+
+    private void writeSegment(TransportResponse response, FileChannel channel, long start, long end,
+            TransferWatch watch) throws IOException {
+        int status = response.getStatus();
+        if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+            throw RetryPolicy.failure(response, "Expected partial content for range " + start + "-" + end);
+        }
+        String contentRange = getContentRange(response);
+        if (!contentRange.startsWith("bytes " + start + "-" + end + "/")) {
+            throw new IOException("Expected content range " + start + "-" + end + " but received " + contentRange);
+        }
+
+        long written = transferEngine.transferAt(watch.monitor(response.getBody()), channel, start);
+        if (written != end - start + 1) {
+            throw new IOException("Range " + start + "-" + end + " ended after " + written + " bytes");
+        }
+    }
+
+    private void awaitSegments(List<Future<Void>> futures, List<TransportRequest> requests) throws IOException {
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            requests.forEach(TransportRequest::abort);
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted downloading segments");
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (ExecutionException e) {
+            requests.forEach(TransportRequest::abort);
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Segment download failed", e.getCause());
+        }
+    }
+
+    /**
+     * Executes the request with a bearer token. If the server rejects the token
+     * the request is retried once with a new token.
+     */
+    private TransportResponse execute(TransportRequest request) throws IOException {
+        String token = tokenProvider.getToken();
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        TransportResponse response = transport.openStream(request);
+        if (response.getStatus() != HttpStatus.SC_UNAUTHORIZED) {
+            return response;
+        }
+        response.close();
+
+        logger.info(() -> "Token rejected requesting " + request.getUri() + " - retrying with a new token.");
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + tokenProvider.refreshToken(token));
+        return transport.openStream(request);
+    }
+
+    /**
+     * @return the lock serialising work on the file, a {@link ReentrantLock}
+     *         rather than a monitor so a virtual thread holding it while
+     *         downloading doesn't pin the platform thread carrying it
+     */
+    private ReentrantLock getLock(File file) {
+        return outputFileLocks.computeIfAbsent(file.getAbsoluteFile(), f -> new ReentrantLock());
+    }
+
+    /**
+     * @return the file in the content store for the entry's content, or null if
+     *         no content store is used or the entry's SHA256 is not a lower case
+     *         hexadecimal SHA256 which can name a stored file
+     */
+    private File getStoredFile(Entry entry) {
+        if (contentStoreDirectory == null || !SHA256_PATTERN.matcher(entry.getSha256()).matches()) {
+            return null;
+        }
+        return new File(contentStoreDirectory, entry.getSha256());
     }
 
     private File getOutputFile(Entry entry, File outputDirectory) {
+        return new File(outputDirectory, getFileName(entry));
+    }
+
+    private static String getFileName(Entry entry) {
         String[] urlParts = entry.getUrl().split("[/]");
-        String filename = urlParts[urlParts.length - 1];
-        return new File(outputDirectory, filename);
+        return urlParts[urlParts.length - 1];
     }
 
-    private boolean sha256AndLengthMatch(Entry entry, File out) throws IOException {
-        String existingSha256;
-        try (FileInputStream fis = new FileInputStream(out)) {
-            existingSha256 = DigestUtils.sha256Hex(fis);
+    private boolean existingFileMatches(Entry entry, File out) throws IOException, NoSuchAlgorithmException {
+        if (out.length() != entry.getLength()) {
+            return false;
+        }
+        VerificationCache verificationCache = getVerificationCache(out);
+        if (!forceVerification && verificationCache.isVerified(out, entry.getSha256())) {
+            logger.fine(() -> "File " + out.getAbsolutePath() + " is unchanged since it was last verified.");
+            return true;
         }
 
-        return sha256AndLengthMatch(entry, out.length(), existingSha256);
+        String sha256 = sha256(out);
+        if (!sha256.equals(entry.getSha256())) {
+            verificationCache.remove(out);
+            return false;
+        }
+        verificationCache.record(out, sha256);
+        return true;
+    }
+
+    private VerificationCache getVerificationCache(File out) {
+        return verificationCaches.computeIfAbsent(out.getAbsoluteFile().getParentFile(),
+            directory -> new VerificationCache(directory, gson));
+    }
 
+    private String sha256(File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            transferEngine.digest(channel, digest);
+        }
+        return Hex.encodeHexString(digest.digest());
     }
 
     private boolean sha256AndLengthMatch(Entry entry, Long length, String existingSha256) {
         return length == entry.getLength() && existingSha256.equals(entry.getSha256());
     }
 
-    private String getBearerTokenFromAuthServer() {
-        if (token == null) {
-            try {
-                HttpClient client = HttpClientBuilder.create().build();
-                HttpPost post = new HttpPost(tokenUrl);
-                List<NameValuePair> data = new ArrayList<NameValuePair>();
-                data.add(new BasicNameValuePair("grant_type", "client_credentials"));
-                data.add(new BasicNameValuePair("client_id", clientId));
-                data.add(new BasicNameValuePair("client_secret", clientSecret));
-                post.addHeader("Content-Type", "application/x-www-form-urlencoded");
-                post.setEntity(new UrlEncodedFormEntity(data, "utf-8"));
-                HttpEntity responseEntity = client.execute(post).getEntity();
-                Type type = new TypeToken<Map<String, String>>() {
-                }.getType();
-                Map<String, String> responseMap = gson.fromJson(EntityUtils.toString(responseEntity), type);
-                token = responseMap.get("access_token");
-            } catch (IOException e) {
-                throw new AuthenticationException("Could not get token from authentication server", e);
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Sets the number of byte ranges entries at least
+     * {@link #getMinSegmentedLength()} long are split into and downloaded
+     * concurrently. Defaults to 1, downloading every entry as a single stream.
+     *
+     * @param segments number of concurrent ranges per entry
+     * @return this downloader
+     */
+    public NctsFileDownloader setSegments(int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("Segments must be at least 1 but was " + segments);
+        }
+        this.segments = segments;
+        return this;
+    }
+
+    public long getMinSegmentedLength() {
+        return minSegmentedLength;
+    }
+
+    /**
+     * Sets the minimum length of an entry for it to be downloaded in segments,
+     * defaults to {@link #DEFAULT_MIN_SEGMENTED_LENGTH}.
+     *
+     * @param minSegmentedLength minimum length in bytes
+     * @return this downloader
+     */
+    public NctsFileDownloader setMinSegmentedLength(long minSegmentedLength) {
+        this.minSegmentedLength = minSegmentedLength;
+        return this;
+    }
+
+    public boolean isForceVerification() {
+        return forceVerification;
+    }
+
+    /**
+     * Sets whether existing files are always hashed to verify them against the
+     * feed, rather than trusting the verification cache for files which are
+     * unchanged since they were last verified. Defaults to false.
+     *
+     * @param forceVerification true to hash every existing file
+     * @return this downloader
+     */
+    public NctsFileDownloader setForceVerification(boolean forceVerification) {
+        this.forceVerification = forceVerification;
+        return this;
+    }
+
+    public File getContentStoreDirectory() {
+        return contentStoreDirectory;
+    }
+
+    /**
+     * Sets the directory downloaded content is stored in, named by its SHA256,
+     * with each output file a link to the content it holds. Entries with the same
+     * content are downloaded and stored once however many of them there are.
+     * Hard links are used where possible, so the store should be on the same
+     * file system as the output directories, otherwise symbolic links are used.
+     * Defaults to null, downloading each entry to its output file.
+     *
+     * @param contentStoreDirectory directory to store content in, or null to
+     *            not use a content store
+     * @return this downloader
+     */
+    public NctsFileDownloader setContentStoreDirectory(File contentStoreDirectory) {
+        this.contentStoreDirectory = contentStoreDirectory;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy for retrying downloads which fail for reasons which may be
+     * transient and detecting stalled downloads, defaults to
+     * {@link RetryPolicy#none()}.
+     *
+     * @param retryPolicy policy to retry downloads with
+     * @return this downloader
+     */
+    public NctsFileDownloader setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Retry policy must be set");
+        }
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Sets when downloaded files are forced to storage, defaults to
+     * {@link FsyncPolicy#NEVER}. With {@link FsyncPolicy#PER_BATCH} call
+     * {@link #sync()} once a batch of downloads is complete.
+     *
+     * @param fsyncPolicy when to force downloaded files to storage
+     * @return this downloader
+     */
+    public NctsFileDownloader setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        if (fsyncPolicy == null) {
+            throw new IllegalArgumentException("Fsync policy must be set");
+        }
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets whether the segments of a segmented download are each fetched on
+     * their own virtual thread rather than a pool of platform threads created
+     * for the download, defaults to false. Virtual threads need Java 21 or
+     * later.
+     *
+     * @param virtualThreads true to fetch segments on virtual threads
+     * @return this downloader
+     * @throws UnsupportedOperationException if set to true on a version of Java
+     *             without virtual threads
+     */
+    public NctsFileDownloader setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException(
+                "Virtual threads require Java 21 or later, running on Java " + System.getProperty("java.version"));
+        }
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public List<URI> getMirrors() {
+        return mirrors;
+    }
+
+    /**
+     * Sets the mirrors tried in order for each entry's content before the URL in
+     * the feed. Each mirror is a base URL, either an <code>http</code> or
+     * <code>https</code> URL or a <code>file</code> URL of a directory, and is
+     * tried for a file with the name of the entry's file and then for a file
+     * named by the entry's SHA256, as a content store holds them. Content from a
+     * mirror is only used if it matches the SHA256 and length in the feed, and
+     * mirrors are never sent the bearer token. Defaults to no mirrors.
+     *
+     * @param mirrors base URLs of the mirrors, in the order to try them
+     * @return this downloader
+     * @throws IllegalArgumentException if a mirror isn't an <code>http</code>,
+     *             <code>https</code> or <code>file</code> URL
+     */
+    public NctsFileDownloader setMirrors(List<URI> mirrors) {
+        this.mirrors = checkMirrors(mirrors);
+        return this;
+    }
+
+    /**
+     * @return an unmodifiable copy of the mirrors
+     * @throws IllegalArgumentException if a mirror isn't an <code>http</code>,
+     *             <code>https</code> or <code>file</code> URL
+     */
+    static List<URI> checkMirrors(List<URI> mirrors) {
+        for (URI mirror : mirrors) {
+            String scheme = mirror.getScheme();
+            if (!"http".equals(scheme) && !"https".equals(scheme) && !"file".equals(scheme)) {
+                throw new IllegalArgumentException("Mirror must be an http, https or file URL but was " + mirror);
             }
         }
-        return token;
+        return Collections.unmodifiableList(new ArrayList<>(mirrors));
+    }
+
+    /**
+     * Writes any unsaved verification caches, and closes the transport if it
+     * was created by this downloader, a client or transport passed to the
+     * constructor is left open
+     */
+    @Override
+    public void close() throws IOException {
+        verificationCaches.values().forEach(VerificationCache::flush);
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
+
+    /**
+     * Identifies the entry a part file is being downloaded for
+     */
+    private static class ResumeState {
+        String url;
+        String sha256;
+        long length;
     }
 }
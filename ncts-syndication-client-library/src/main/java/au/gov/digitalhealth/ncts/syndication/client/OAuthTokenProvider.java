@@ -0,0 +1,323 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.AuthenticationException;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Obtains and caches access tokens from an OAuth2 token endpoint using the
+ * client credentials grant.
+ * <p>
+ * Tokens are cached until they expire according to the <code>expires_in</code>
+ * of the token response, or indefinitely if the response doesn't specify an
+ * expiry. Once a token is within {@link #getRefreshAhead()} milliseconds (or half
+ * its lifetime for short lived tokens) of expiring, the cached token is still
+ * returned and a new one is requested in the background so callers don't wait
+ * for it. Concurrent callers needing a token while one is being requested share
+ * that request rather than each making their own.
+ * <p>
+ * Instances are thread safe and can be shared by any number of
+ * {@link SyndicationClient}s and {@link NctsFileDownloader}s using the same
+ * client credentials.
+ */
+public class OAuthTokenProvider implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(OAuthTokenProvider.class.getName());
+
+    /**
+     * Default time in milliseconds before a token expires that a replacement is
+     * requested
+     */
+    public static final long DEFAULT_REFRESH_AHEAD = 60000;
+
+    private static final Type TOKEN_RESPONSE_TYPE = new TypeToken<Map<String, String>>() {
+    }.getType();
+
+    private final URI tokenUrl;
+    private final String clientId;
+    private final String clientSecret;
+    private final Transport transport;
+    private final boolean ownsTransport;
+    private final Executor refreshExecutor;
+    private final Gson gson = new Gson();
+    private long refreshAhead = DEFAULT_REFRESH_AHEAD;
+    private LongSupplier clock = System::currentTimeMillis;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.none();
+
+    private volatile Token token;
+    private CompletableFuture<Token> pendingRequest;
+
+    /**
+     * Constructs a new provider with its own HTTP client, which is closed by
+     * {@link #close()}.
+     *
+     * @param tokenUrl URL of the token endpoint
+     * @param clientId clientID for authentication
+     * @param clientSecret client secret for authentication
+     */
+    public OAuthTokenProvider(URI tokenUrl, String clientId, String clientSecret) {
+        this(null, tokenUrl, clientId, clientSecret);
+    }
+
+    /**
+     * Constructs a new provider requesting tokens through the specified client.
+     * The provider does not close a client passed to it, if the client is null the
+     * provider creates and owns its own client which is closed by {@link #close()}.
+     *
+     * @param tokenUrl URL of the token endpoint
+     * @param clientId clientID for authentication
+     * @param clientSecret client secret for authentication
+     * @param httpClient client to request tokens with, or null for the provider to
+     *            create its own
+     */
+    public OAuthTokenProvider(URI tokenUrl, String clientId, String clientSecret, CloseableHttpClient httpClient) {
+        this(httpClient == null ? null : new ApacheHttpTransport(httpClient), tokenUrl, clientId, clientSecret);
+    }
+
+    /**
+     * Constructs a new provider requesting tokens through the specified
+     * {@link Transport}. The provider does not close a transport passed to it, if
+     * the transport is null the provider creates and owns its own
+     * {@link ApacheHttpTransport} which is closed by {@link #close()}.
+     *
+     * @param transport transport to request tokens with, or null for the
+     *            provider to create its own
+     * @param tokenUrl URL of the token endpoint
+     * @param clientId clientID for authentication
+     * @param clientSecret client secret for authentication
+     */
+    public OAuthTokenProvider(Transport transport, URI tokenUrl, String clientId, String clientSecret) {
+        this.tokenUrl = tokenUrl;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.ownsTransport = transport == null;
+        this.transport = ownsTransport ? new ApacheHttpTransport() : transport;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "ncts-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        this.refreshExecutor = executor;
+    }
+
+    /**
+     * Returns a current access token, requesting one from the token endpoint if
+     * there is no cached token or it has expired. If the cached token is about to
+     * expire a replacement is requested in the background.
+     *
+     * @return the access token
+     * @throws AuthenticationException if a token cannot be obtained
+     */
+    public String getToken() {
+        Token current = token;
+        long now = clock.getAsLong();
+        if (current != null && now < current.expiresAt) {
+            if (now >= current.refreshAt) {
+                requestToken();
+            }
+            return current.value;
+        }
+        return await(requestToken()).value;
+    }
+
+    /**
+     * Returns a new access token to replace one rejected by a server, for example
+     * with a 401 response. If the rejected token has already been replaced, the
+     * replacement is returned without requesting another.
+     *
+     * @param rejectedToken the token which was rejected
+     * @return a different access token
+     * @throws AuthenticationException if a token cannot be obtained
+     */
+    public String refreshToken(String rejectedToken) {
+        CompletableFuture<Token> request;
+        synchronized (this) {
+            Token current = token;
+            if (current != null && !current.value.equals(rejectedToken)
+                    && clock.getAsLong() < current.expiresAt) {
+                return current.value;
+            }
+            token = null;
+            request = requestToken();
+        }
+        return await(request).value;
+    }
+
+    public URI getTokenUrl() {
+        return tokenUrl;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public long getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Sets how long before a token expires a replacement is requested in the
+     * background, defaults to {@link #DEFAULT_REFRESH_AHEAD}. Tokens with a
+     * lifetime of less than twice this are refreshed half way through their
+     * lifetime.
+     *
+     * @param refreshAhead time in milliseconds
+     * @return this provider
+     */
+    public OAuthTokenProvider setRefreshAhead(long refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy for retrying token requests which fail for reasons which
+     * may be transient, defaults to {@link RetryPolicy#none()}
+     *
+     * @param retryPolicy policy to retry token requests with
+     * @return this provider
+     */
+    public OAuthTokenProvider setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Retry policy must be set");
+        }
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Closes the transport if it was created by this provider, a client or
+     * transport passed to the constructor is left open
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
+
+    OAuthTokenProvider setClock(LongSupplier clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Starts a token request unless one is already in progress, in which case the
+     * pending request is returned so concurrent callers share it.
+     */
+    private synchronized CompletableFuture<Token> requestToken() {
+        if (pendingRequest == null || pendingRequest.isDone()) {
+            pendingRequest = CompletableFuture.supplyAsync(() -> {
+                Token newToken = fetchToken();
+                token = newToken;
+                return newToken;
+            }, refreshExecutor);
+            pendingRequest.whenComplete((newToken, e) -> {
+                if (e != null) {
+                    logger.log(Level.WARNING, "Failed requesting token from " + tokenUrl, e);
+                }
+            });
+        }
+        return pendingRequest;
+    }
+
+    private Token await(CompletableFuture<Token> request) {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AuthenticationException) {
+                throw (AuthenticationException) e.getCause();
+            }
+            throw new AuthenticationException("Could not get token from authentication server", e.getCause());
+        }
+    }
+
+    private Token fetchToken() {
+        long requestedAt = clock.getAsLong();
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("grant_type", "client_credentials");
+        form.put("client_id", clientId);
+        form.put("client_secret", clientSecret);
+        try {
+            Map<String, String> responseMap = retryPolicy.execute("requesting a token from " + tokenUrl, () -> {
+                TransportRequest request = new TransportRequest(tokenUrl).setHeader(HttpHeaders.CONTENT_TYPE,
+                    "application/x-www-form-urlencoded");
+                try (TransportResponse response = transport.fetchToken(request, form)) {
+                    int status = response.getStatus();
+                    String body = IOUtils.toString(response.getBody(), "UTF-8");
+                    if (RetryPolicy.isTransientStatus(status)) {
+                        throw RetryPolicy.failure(response, "Cannot get token from " + tokenUrl);
+                    } else if (status != HttpStatus.SC_OK) {
+                        throw new AuthenticationException(
+                            "Authentication server responded with status " + status + " requesting a token");
+                    }
+                    return gson.<Map<String, String>> fromJson(body, TOKEN_RESPONSE_TYPE);
+                }
+            });
+            if (responseMap == null || responseMap.get("access_token") == null) {
+                throw new AuthenticationException("Authentication server response did not contain a token");
+            }
+            return new Token(responseMap.get("access_token"), requestedAt, responseMap.get("expires_in"));
+        } catch (IOException | JsonParseException e) {
+            throw new AuthenticationException("Could not get token from authentication server", e);
+        }
+    }
+
+    private class Token {
+        final String value;
+        final long expiresAt;
+        final long refreshAt;
+
+        Token(String value, long requestedAt, String expiresIn) {
+            this.value = value;
+            long lifetime = parseExpiresIn(expiresIn);
+            if (lifetime < 0) {
+                expiresAt = Long.MAX_VALUE;
+                refreshAt = Long.MAX_VALUE;
+            } else {
+                expiresAt = requestedAt + lifetime;
+                refreshAt = expiresAt - Math.min(refreshAhead, lifetime / 2);
+            }
+        }
+
+        private long parseExpiresIn(String expiresIn) {
+            if (expiresIn == null) {
+                return -1;
+            }
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(expiresIn.trim()));
+            } catch (NumberFormatException e) {
+                logger.warning(() -> "Ignoring invalid token expires_in " + expiresIn);
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Creates the {@link CloseableHttpClient} shared by the feed reader, token
+ * requests and downloads so connections are kept alive and reused rather than
+ * established for every request.
+ */
+public final class PooledHttpClientFactory {
+
+    /**
+     * Default maximum number of pooled connections across all hosts
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+    /**
+     * Default maximum number of pooled connections to a single host
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    /**
+     * Default time in milliseconds to wait to establish a connection
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+
+    /**
+     * Default time in milliseconds to wait for data on an established connection
+     */
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+
+    /**
+     * Time in milliseconds an idle connection is kept alive if the server doesn't
+     * specify a keep alive timeout
+     */
+    static final long DEFAULT_KEEP_ALIVE = 30000;
+
+    private PooledHttpClientFactory() {}
+
+    /**
+     * @return a new pooled client with the default settings
+     */
+    public static CloseableHttpClient create() {
+        return create(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_CONNECT_TIMEOUT,
+            DEFAULT_SOCKET_TIMEOUT);
+    }
+
+    /**
+     * Creates a new pooled client. Idle connections are kept alive for as long as
+     * the server allows, or {@link #DEFAULT_KEEP_ALIVE} milliseconds if it doesn't
+     * say, and are evicted from the pool in the background once expired.
+     *
+     * @param maxConnections maximum number of pooled connections
+     * @param maxConnectionsPerRoute maximum number of pooled connections to a
+     *            single host
+     * @param connectTimeout time in milliseconds to wait to establish a
+     *            connection
+     * @param socketTimeout time in milliseconds to wait for data on an
+     *            established connection
+     * @return the new client, which must be closed to release its connections
+     */
+    public static CloseableHttpClient create(int maxConnections, int maxConnectionsPerRoute, int connectTimeout,
+            int socketTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE;
+        };
+
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(keepAliveStrategy)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(DEFAULT_KEEP_ALIVE, TimeUnit.MILLISECONDS)
+            .build();
+    }
+}
@@ -0,0 +1,410 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.DownloadCancelledException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.TransientHttpResponseException;
+
+/**
+ * Policy for retrying feed, token and artefact requests which fail for reasons
+ * which may be transient - a connection being reset or timing out, a transfer
+ * stalling, or the server responding with a status such as 503 Service
+ * Unavailable.
+ * <p>
+ * A request is attempted at most {@link #getMaxAttempts()} times. The delay
+ * before each retry starts at {@link #getInitialBackoff()} and is multiplied by
+ * {@link #getMultiplier()} for every further retry up to
+ * {@link #getMaxBackoff()}, and a random part of up to {@link #getJitter()} of
+ * the delay is taken off so clients failing together don't retry together. If
+ * the server responds with a <code>Retry-After</code> header the delay it asks
+ * for is used instead, up to {@link #getMaxRetryAfter()}.
+ * <p>
+ * If a {@link #getMinThroughput()} is set, transfers receiving less than it in
+ * bytes per second, measured over each {@link #getStallWindow()} from when the
+ * response starts, are aborted as stalled and retried.
+ */
+public class RetryPolicy {
+
+    private static final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+
+    /**
+     * Default maximum number of times a request is attempted
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    /**
+     * Default delay in milliseconds before the first retry
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 1000;
+
+    /**
+     * Default maximum delay in milliseconds between retries
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 30000;
+
+    /**
+     * Default factor the delay is multiplied by for each further retry
+     */
+    public static final double DEFAULT_MULTIPLIER = 2;
+
+    /**
+     * Default fraction of each delay which may be randomly taken off
+     */
+    public static final double DEFAULT_JITTER = 0.5;
+
+    /**
+     * Default maximum delay in milliseconds a <code>Retry-After</code> header is
+     * honoured for
+     */
+    public static final long DEFAULT_MAX_RETRY_AFTER = 120000;
+
+    /**
+     * Default minimum throughput in bytes per second before a transfer is
+     * considered stalled, 0 so stalled transfers are only detected once a
+     * minimum is set
+     */
+    public static final long DEFAULT_MIN_THROUGHPUT = 0;
+
+    /**
+     * Default time in milliseconds throughput is measured over
+     */
+    public static final long DEFAULT_STALL_WINDOW = 30000;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private double multiplier = DEFAULT_MULTIPLIER;
+    private double jitter = DEFAULT_JITTER;
+    private long maxRetryAfter = DEFAULT_MAX_RETRY_AFTER;
+    private long minThroughput = DEFAULT_MIN_THROUGHPUT;
+    private long stallWindow = DEFAULT_STALL_WINDOW;
+    private Sleeper sleeper = Thread::sleep;
+
+    /**
+     * @return a policy which attempts each request once and doesn't detect
+     *         stalled transfers
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy().setMaxAttempts(1).setMinThroughput(0);
+    }
+
+    /**
+     * Makes an attempt, retrying it according to this policy if it fails with a
+     * retryable {@link IOException}. Other exceptions are thrown straight away.
+     *
+     * @param description description of the attempt for log messages
+     * @param attempt the attempt to make
+     * @return the result of the first successful attempt
+     * @throws IOException the failure of the last attempt if none succeed, or an
+     *             {@link InterruptedIOException} if interrupted waiting to retry
+     * @throws E if an attempt fails with an exception other than an
+     *             {@link IOException}
+     */
+    public <T, E extends Exception> T execute(String description, Attempt<T, E> attempt) throws IOException, E {
+        for (int attemptNumber = 1;; attemptNumber++) {
+            try {
+                return attempt.run();
+            } catch (IOException e) {
+                if (attemptNumber >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                long delay = getDelay(attemptNumber, e);
+                int failedAttempt = attemptNumber;
+                logger.warning(() -> "Attempt " + failedAttempt + " of " + maxAttempts + " " + description
+                        + " failed, retrying in " + delay + "ms: " + e);
+                try {
+                    sleeper.sleep(delay);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException interrupted = new InterruptedIOException(
+                        "Interrupted waiting to retry " + description);
+                    interrupted.initCause(interruptedException);
+                    interrupted.addSuppressed(e);
+                    throw interrupted;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the exception reporting an unexpected response status, a
+     * {@link TransientHttpResponseException} which is retried if the status
+     * indicates a retry may succeed.
+     *
+     * @param response the response with the unexpected status
+     * @param message message describing the request
+     * @return exception to throw for the response
+     */
+    public static HttpResponseException failure(TransportResponse response, String message) {
+        int status = response.getStatus();
+        long retryAfter = getRetryAfter(response);
+        String statusMessage = message + ", server responded with status " + status;
+        if (isTransientStatus(status)) {
+            return new TransientHttpResponseException(status, statusMessage, retryAfter);
+        }
+        return new HttpResponseException(status, statusMessage);
+    }
+
+    /**
+     * @return true if a response with the status may succeed if the request is
+     *         retried
+     */
+    static boolean isTransientStatus(int status) {
+        return status == HttpStatus.SC_REQUEST_TIMEOUT || status == 429 || status == HttpStatus.SC_INTERNAL_SERVER_ERROR
+                || status == HttpStatus.SC_BAD_GATEWAY || status == HttpStatus.SC_SERVICE_UNAVAILABLE
+                || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * @return true if the failure may not happen again if the request is retried
+     */
+    boolean isRetryable(IOException e) {
+        if (e instanceof TransientHttpResponseException) {
+            return true;
+        }
+        if (e instanceof DownloadCancelledException || e instanceof ClientProtocolException
+                || e instanceof UnknownHostException || e instanceof SSLHandshakeException) {
+            return false;
+        }
+        return !(e instanceof InterruptedIOException && Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * @return delay in milliseconds before retrying after the failed attempt
+     */
+    long getDelay(int attemptNumber, IOException failure) {
+        if (failure instanceof TransientHttpResponseException
+                && ((TransientHttpResponseException) failure).getRetryAfter() >= 0) {
+            return Math.min(((TransientHttpResponseException) failure).getRetryAfter(), maxRetryAfter);
+        }
+        double backoff = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attemptNumber - 1.0));
+        return (long) (backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    /**
+     * @return milliseconds to wait from a <code>Retry-After</code> header of
+     *         seconds or an HTTP date, or -1 if there is no valid header
+     */
+    static long getRetryAfter(TransportResponse response) {
+        String header = response.getHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null) {
+            return -1;
+        }
+        String value = header.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Watches the request for a stalled transfer according to this policy
+     *
+     * @return a watch which must be closed once the transfer is complete
+     */
+    TransferWatch watch(TransportRequest request, String description) {
+        return watch(request, description, Cancellation.NONE);
+    }
+
+    /**
+     * Watches the request for a stalled transfer according to this policy, and
+     * aborts it if the download it is part of is cancelled
+     *
+     * @return a watch which must be closed once the transfer is complete
+     */
+    TransferWatch watch(TransportRequest request, String description, Cancellation cancellation) {
+        return TransferWatch.watch(request, description, minThroughput * stallWindow / 1000, stallWindow,
+            cancellation);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of times a request is attempted, defaults to
+     * {@link #DEFAULT_MAX_ATTEMPTS}
+     *
+     * @param maxAttempts maximum number of attempts, 1 to not retry
+     * @return this policy
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1 but was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Sets the delay before the first retry, defaults to
+     * {@link #DEFAULT_INITIAL_BACKOFF}
+     *
+     * @param initialBackoff delay in milliseconds
+     * @return this policy
+     */
+    public RetryPolicy setInitialBackoff(long initialBackoff) {
+        if (initialBackoff < 0) {
+            throw new IllegalArgumentException("Initial backoff cannot be negative but was " + initialBackoff);
+        }
+        this.initialBackoff = initialBackoff;
+        return this;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Sets the maximum delay between retries, defaults to
+     * {@link #DEFAULT_MAX_BACKOFF}
+     *
+     * @param maxBackoff delay in milliseconds
+     * @return this policy
+     */
+    public RetryPolicy setMaxBackoff(long maxBackoff) {
+        if (maxBackoff < 0) {
+            throw new IllegalArgumentException("Max backoff cannot be negative but was " + maxBackoff);
+        }
+        this.maxBackoff = maxBackoff;
+        return this;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Sets the factor the delay is multiplied by for each further retry,
+     * defaults to {@link #DEFAULT_MULTIPLIER}
+     *
+     * @param multiplier factor of at least 1
+     * @return this policy
+     */
+    public RetryPolicy setMultiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Multiplier must be at least 1 but was " + multiplier);
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Sets the fraction of each delay which may be randomly taken off, defaults
+     * to {@link #DEFAULT_JITTER}
+     *
+     * @param jitter fraction from 0, for exact delays, to 1
+     * @return this policy
+     */
+    public RetryPolicy setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be from 0 to 1 but was " + jitter);
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    public long getMaxRetryAfter() {
+        return maxRetryAfter;
+    }
+
+    /**
+     * Sets the longest delay asked for by a <code>Retry-After</code> header that
+     * is waited for, longer delays are cut short. Defaults to
+     * {@link #DEFAULT_MAX_RETRY_AFTER}.
+     *
+     * @param maxRetryAfter delay in milliseconds
+     * @return this policy
+     */
+    public RetryPolicy setMaxRetryAfter(long maxRetryAfter) {
+        if (maxRetryAfter < 0) {
+            throw new IllegalArgumentException("Max retry after cannot be negative but was " + maxRetryAfter);
+        }
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    public long getMinThroughput() {
+        return minThroughput;
+    }
+
+    /**
+     * Sets the minimum throughput of a transfer, below which it is aborted as
+     * stalled and retried. Defaults to {@link #DEFAULT_MIN_THROUGHPUT}.
+     *
+     * @param minThroughput bytes per second, 0 to not detect stalled transfers
+     * @return this policy
+     */
+    public RetryPolicy setMinThroughput(long minThroughput) {
+        if (minThroughput < 0) {
+            throw new IllegalArgumentException("Min throughput cannot be negative but was " + minThroughput);
+        }
+        this.minThroughput = minThroughput;
+        return this;
+    }
+
+    public long getStallWindow() {
+        return stallWindow;
+    }
+
+    /**
+     * Sets the time throughput is measured over to detect stalled transfers,
+     * defaults to {@link #DEFAULT_STALL_WINDOW}
+     *
+     * @param stallWindow time in milliseconds
+     * @return this policy
+     */
+    public RetryPolicy setStallWindow(long stallWindow) {
+        if (stallWindow < 1) {
+            throw new IllegalArgumentException("Stall window must be at least 1 but was " + stallWindow);
+        }
+        this.stallWindow = stallWindow;
+        return this;
+    }
+
+    RetryPolicy setSleeper(Sleeper sleeper) {
+        this.sleeper = sleeper;
+        return this;
+    }
+
+    /**
+     * An attempt at a request which may be retried
+     *
+     * @param <T> type of the result of the attempt
+     * @param <E> type of exception other than an {@link IOException} the attempt
+     *            can throw
+     */
+    @FunctionalInterface
+    public interface Attempt<T, E extends Exception> {
+        T run() throws IOException, E;
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+}
@@ -1,16 +1,34 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 import java.util.logging.Logger;
 
+
 import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
 import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationClientInitialisationException;
 import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationFeedException;
@@ -19,17 +37,58 @@ import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationFeedExc
  * Downloads the latest version of a syndication artefact.
  * <p>
  * Construct
+ * <p>
+ * The client keeps a pool of HTTP connections which is shared by the feed,
+ * token and download requests of every call and reused between calls. Call
+ * {@link #close()} once the client is no longer needed to release the
+ * connections.
  */
-public class SyndicationClient {
+public class SyndicationClient implements Closeable {
     private static final Logger logger = Logger.getLogger(SyndicationClient.class.getName());
     public static final String TOKEN_URL = "https://api.healthterminologies.gov.au/oauth2/token";
     public static final String FEED_URL = "https://api.healthterminologies.gov.au/syndication/v1/syndication.xml";
+    /**
+     * Default maximum number of entries downloaded at once when parallel
+     * downloads are enabled. Downloads are network bound so this is independent
+     * of the number of processors.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+    /**
+     * Default time in milliseconds a feed read by one call is reused by later
+     * calls. Zero reads the feed again for every call.
+     */
+    public static final long DEFAULT_FEED_TIME_TO_LIVE = 0;
 
     private URI feedUrl;
     private URI tokenUrl;
     private File outputDirectory;
     private String clientId;
     private String clientSecret;
+    private TransferEngine transferEngine = new TransferEngine();
+    private boolean parallelDownloads;
+    private int maxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+    private boolean virtualThreads;
+    private int downloadSegments = 1;
+    private long minSegmentedDownloadLength = NctsFileDownloader.DEFAULT_MIN_SEGMENTED_LENGTH;
+    private boolean forceVerification;
+    private File contentStoreDirectory;
+    private List<URI> mirrors = Collections.emptyList();
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.NEVER;
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    private int verificationThreads = Runtime.getRuntime().availableProcessors();
+    private File feedCacheDirectory;
+    private long feedTimeToLive = DEFAULT_FEED_TIME_TO_LIVE;
+    private LongSupplier clock = System::currentTimeMillis;
+    private final Object feedLock = new Object();
+    private FeedSnapshot feedSnapshot;
+    private int maxConnections = PooledHttpClientFactory.DEFAULT_MAX_CONNECTIONS;
+    private int maxConnectionsPerRoute = PooledHttpClientFactory.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int connectTimeout = PooledHttpClientFactory.DEFAULT_CONNECT_TIMEOUT;
+    private int socketTimeout = PooledHttpClientFactory.DEFAULT_SOCKET_TIMEOUT;
+    private TransportType transportType = TransportType.APACHE;
+    private Transport transport;
+    private OAuthTokenProvider tokenProvider;
+    private OAuthTokenProvider defaultTokenProvider;
 
     /**
      * Constructs a new client defaulting the token URL to {@link #TOKEN_URL} and
@@ -97,6 +156,18 @@ public class SyndicationClient {
      * SHA256 does not match the feed the item will be downloaded over the top of
      * the existing local copy. SHA256 hashes are tested for each download and if
      * they fail an exception is thrown and the client aborts.
+     * <p>
+     * If parallel downloads are enabled with {@link #setParallelDownloads(boolean)}
+     * up to {@link #getMaxConcurrentDownloads()} entries are downloaded at once,
+     * and a failure does not abort the other downloads. Once all the downloads
+     * have finished the first failure is thrown with any further failures added
+     * to it as suppressed exceptions. If virtual threads are enabled with
+     * {@link #setVirtualThreads(boolean)} each entry is downloaded on its own
+     * virtual thread instead, limited only by the connections available.
+     * <p>
+     * If a feed time to live is set with {@link #setFeedTimeToLive(long)} the
+     * feed read by one call is reused by the calls following it until it expires
+     * or {@link #refreshFeed()} is called.
      * 
      * @param latestOnly if true only the latest artefact version from each
      *            specified category will be downloaded, otherwise all
@@ -118,14 +189,17 @@ public class SyndicationClient {
      */
     public Map<String, List<DownloadResult>> download(boolean latestOnly, String... categories)
             throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
-        NctsFeedReader feedReader = new NctsFeedReader(feedUrl.toString());
-        NctsFileDownloader downloader = new NctsFileDownloader(tokenUrl, clientId, clientSecret);
+        Transport transport = getTransport();
+        NctsFeedReader feedReader = getFeedReader(transport, categories);
+        NctsFileDownloader downloader = createDownloader(transport);
 
         Map<String, Set<Entry>> matchingEntries = feedReader.getMatchingEntries(latestOnly, categories);
 
         Map<String, List<DownloadResult>> result = new HashMap<>();
         if (matchingEntries.isEmpty()) {
-            logger.warning(() -> "No entries found to download for specified categories " + categories);
+            logger.warning(() -> "No entries found to download for specified categories " + Arrays.toString(categories));
+        } else if (parallelDownloads) {
+            result = downloadConcurrently(downloader, matchingEntries);
         } else {
             for (String category : matchingEntries.keySet()) {
                 List<DownloadResult> downloads = new ArrayList<>();
@@ -135,10 +209,171 @@ public class SyndicationClient {
                 result.put(category, downloads);
             }
         }
+        downloader.sync();
 
         return result;
     }
 
+    private NctsFileDownloader createDownloader(Transport transport) {
+        return new NctsFileDownloader(getTokenProvider(transport), transport, transferEngine)
+            .setSegments(downloadSegments)
+            .setMinSegmentedLength(minSegmentedDownloadLength)
+            .setForceVerification(forceVerification)
+            .setContentStoreDirectory(contentStoreDirectory)
+            .setMirrors(mirrors)
+            .setFsyncPolicy(fsyncPolicy)
+            .setRetryPolicy(retryPolicy)
+            .setVirtualThreads(virtualThreads);
+    }
+
+    private Map<String, List<DownloadResult>> downloadConcurrently(NctsFileDownloader downloader,
+            Map<String, Set<Entry>> matchingEntries)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        int entryCount = matchingEntries.values().stream().mapToInt(Set::size).sum();
+        ExecutorService executor = virtualThreads ? VirtualThreads.newExecutor("ncts-download-")
+                : Executors.newFixedThreadPool(Math.min(maxConcurrentDownloads, entryCount),
+                    new DownloadThreadFactory("ncts-download-"));
+        try {
+            Map<String, List<Future<DownloadResult>>> futures = new HashMap<>();
+            for (String category : matchingEntries.keySet()) {
+                List<Future<DownloadResult>> categoryFutures = new ArrayList<>();
+                for (Entry entry : matchingEntries.get(category)) {
+                    categoryFutures.add(executor.submit(() -> downloader.downloadEntry(entry, outputDirectory)));
+                }
+                futures.put(category, categoryFutures);
+            }
+
+            Map<String, List<DownloadResult>> result = new HashMap<>();
+            Throwable failure = null;
+            for (String category : futures.keySet()) {
+                List<DownloadResult> downloads = new ArrayList<>();
+                for (Future<DownloadResult> future : futures.get(category)) {
+                    try {
+                        downloads.add(future.get());
+                    } catch (ExecutionException e) {
+                        logger.warning(() -> "Download failed for category " + category + ": " + e.getCause());
+                        if (failure == null) {
+                            failure = e.getCause();
+                        } else {
+                            failure.addSuppressed(e.getCause());
+                        }
+                    }
+                }
+                result.put(category, downloads);
+            }
+
+            if (failure != null) {
+                rethrowDownloadFailure(failure);
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted waiting for downloads");
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies that the files in the client's output directory match the feed
+     * entries in the specified categories, without downloading anything. Every
+     * file is hashed, regardless of the verification cache, using up to
+     * {@link #getVerificationThreads()} threads or a virtual thread per entry if
+     * virtual threads are enabled, and the report lists the
+     * entries whose files are valid, missing or corrupt.
+     * 
+     * @param latestOnly if true only the latest entry in each category is
+     *            verified, otherwise all entries in each category are verified
+     * @param categories syndication feed categories to verify
+     * @return report of the verification of each entry in the categories found
+     *         in the feed
+     * @throws IOException if an error occurs trying to get the feed or reading
+     *             the files
+     * @throws NoSuchAlgorithmException if the SHA256 algorithm can't be loaded
+     */
+    public VerificationReport verify(boolean latestOnly, String... categories)
+            throws IOException, NoSuchAlgorithmException {
+        Transport transport = getTransport();
+        NctsFeedReader feedReader = getFeedReader(transport, categories);
+        NctsFileDownloader downloader = new NctsFileDownloader(getTokenProvider(transport), transport,
+            transferEngine);
+        Map<String, Set<Entry>> matchingEntries = feedReader.getMatchingEntries(latestOnly, categories);
+
+        int entryCount = matchingEntries.values().stream().mapToInt(Set::size).sum();
+        if (entryCount == 0) {
+            logger.warning(() -> "No entries found to verify for specified categories " + Arrays.toString(categories));
+            return new VerificationReport(new HashMap<>());
+        }
+        ExecutorService executor = virtualThreads ? VirtualThreads.newExecutor("ncts-verify-")
+                : Executors.newFixedThreadPool(Math.min(verificationThreads, entryCount),
+                    new DownloadThreadFactory("ncts-verify-"));
+        try {
+            Map<String, List<Future<VerificationResult>>> futures = new HashMap<>();
+            for (String category : matchingEntries.keySet()) {
+                List<Future<VerificationResult>> categoryFutures = new ArrayList<>();
+                for (Entry entry : matchingEntries.get(category)) {
+                    categoryFutures.add(executor.submit(() -> downloader.verifyEntry(entry, outputDirectory)));
+                }
+                futures.put(category, categoryFutures);
+            }
+
+            Map<String, List<VerificationResult>> results = new HashMap<>();
+            for (String category : futures.keySet()) {
+                List<VerificationResult> categoryResults = new ArrayList<>();
+                for (Future<VerificationResult> future : futures.get(category)) {
+                    try {
+                        categoryResults.add(future.get());
+                    } catch (ExecutionException e) {
+                        rethrowVerificationFailure(e.getCause());
+                    }
+                }
+                results.put(category, categoryResults);
+            }
+            downloader.sync();
+            VerificationReport report = new VerificationReport(results);
+            logger.info(report::toString);
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted waiting for verification");
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void rethrowVerificationFailure(Throwable failure) throws IOException, NoSuchAlgorithmException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof NoSuchAlgorithmException) {
+            throw (NoSuchAlgorithmException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IllegalStateException("Unexpected verification failure", failure);
+    }
+
+    private static void rethrowDownloadFailure(Throwable failure)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof NoSuchAlgorithmException) {
+            throw (NoSuchAlgorithmException) failure;
+        } else if (failure instanceof HashValidationFailureException) {
+            throw (HashValidationFailureException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IllegalStateException("Unexpected download failure", failure);
+    }
+
     /**
      * Convenience method to download the latest file for the specified categories.
      * <p>
@@ -160,8 +395,11 @@ public class SyndicationClient {
      */
     public Map<String, DownloadResult> downloadLatestFromCategories(String... categories)
             throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
+        return toLatestResults(download(true, categories));
+    }
+
+    private static Map<String, DownloadResult> toLatestResults(Map<String, List<DownloadResult>> downloadResults) {
         Map<String, DownloadResult> result = new HashMap<>();
-        Map<String, List<DownloadResult>> downloadResults = download(true, categories);
         for (String category : downloadResults.keySet()) {
             if (downloadResults.get(category).size() != 1) {
                 throw new SyndicationFeedException("Expected only 1 result for category " + category
@@ -195,7 +433,10 @@ public class SyndicationClient {
      */
     public DownloadResult downloadLatest(String category)
             throws NoSuchAlgorithmException, IOException, HashValidationFailureException {
-        Map<String, DownloadResult> downloadResults = downloadLatestFromCategories(category);
+        return toCategoryResult(category, downloadLatestFromCategories(category));
+    }
+
+    private static DownloadResult toCategoryResult(String category, Map<String, DownloadResult> downloadResults) {
         if (downloadResults.keySet().size() != 1 || !downloadResults.keySet().iterator().next().equals(category)) {
             throw new SyndicationFeedException(
                 "Expected only 1 category " + category + " but encountered " + downloadResults.keySet());
@@ -204,6 +445,319 @@ public class SyndicationClient {
         return downloadResults.get(category);
     }
 
+    /**
+     * Non-blocking counterpart of {@link #download(boolean, String...)}. The feed
+     * is read and each matching entry downloaded as a separate task run by the
+     * executor, so the executor determines how many entries are downloaded at
+     * once and no thread waits for the downloads to finish.
+     * <p>
+     * The future completes once every entry has been downloaded. If any
+     * download fails the others still run to completion, and the future then
+     * completes exceptionally with the first failure, with any further failures
+     * added to it as suppressed exceptions. Cancelling the future aborts the
+     * transfers in progress, deletes their partly downloaded files and skips the
+     * downloads not yet started.
+     * 
+     * @param latestOnly if true only the latest artefact version from each
+     *            specified category will be downloaded, otherwise all
+     *            artefacts for each category will be downloaded
+     * @param executor executor to read the feed and download each entry with
+     * @param categories syndication feed categories to download
+     * @return future completed with a Map containing all the requested
+     *         categories and a List of {@link DownloadResult}s, one for each
+     *         artefact in the feed matching the categories provided and
+     *         latestOnly setting
+     */
+    public CompletableFuture<Map<String, List<DownloadResult>>> downloadAsync(boolean latestOnly, Executor executor,
+            String... categories) {
+        Transport transport = getTransport();
+        NctsFileDownloader downloader = createDownloader(transport);
+        CompletableFuture<Map<String, List<DownloadResult>>> result = new CompletableFuture<>();
+        List<CompletableFuture<?>> tasks = new CopyOnWriteArrayList<>();
+        result.whenComplete((results, failure) -> {
+            if (result.isCancelled()) {
+                tasks.forEach(task -> task.cancel(true));
+            }
+        });
+
+        CompletableFuture<Map<String, Set<Entry>>> feed = submit(executor,
+            () -> getFeedReader(transport, categories).getMatchingEntries(latestOnly, categories));
+        addTask(tasks, feed, result);
+        feed.whenComplete((matchingEntries, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            if (matchingEntries.isEmpty()) {
+                logger.warning(() -> "No entries found to download for specified categories "
+                        + Arrays.toString(categories));
+            }
+            Map<String, List<CompletableFuture<DownloadResult>>> downloads = new HashMap<>();
+            for (String category : matchingEntries.keySet()) {
+                List<CompletableFuture<DownloadResult>> categoryDownloads = new ArrayList<>();
+                for (Entry entry : matchingEntries.get(category)) {
+                    categoryDownloads.add(addTask(tasks, submitDownload(downloader, entry, executor, false),
+                        result));
+                }
+                downloads.put(category, categoryDownloads);
+            }
+
+            CompletableFuture.allOf(downloads.values().stream().flatMap(List::stream)
+                .toArray(CompletableFuture[]::new)).whenComplete((ignored, downloadFailure) -> {
+                    try {
+                        Map<String, List<DownloadResult>> results = collectDownloads(downloads);
+                        addTask(tasks, submit(executor, () -> {
+                            downloader.sync();
+                            return results;
+                        }), result).whenComplete(complete(result));
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+        });
+        return result;
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #downloadLatestFromCategories(String...)},
+     * see {@link #downloadAsync(boolean, Executor, String...)} for details.
+     * 
+     * @param executor executor to read the feed and download each entry with
+     * @param categories syndication feed categories to download
+     * @return future completed with a {@link Map} containing one
+     *         {@link DownloadResult} for each specified category
+     */
+    public CompletableFuture<Map<String, DownloadResult>> downloadLatestFromCategoriesAsync(Executor executor,
+            String... categories) {
+        return thenApply(downloadAsync(true, executor, categories), SyndicationClient::toLatestResults);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #downloadLatest(String)}, see
+     * {@link #downloadAsync(boolean, Executor, String...)} for details.
+     * 
+     * @param category syndication feed category to download
+     * @param executor executor to read the feed and download the entry with
+     * @return future completed with the {@link DownloadResult} for the latest
+     *         file in the category
+     */
+    public CompletableFuture<DownloadResult> downloadLatestAsync(String category, Executor executor) {
+        return thenApply(downloadLatestFromCategoriesAsync(executor, category),
+            results -> toCategoryResult(category, results));
+    }
+
+    /**
+     * Downloads a single entry found with {@link #getEntries(boolean, String...)}
+     * to the client's output directory as a task run by the executor, allowing
+     * each entry's download to be followed and cancelled separately. Cancelling
+     * the future aborts the transfer if it is in progress and deletes the partly
+     * downloaded file.
+     * 
+     * @param entry the entry to download
+     * @param executor executor to download the entry with
+     * @return future completed with the {@link DownloadResult} for the entry
+     */
+    public CompletableFuture<DownloadResult> downloadEntryAsync(Entry entry, Executor executor) {
+        return submitDownload(createDownloader(getTransport()), entry, executor, true);
+    }
+
+    /**
+     * Finds the entries in the feed for the specified categories, without
+     * downloading them.
+     * 
+     * @param latestOnly if true only the latest entry in each category is
+     *            returned, otherwise all entries in each category
+     * @param categories syndication feed categories to find entries for
+     * @return the entries found for each category found in the feed
+     * @throws IOException if an error occurs trying to get the feed
+     */
+    public Map<String, Set<Entry>> getEntries(boolean latestOnly, String... categories) throws IOException {
+        return getFeedReader(getTransport(), categories).getMatchingEntries(latestOnly, categories);
+    }
+
+    /**
+     * Runs the download of the entry on the executor, cancelling the download if
+     * the future is cancelled
+     */
+    private CompletableFuture<DownloadResult> submitDownload(NctsFileDownloader downloader, Entry entry,
+            Executor executor, boolean sync) {
+        Cancellation cancellation = new Cancellation();
+        CompletableFuture<DownloadResult> future = submit(executor, () -> cancellation.run(() -> {
+            DownloadResult result = downloader.downloadEntry(entry, outputDirectory, cancellation);
+            if (sync) {
+                downloader.sync();
+            }
+            return result;
+        }));
+        future.whenComplete((result, failure) -> {
+            if (future.isCancelled()) {
+                cancellation.cancel();
+            }
+        });
+        return future;
+    }
+
+    private static Map<String, List<DownloadResult>> collectDownloads(
+            Map<String, List<CompletableFuture<DownloadResult>>> downloads) throws Throwable {
+        Map<String, List<DownloadResult>> results = new HashMap<>();
+        Throwable failure = null;
+        for (String category : downloads.keySet()) {
+            List<DownloadResult> categoryResults = new ArrayList<>();
+            for (CompletableFuture<DownloadResult> download : downloads.get(category)) {
+                try {
+                    categoryResults.add(download.get());
+                } catch (ExecutionException e) {
+                    logger.warning(() -> "Download failed for category " + category + ": " + e.getCause());
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            results.put(category, categoryResults);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Runs the task on the executor, completing the future with its result or
+     * the exception it throws unless the future has already been completed, for
+     * example by being cancelled before the task started
+     */
+    private static <T> CompletableFuture<T> submit(Executor executor, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Adds the task to those cancelled when the result is cancelled, cancelling
+     * it straight away if the result already has been
+     */
+    private static <T> CompletableFuture<T> addTask(List<CompletableFuture<?>> tasks, CompletableFuture<T> task,
+            CompletableFuture<?> result) {
+        tasks.add(task);
+        if (result.isCancelled()) {
+            task.cancel(true);
+        }
+        return task;
+    }
+
+    /**
+     * Applies the function to the result of the future, cancelling the future
+     * if the returned future is cancelled
+     */
+    private static <T, R> CompletableFuture<R> thenApply(CompletableFuture<T> future, Function<T, R> function) {
+        CompletableFuture<R> result = future.thenApply(function);
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static <T> BiConsumer<T, Throwable> complete(CompletableFuture<T> future) {
+        return (value, failure) -> {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(value);
+            }
+        };
+    }
+
+    /**
+     * Reads the feed again, replacing the feed reused by later calls when a feed
+     * time to live is set, see {@link #setFeedTimeToLive(long)}.
+     * 
+     * @throws IOException if an error occurs trying to get the feed
+     */
+    public void refreshFeed() throws IOException {
+        synchronized (feedLock) {
+            feedSnapshot = null;
+            if (feedTimeToLive > 0) {
+                readFeedSnapshot(getTransport());
+            }
+        }
+    }
+
+    private NctsFeedReader getFeedReader(Transport transport, String... categories) throws IOException {
+        if (feedTimeToLive <= 0) {
+            Set<String> requestedCategories = new HashSet<>(Arrays.asList(categories));
+            return new NctsFeedReader(transport, feedUrl.toString(), requestedCategories::contains,
+                feedCacheDirectory, retryPolicy);
+        }
+        synchronized (feedLock) {
+            FeedSnapshot snapshot = feedSnapshot;
+            if (snapshot != null && snapshot.feedUrl.equals(feedUrl)
+                    && clock.getAsLong() - snapshot.readAt < feedTimeToLive) {
+                return snapshot.reader;
+            }
+            return readFeedSnapshot(transport);
+        }
+    }
+
+    private NctsFeedReader readFeedSnapshot(Transport transport) throws IOException {
+        // every category is kept so the snapshot can serve any later call
+        URI url = feedUrl;
+        long readAt = clock.getAsLong();
+        NctsFeedReader reader = new NctsFeedReader(transport, url.toString(), category -> true, feedCacheDirectory,
+            retryPolicy);
+        feedSnapshot = new FeedSnapshot(url, reader, readAt);
+        return reader;
+    }
+
+    /**
+     * Releases the HTTP connections held by this client. The client can still be
+     * used afterwards, a new transport is created when next needed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (transport != null) {
+            transport.close();
+            transport = null;
+            defaultTokenProvider = null;
+        }
+    }
+
+    private synchronized Transport getTransport() {
+        if (transport == null) {
+            transport = transportType == TransportType.JDK ? JdkHttpTransport.create(connectTimeout, socketTimeout)
+                    : new ApacheHttpTransport(PooledHttpClientFactory.create(maxConnections, maxConnectionsPerRoute,
+                        connectTimeout, socketTimeout), true);
+        }
+        return transport;
+    }
+
+    private synchronized OAuthTokenProvider getTokenProvider(Transport transport) {
+        if (tokenProvider != null) {
+            return tokenProvider;
+        }
+        if (defaultTokenProvider == null) {
+            defaultTokenProvider = new OAuthTokenProvider(transport, tokenUrl, clientId, clientSecret)
+                .setRetryPolicy(retryPolicy);
+        }
+        return defaultTokenProvider;
+    }
+
     public URI getFeedUrl() {
         return feedUrl;
     }
@@ -227,6 +781,7 @@ public class SyndicationClient {
 
     public SyndicationClient setTokenUrl(URI tokenUrl) {
         this.tokenUrl = tokenUrl;
+        resetDefaultTokenProvider();
         return this;
     }
 
@@ -245,6 +800,7 @@ public class SyndicationClient {
 
     public SyndicationClient setClientId(String clientId) {
         this.clientId = clientId;
+        resetDefaultTokenProvider();
         return this;
     }
 
@@ -254,6 +810,448 @@ public class SyndicationClient {
 
     public SyndicationClient setClientSecret(String clientSecret) {
         this.clientSecret = clientSecret;
+        resetDefaultTokenProvider();
         return this;
     }
+
+    public OAuthTokenProvider getTokenProvider() {
+        return tokenProvider;
+    }
+
+    /**
+     * Sets the provider of the access tokens used to authenticate downloads,
+     * allowing tokens to be shared between clients using the same credentials.
+     * When set the token URL, client id and client secret of this client are
+     * ignored. By default each client creates its own provider from these,
+     * caching its token across calls to {@link #download(boolean, String...)}.
+     * 
+     * @param tokenProvider shared token provider, or null to use this client's
+     *            credentials
+     * @return this client
+     */
+    public SyndicationClient setTokenProvider(OAuthTokenProvider tokenProvider) {
+        this.tokenProvider = tokenProvider;
+        return this;
+    }
+
+    private synchronized void resetDefaultTokenProvider() {
+        defaultTokenProvider = null;
+    }
+
+    public boolean isParallelDownloads() {
+        return parallelDownloads;
+    }
+
+    /**
+     * Enables downloading multiple entries at once, see
+     * {@link #download(boolean, String...)}. Disabled by default.
+     * 
+     * @param parallelDownloads true to download entries concurrently
+     * @return this client
+     */
+    public SyndicationClient setParallelDownloads(boolean parallelDownloads) {
+        this.parallelDownloads = parallelDownloads;
+        return this;
+    }
+
+    public int getMaxConcurrentDownloads() {
+        return maxConcurrentDownloads;
+    }
+
+    /**
+     * Sets the maximum number of entries downloaded at once when parallel
+     * downloads are enabled, defaults to {@link #DEFAULT_MAX_CONCURRENT_DOWNLOADS}.
+     * 
+     * @param maxConcurrentDownloads maximum number of concurrent downloads
+     * @return this client
+     */
+    public SyndicationClient setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads < 1) {
+            throw new IllegalArgumentException(
+                "Maximum concurrent downloads must be at least 1 but was " + maxConcurrentDownloads);
+        }
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        return this;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Runs each concurrent download, verification and download segment on its
+     * own virtual thread rather than a pool of platform threads, so the number
+     * of entries downloaded at once is limited by the connections available,
+     * see {@link #setMaxConnectionsPerRoute(int)}, rather than
+     * {@link #getMaxConcurrentDownloads()} and
+     * {@link #getVerificationThreads()}. Disabled by default, and only supported
+     * on Java 21 or later, see {@link #isVirtualThreadsSupported()}.
+     * 
+     * @param virtualThreads true to use virtual threads
+     * @return this client
+     * @throws UnsupportedOperationException if set to true on a version of Java
+     *             without virtual threads
+     */
+    public SyndicationClient setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads && !isVirtualThreadsSupported()) {
+            throw new UnsupportedOperationException(
+                "Virtual threads require Java 21 or later, running on Java " + System.getProperty("java.version"));
+        }
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * @return true if the running version of Java supports virtual threads, see
+     *         {@link #setVirtualThreads(boolean)}
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    public int getDownloadSegments() {
+        return downloadSegments;
+    }
+
+    /**
+     * Sets the number of byte ranges large entries are split into and downloaded
+     * concurrently using HTTP range requests. Defaults to 1, downloading each
+     * entry as a single stream. Servers that don't support range requests are
+     * downloaded from as a single stream regardless.
+     * 
+     * @param downloadSegments number of concurrent ranges per entry
+     * @return this client
+     */
+    public SyndicationClient setDownloadSegments(int downloadSegments) {
+        if (downloadSegments < 1) {
+            throw new IllegalArgumentException("Download segments must be at least 1 but was " + downloadSegments);
+        }
+        this.downloadSegments = downloadSegments;
+        return this;
+    }
+
+    public long getMinSegmentedDownloadLength() {
+        return minSegmentedDownloadLength;
+    }
+
+    /**
+     * Sets the minimum length of an entry for it to be downloaded in segments,
+     * defaults to {@link NctsFileDownloader#DEFAULT_MIN_SEGMENTED_LENGTH}.
+     * 
+     * @param minSegmentedDownloadLength minimum length in bytes
+     * @return this client
+     */
+    public SyndicationClient setMinSegmentedDownloadLength(long minSegmentedDownloadLength) {
+        this.minSegmentedDownloadLength = minSegmentedDownloadLength;
+        return this;
+    }
+
+    public boolean isForceVerification() {
+        return forceVerification;
+    }
+
+    /**
+     * Sets whether files already in the output directory are always hashed to
+     * verify them against the feed. By default a file which is unchanged since it
+     * was last verified, according to its size, modification time and file key,
+     * is trusted without reading it again.
+     * 
+     * @param forceVerification true to hash every existing file
+     * @return this client
+     */
+    public SyndicationClient setForceVerification(boolean forceVerification) {
+        this.forceVerification = forceVerification;
+        return this;
+    }
+
+    public File getContentStoreDirectory() {
+        return contentStoreDirectory;
+    }
+
+    /**
+     * Sets a directory to store downloaded content in once per SHA256, with the
+     * files in the output directory linked to it, so entries with identical
+     * content are only downloaded and stored once. Hard links are used where the
+     * store and output directory are on the same file system, otherwise symbolic
+     * links. Defaults to null, downloading each entry to its own file.
+     * 
+     * @param contentStoreDirectory directory to store content in, or null to
+     *            download each entry to its own file
+     * @return this client
+     */
+    public SyndicationClient setContentStoreDirectory(File contentStoreDirectory) {
+        this.contentStoreDirectory = contentStoreDirectory;
+        return this;
+    }
+
+    public List<URI> getMirrors() {
+        return mirrors;
+    }
+
+    /**
+     * Sets mirrors to try in order for each entry's content before the URL in
+     * the feed, falling back to the feed URL if no mirror has content matching
+     * the feed. Each mirror is an <code>http</code> or <code>https</code> base
+     * URL, or a <code>file</code> URL of a directory such as one on shared
+     * storage, holding files by the entry's file name or by its SHA256. Mirrors
+     * are never sent the bearer token. The feed itself is always read from the
+     * feed URL. Defaults to no mirrors.
+     * 
+     * @param mirrors base URLs of the mirrors, in the order to try them
+     * @return this client
+     * @throws IllegalArgumentException if a mirror isn't an <code>http</code>,
+     *             <code>https</code> or <code>file</code> URL
+     */
+    public SyndicationClient setMirrors(List<URI> mirrors) {
+        this.mirrors = NctsFileDownloader.checkMirrors(mirrors);
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy for retrying feed, token and download requests which fail
+     * for reasons which may be transient, such as a reset connection or a 503
+     * response, and for detecting stalled downloads. Defaults to a
+     * {@link RetryPolicy} with its default settings, use
+     * {@link RetryPolicy#none()} to not retry. A token provider set with
+     * {@link #setTokenProvider(OAuthTokenProvider)} keeps its own policy.
+     * 
+     * @param retryPolicy policy to retry requests with
+     * @return this client
+     */
+    public synchronized SyndicationClient setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Retry policy must be set");
+        }
+        this.retryPolicy = retryPolicy;
+        if (defaultTokenProvider != null) {
+            defaultTokenProvider.setRetryPolicy(retryPolicy);
+        }
+        return this;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Sets when downloaded files are forced to storage, never (the default),
+     * as each file is downloaded, or once for all the files downloaded by a call
+     * to {@link #download(boolean, String...)}. Files are always renamed into
+     * place once validated, so are never seen partly written.
+     * 
+     * @param fsyncPolicy when to force downloaded files to storage
+     * @return this client
+     */
+    public SyndicationClient setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        if (fsyncPolicy == null) {
+            throw new IllegalArgumentException("Fsync policy must be set");
+        }
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    public int getVerificationThreads() {
+        return verificationThreads;
+    }
+
+    /**
+     * Sets the maximum number of files hashed at once by
+     * {@link #verify(boolean, String...)}, defaults to the number of available
+     * processors.
+     * 
+     * @param verificationThreads maximum number of concurrent verifications
+     * @return this client
+     */
+    public SyndicationClient setVerificationThreads(int verificationThreads) {
+        if (verificationThreads < 1) {
+            throw new IllegalArgumentException(
+                "Verification threads must be at least 1 but was " + verificationThreads);
+        }
+        this.verificationThreads = verificationThreads;
+        return this;
+    }
+
+    public File getFeedCacheDirectory() {
+        return feedCacheDirectory;
+    }
+
+    /**
+     * Sets a directory to cache the syndication feed in. When set the feed is
+     * requested conditionally using the <code>ETag</code> and
+     * <code>Last-Modified</code> headers of the cached copy, and the cached copy
+     * is used if the feed hasn't changed. Defaults to null, downloading the feed
+     * for every call to {@link #download(boolean, String...)}.
+     * 
+     * @param feedCacheDirectory directory to cache the feed in, or null to not
+     *            cache it
+     * @return this client
+     */
+    public SyndicationClient setFeedCacheDirectory(File feedCacheDirectory) {
+        this.feedCacheDirectory = feedCacheDirectory;
+        return this;
+    }
+
+    public long getFeedTimeToLive() {
+        return feedTimeToLive;
+    }
+
+    /**
+     * Sets the time in milliseconds a feed read by one call is reused by later
+     * calls, so a burst of calls for different categories reads the feed once.
+     * Defaults to {@link #DEFAULT_FEED_TIME_TO_LIVE}, reading the feed for every
+     * call. While reused the whole feed is kept in memory rather than only the
+     * requested categories. Use {@link #refreshFeed()} to read the feed again
+     * before it expires.
+     * 
+     * @param feedTimeToLive time to live in milliseconds, or 0 to not reuse the
+     *            feed
+     * @return this client
+     */
+    public SyndicationClient setFeedTimeToLive(long feedTimeToLive) {
+        if (feedTimeToLive < 0) {
+            throw new IllegalArgumentException("Feed time to live must not be negative but was " + feedTimeToLive);
+        }
+        synchronized (feedLock) {
+            this.feedTimeToLive = feedTimeToLive;
+            feedSnapshot = null;
+        }
+        return this;
+    }
+
+    SyndicationClient setClock(LongSupplier clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    /**
+     * Sets the HTTP client requests are made with, defaults to
+     * {@link TransportType#APACHE}. {@link TransportType#JDK} negotiates HTTP/2,
+     * multiplexing concurrent downloads and download segments from a host over
+     * one connection rather than a connection each, and needs Java 11 or later.
+     * Takes effect the next time the transport is created, see {@link #close()}.
+     * 
+     * @param transportType the HTTP client to use
+     * @return this client
+     * @throws UnsupportedOperationException if the transport isn't supported on
+     *             the running version of Java
+     */
+    public SyndicationClient setTransportType(TransportType transportType) {
+        if (!transportType.isSupported()) {
+            throw new UnsupportedOperationException("Transport " + transportType
+                    + " is not supported on Java " + System.getProperty("java.version"));
+        }
+        this.transportType = transportType;
+        return this;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of pooled HTTP connections, defaults to
+     * {@link PooledHttpClientFactory#DEFAULT_MAX_CONNECTIONS}. Takes effect the
+     * next time the connection pool is created, see {@link #close()}. Only
+     * applies to the {@link TransportType#APACHE} transport.
+     * 
+     * @param maxConnections maximum number of connections
+     * @return this client
+     */
+    public SyndicationClient setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Sets the maximum number of pooled HTTP connections to a single host,
+     * defaults to {@link PooledHttpClientFactory#DEFAULT_MAX_CONNECTIONS_PER_ROUTE}.
+     * This limits the total number of concurrent downloads and download segments
+     * from the same host. Takes effect the next time the connection pool is
+     * created, see {@link #close()}. Only applies to the
+     * {@link TransportType#APACHE} transport.
+     * 
+     * @param maxConnectionsPerRoute maximum number of connections per host
+     * @return this client
+     */
+    public SyndicationClient setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait to establish an HTTP connection,
+     * defaults to {@link PooledHttpClientFactory#DEFAULT_CONNECT_TIMEOUT}. Takes
+     * effect the next time the connection pool is created, see {@link #close()}.
+     * 
+     * @param connectTimeout timeout in milliseconds
+     * @return this client
+     */
+    public SyndicationClient setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for data on an established HTTP
+     * connection, defaults to {@link PooledHttpClientFactory#DEFAULT_SOCKET_TIMEOUT}.
+     * The {@link TransportType#JDK} transport only waits this long for each
+     * response to start, stalled transfers are only detected if the
+     * {@link RetryPolicy} has a minimum throughput. Takes effect the next time the connection pool is
+     * created, see {@link #close()}.
+     * 
+     * @param socketTimeout timeout in milliseconds
+     * @return this client
+     */
+    public SyndicationClient setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+        return this;
+    }
+
+    public int getDownloadBufferSize() {
+        return transferEngine.getBufferSize();
+    }
+
+    /**
+     * Sets the size of the blocks downloaded content is read, hashed and written
+     * in, defaults to {@link TransferEngine#DEFAULT_BUFFER_SIZE}.
+     * 
+     * @param downloadBufferSize block size in bytes
+     * @return this client
+     */
+    public SyndicationClient setDownloadBufferSize(int downloadBufferSize) {
+        this.transferEngine = new TransferEngine(downloadBufferSize);
+        return this;
+    }
+
+    private static class FeedSnapshot {
+        private final URI feedUrl;
+        private final NctsFeedReader reader;
+        private final long readAt;
+
+        FeedSnapshot(URI feedUrl, NctsFeedReader reader, long readAt) {
+            this.feedUrl = feedUrl;
+            this.reader = reader;
+            this.readAt = readAt;
+        }
+    }
 }
@@ -0,0 +1,189 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Block oriented copy engine used to move artefact content between streams,
+ * channels and a {@link MessageDigest}.
+ * <p>
+ * Each transfer fills a buffer from the source, updates the digest with the
+ * block and writes the block to the target channel. Buffers are borrowed from a
+ * pool and returned once the transfer completes, so once the pool is warm a
+ * transfer performs no per block or per file buffer allocation. Instances are
+ * thread safe and can be shared between concurrent transfers.
+ */
+public class TransferEngine {
+
+    /**
+     * Default size in bytes of the buffers used for each block, used unless a
+     * size is specified
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final int bufferSize;
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs a new engine using buffers of {@link #DEFAULT_BUFFER_SIZE}
+     */
+    public TransferEngine() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new engine using buffers of the specified size
+     *
+     * @param bufferSize size in bytes of the blocks read, hashed and written
+     */
+    public TransferEngine(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive but was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Copies the content of the {@link InputStream} to the channel, updating the
+     * digest with every block copied. Neither the stream nor the channel are
+     * closed.
+     *
+     * @param in source of the content
+     * @param out channel to write the content to
+     * @param digest digest to update with the content, may be null
+     * @return number of bytes copied
+     * @throws IOException if the content cannot be read or written
+     */
+    public long transfer(InputStream in, WritableByteChannel out, MessageDigest digest) throws IOException {
+        return copy(in, digest, (buffer, offset) -> {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        });
+    }
+
+    /**
+     * Copies the content of the {@link InputStream} into the file channel starting
+     * at the specified position using positional writes, so multiple transfers can
+     * write different regions of the same channel concurrently. Neither the stream
+     * nor the channel are closed.
+     *
+     * @param in source of the content
+     * @param out channel to write the content to
+     * @param position position in the channel to write the first byte to
+     * @return number of bytes copied
+     * @throws IOException if the content cannot be read or written
+     */
+    public long transferAt(InputStream in, FileChannel out, long position) throws IOException {
+        return copy(in, null, (buffer, offset) -> {
+            long writePosition = position + offset;
+            while (buffer.hasRemaining()) {
+                writePosition += out.write(buffer, writePosition);
+            }
+        });
+    }
+
+    /**
+     * Reads the channel to its end updating the digest with all the content read.
+     * The channel is not closed.
+     *
+     * @param in channel to read
+     * @param digest digest to update with the content
+     * @return number of bytes read
+     * @throws IOException if the channel cannot be read
+     */
+    public long digest(ReadableByteChannel in, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            long total = 0;
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    digest.update(buffer.array(), 0, buffer.position());
+                    total += buffer.position();
+                    buffer.clear();
+                }
+            }
+            digest.update(buffer.array(), 0, buffer.position());
+            return total + buffer.position();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * @return size in bytes of the blocks this engine transfers
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getPooledBufferCount() {
+        return pool.size();
+    }
+
+    /**
+     * Copies the stream in blocks. If reading the stream fails part way through a
+     * block, the part of the block already read is still hashed and written before
+     * the failure is rethrown so the target holds everything that was received.
+     */
+    private long copy(InputStream in, MessageDigest digest, BlockWriter writer) throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            byte[] block = buffer.array();
+            long total = 0;
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                int filled = 0;
+                IOException failure = null;
+                try {
+                    int read;
+                    while (filled < block.length && (read = in.read(block, filled, block.length - filled)) != -1) {
+                        filled += read;
+                    }
+                    endOfStream = filled < block.length;
+                } catch (IOException e) {
+                    failure = e;
+                }
+
+                if (filled > 0) {
+                    if (digest != null) {
+                        digest.update(block, 0, filled);
+                    }
+                    buffer.clear();
+                    buffer.limit(filled);
+                    writer.write(buffer, total);
+                    total += filled;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        return buffer == null ? ByteBuffer.allocate(bufferSize) : buffer;
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    @FunctionalInterface
+    private interface BlockWriter {
+        void write(ByteBuffer block, long offset) throws IOException;
+    }
+}
@@ -0,0 +1,163 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.DownloadCancelledException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.TransferStalledException;
+
+/**
+ * Watches a request for stalls, aborting it if less than a minimum number of
+ * bytes of its response are received in any window of time. The first window
+ * starts when the body of the response is monitored, once its headers have
+ * arrived, so a server slow to start responding isn't treated as stalled.
+ * <p>
+ * Aborting the request makes a read blocked on its response fail, and
+ * {@link #failure(IOException)} then reports the failure as a
+ * {@link TransferStalledException} so it can be retried. All watches share one
+ * daemon thread which checks each of them once per window.
+ * <p>
+ * The request is also registered with the {@link Cancellation} of the download
+ * it is part of while the watch is open, so cancelling the download aborts it.
+ */
+final class TransferWatch implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TransferWatch.class.getName());
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ncts-transfer-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final TransferWatch UNWATCHED = new TransferWatch();
+
+    private final AtomicLong received = new AtomicLong();
+    private final TransportRequest request;
+    private final String description;
+    private final Cancellation cancellation;
+    private final long minBytes;
+    private final long window;
+    private ScheduledFuture<?> check;
+    private boolean closed;
+    private volatile boolean stalled;
+
+    private TransferWatch() {
+        request = null;
+        description = null;
+        cancellation = Cancellation.NONE;
+        minBytes = 0;
+        window = 0;
+    }
+
+    private TransferWatch(TransportRequest request, String description, long minBytes, long window,
+            Cancellation cancellation) {
+        this.request = request;
+        this.description = description;
+        this.cancellation = cancellation;
+        this.minBytes = minBytes;
+        this.window = window;
+        cancellation.register(request);
+    }
+
+    private ScheduledFuture<?> scheduleCheck() {
+        return WATCHDOG.scheduleAtFixedRate(() -> {
+            long bytes = received.getAndSet(0);
+            if (bytes < minBytes && !stalled) {
+                logger.warning(() -> "Aborting " + description + " which received " + bytes + " bytes in " + window
+                        + "ms, less than the minimum of " + minBytes);
+                stalled = true;
+                request.abort();
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param request request to abort if it stalls
+     * @param description description of the transfer for messages
+     * @param minBytes minimum number of bytes to receive in each window, 0 to
+     *            not watch the request
+     * @param window length of each window in milliseconds
+     * @param cancellation cancellation of the download the request is part of
+     * @return a watch which must be closed once the transfer is complete
+     */
+    static TransferWatch watch(TransportRequest request, String description, long minBytes,
+            long window, Cancellation cancellation) {
+        if (minBytes <= 0 && cancellation == Cancellation.NONE) {
+            return UNWATCHED;
+        }
+        return new TransferWatch(request, description, minBytes, window, cancellation);
+    }
+
+    /**
+     * Starts checking the transfer for stalls, if it isn't already
+     *
+     * @return the stream counting the bytes read from it as received
+     */
+    InputStream monitor(InputStream content) {
+        if (minBytes <= 0) {
+            return content;
+        }
+        synchronized (this) {
+            if (check == null && !closed) {
+                check = scheduleCheck();
+            }
+        }
+        return new FilterInputStream(content) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    received.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    received.addAndGet(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @return the failure to report for an exception raised by the transfer,
+     *         a {@link DownloadCancelledException} if the request was aborted
+     *         because the download was cancelled or a
+     *         {@link TransferStalledException} if it was aborted because it
+     *         stalled
+     */
+    IOException failure(IOException e) {
+        if (cancellation.isCancelled()) {
+            DownloadCancelledException cancelled = new DownloadCancelledException("Cancelled " + description);
+            cancelled.initCause(e);
+            return cancelled;
+        }
+        return stalled ? new TransferStalledException("Transfer stalled for " + description, e) : e;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (check != null) {
+                check.cancel(false);
+            }
+        }
+        if (request != null) {
+            cancellation.unregister(request);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Makes the HTTP requests of the feed reader, token provider and downloader,
+ * allowing the HTTP client they use to be replaced. {@link ApacheHttpTransport}
+ * is used by default, and the JDK HTTP client can be used instead on Java 11 or
+ * later, see {@link TransportType}.
+ * <p>
+ * Implementations must be thread safe, as one transport is shared by all the
+ * concurrent downloads of a client. Each request can be aborted from another
+ * thread with {@link TransportRequest#abort()}, which an implementation
+ * supports by setting an abort handler on the request before sending it.
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Fetches a syndication feed, the request may have
+     * <code>If-None-Match</code> and <code>If-Modified-Since</code> headers to
+     * make it conditional. The feed should be requested compressed where the
+     * transport can decode it, the body returned is always uncompressed.
+     *
+     * @param request the GET request for the feed
+     * @return the response, which must be closed
+     * @throws IOException if the request fails or is aborted
+     */
+    TransportResponse fetchFeed(TransportRequest request) throws IOException;
+
+    /**
+     * Fetches an access token by posting the form to the token endpoint
+     *
+     * @param request the POST request to the token endpoint
+     * @param form the form parameters, sent URL encoded as the request body
+     * @return the response, which must be closed
+     * @throws IOException if the request fails or is aborted
+     */
+    TransportResponse fetchToken(TransportRequest request, Map<String, String> form) throws IOException;
+
+    /**
+     * Opens the body of an artefact, the request may have a <code>Range</code>
+     * header asking for only part of it
+     *
+     * @param request the GET request for the artefact
+     * @return the response, which must be closed
+     * @throws IOException if the request fails or is aborted
+     */
+    TransportResponse openStream(TransportRequest request) throws IOException;
+}
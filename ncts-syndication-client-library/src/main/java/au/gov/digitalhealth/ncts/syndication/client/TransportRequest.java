@@ -0,0 +1,92 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Request to be made by a {@link Transport}, which can be aborted from another
+ * thread. Aborting a request makes sending it, or reading its response, fail
+ * with an {@link java.io.IOException}, and is used to stop stalled and
+ * cancelled transfers.
+ */
+public final class TransportRequest {
+
+    private final URI uri;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private Runnable abortHandler;
+    private boolean aborted;
+
+    public TransportRequest(URI uri) {
+        this.uri = uri;
+    }
+
+    public TransportRequest(String uri) {
+        this(URI.create(uri));
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return the headers to send, in the order they were set
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Sets a header to send with the request, replacing any value already set
+     *
+     * @param name name of the header
+     * @param value value of the header
+     * @return this request
+     */
+    public TransportRequest setHeader(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Sets what to do to abort the request, called by a {@link Transport} as it
+     * sends the request. If the request has already been aborted the handler is
+     * run straight away.
+     *
+     * @param abortHandler aborts the request in progress
+     */
+    public void setAbortHandler(Runnable abortHandler) {
+        synchronized (this) {
+            this.abortHandler = abortHandler;
+            if (!aborted) {
+                return;
+            }
+        }
+        abortHandler.run();
+    }
+
+    /**
+     * Aborts the request, or makes the request fail as soon as it is sent if it
+     * hasn't been sent yet
+     */
+    public void abort() {
+        Runnable handler;
+        synchronized (this) {
+            aborted = true;
+            handler = abortHandler;
+        }
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response to a request made by a {@link Transport}. Closing the response
+ * releases its connection, abandoning any of the body which hasn't been read.
+ */
+public interface TransportResponse extends Closeable {
+
+    /**
+     * @return the HTTP status code of the response
+     */
+    int getStatus();
+
+    /**
+     * @param name name of the header, matched ignoring case
+     * @return the first value of the header, or null if the response doesn't
+     *         have it
+     */
+    String getHeader(String name);
+
+    /**
+     * @return the body of the response, which can only be read once
+     * @throws IOException if the body cannot be read
+     */
+    InputStream getBody() throws IOException;
+}
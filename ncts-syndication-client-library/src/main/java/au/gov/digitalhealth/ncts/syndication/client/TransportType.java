@@ -0,0 +1,28 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+/**
+ * The HTTP clients a {@link SyndicationClient} can make its requests with, see
+ * {@link SyndicationClient#setTransportType(TransportType)}.
+ */
+public enum TransportType {
+    /**
+     * Apache HttpClient, over a pool of HTTP/1.1 connections limited by
+     * {@link SyndicationClient#getMaxConnections()} and
+     * {@link SyndicationClient#getMaxConnectionsPerRoute()}
+     */
+    APACHE,
+
+    /**
+     * The JDK HTTP client, negotiating HTTP/2 with servers supporting it so the
+     * concurrent downloads and download segments from a host are multiplexed
+     * over one connection. Needs Java 11 or later.
+     */
+    JDK;
+
+    /**
+     * @return true if the transport can be used on the running version of Java
+     */
+    public boolean isSupported() {
+        return this != JDK || JdkHttpTransport.isSupported();
+    }
+}
@@ -0,0 +1,161 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Records the SHA256 of files in a directory which have been verified against
+ * the feed, along with the size, modification time and file key of each file
+ * when it was verified. A file whose attributes haven't changed since it was
+ * verified can be trusted without hashing its content again. Modification
+ * times are compared at the full precision the file system records, not in
+ * milliseconds, so a rewrite of the same length within the same millisecond
+ * isn't mistaken for the verified file.
+ * <p>
+ * The cache is persisted to {@link NctsFileDownloader#VERIFICATION_CACHE_FILE}
+ * in the directory. Changes are held in memory until {@link #flush()} is
+ * called, so a run verifying many files writes the cache once rather than once
+ * per file.
+ */
+final class VerificationCache {
+
+    private static final Logger logger = Logger.getLogger(VerificationCache.class.getName());
+
+    private static final Type CACHE_TYPE = new TypeToken<TreeMap<String, Verification>>() {
+    }.getType();
+
+    private final Path cacheFile;
+    private final Gson gson;
+    private Map<String, Verification> verifications;
+    private boolean changed;
+
+    VerificationCache(File directory, Gson gson) {
+        this.cacheFile = new File(directory, NctsFileDownloader.VERIFICATION_CACHE_FILE).toPath();
+        this.gson = gson;
+    }
+
+    /**
+     * @return true if the file was previously verified to have the specified
+     *         SHA256 and its size, modification time and file key are unchanged
+     *         since
+     */
+    synchronized boolean isVerified(File file, String sha256) {
+        Verification verification = getVerifications().get(file.getName());
+        if (verification == null || !verification.sha256.equals(sha256)) {
+            return false;
+        }
+        try {
+            return verification.matches(Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records that the file's current content has the specified SHA256
+     */
+    synchronized void record(File file, String sha256) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            getVerifications().put(file.getName(), new Verification(sha256, attributes));
+            changed = true;
+        } catch (IOException e) {
+            logger.warning(() -> "Unable to record verification of " + file.getAbsolutePath() + ": " + e);
+        }
+    }
+
+    /**
+     * Forgets any previous verification of the file
+     */
+    synchronized void remove(File file) {
+        if (getVerifications().remove(file.getName()) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Writes the cache to the directory if it has changed since it was read or
+     * last written. A cache that can't be written is logged and left to be
+     * written by the next flush, files it doesn't record are hashed again
+     * rather than trusted.
+     */
+    synchronized void flush() {
+        if (changed) {
+            try {
+                save();
+                changed = false;
+            } catch (IOException e) {
+                logger.warning(() -> "Unable to update verification cache " + cacheFile + ": " + e);
+            }
+        }
+    }
+
+    private Map<String, Verification> getVerifications() {
+        if (verifications == null) {
+            verifications = new TreeMap<>();
+            if (Files.isRegularFile(cacheFile)) {
+                try {
+                    Map<String, Verification> saved = gson.fromJson(
+                        new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8), CACHE_TYPE);
+                    if (saved != null) {
+                        saved.values().removeIf(v -> v == null || v.sha256 == null);
+                        verifications.putAll(saved);
+                    }
+                } catch (IOException | JsonParseException e) {
+                    logger.warning(() -> "Ignoring unreadable verification cache " + cacheFile + ": " + e);
+                }
+            }
+        }
+        return verifications;
+    }
+
+    private void save() throws IOException {
+        Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        Files.write(temp, gson.toJson(verifications, CACHE_TYPE).getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class Verification {
+        String sha256;
+        long size;
+        long lastModifiedNanos;
+        String fileKey;
+
+        Verification(String sha256, BasicFileAttributes attributes) {
+            this.sha256 = sha256;
+            this.size = attributes.size();
+            this.lastModifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            this.fileKey = getFileKey(attributes);
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && lastModifiedNanos == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && Objects.equals(fileKey, getFileKey(attributes));
+        }
+
+        private static String getFileKey(BasicFileAttributes attributes) {
+            return attributes.fileKey() == null ? null : attributes.fileKey().toString();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import au.gov.digitalhealth.ncts.syndication.client.VerificationResult.Status;
+
+/**
+ * Report of verifying the local copies of the feed entries in one or more
+ * categories, see {@link SyndicationClient#verify(boolean, String...)}.
+ */
+public class VerificationReport {
+
+    private final Map<String, List<VerificationResult>> results;
+
+    /**
+     * @param results results of verifying each entry keyed by category
+     */
+    public VerificationReport(Map<String, List<VerificationResult>> results) {
+        this.results = Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * @return the results of verifying each entry keyed by category, only
+     *         including the requested categories found in the feed
+     */
+    public Map<String, List<VerificationResult>> getResults() {
+        return results;
+    }
+
+    public List<VerificationResult> getValid() {
+        return getResults(Status.VALID);
+    }
+
+    public List<VerificationResult> getMissing() {
+        return getResults(Status.MISSING);
+    }
+
+    public List<VerificationResult> getCorrupt() {
+        return getResults(Status.CORRUPT);
+    }
+
+    /**
+     * @return true if every entry verified has a local file matching the feed
+     */
+    public boolean isValid() {
+        return getMissing().isEmpty() && getCorrupt().isEmpty();
+    }
+
+    private List<VerificationResult> getResults(Status status) {
+        List<VerificationResult> matching = new ArrayList<>();
+        results.values().forEach(
+            categoryResults -> categoryResults.stream().filter(r -> r.getStatus() == status).forEach(matching::add));
+        return matching;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Verified ")
+            .append(results.values().stream().mapToInt(List::size).sum())
+            .append(" entries: ")
+            .append(getValid().size())
+            .append(" valid, ")
+            .append(getMissing().size())
+            .append(" missing, ")
+            .append(getCorrupt().size())
+            .append(" corrupt");
+        results.values()
+            .stream()
+            .flatMap(List::stream)
+            .filter(r -> r.getStatus() != Status.VALID)
+            .forEach(result -> report.append(System.lineSeparator()).append(result));
+        return report.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+
+/**
+ * Result of verifying that the local copy of a feed entry's artefact matches
+ * the SHA256 and length advertised in the feed, without downloading anything.
+ */
+public class VerificationResult {
+
+    /**
+     * Outcome of verifying an entry's local file
+     */
+    public enum Status {
+        /** the file matches the feed */
+        VALID,
+        /** there is no file for the entry */
+        MISSING,
+        /** the file's length or SHA256 doesn't match the feed */
+        CORRUPT
+    }
+
+    private final Entry entry;
+    private final File file;
+    private final Status status;
+    private final long length;
+    private final String sha256;
+
+    /**
+     * @param entry feed entry verified
+     * @param file local file expected to match the entry
+     * @param status outcome of the verification
+     * @param length length of the file, or -1 if it is missing
+     * @param sha256 SHA256 of the file, or null if it is missing or wasn't
+     *            hashed because its length doesn't match
+     */
+    public VerificationResult(Entry entry, File file, Status status, long length, String sha256) {
+        this.entry = entry;
+        this.file = file;
+        this.status = status;
+        this.length = length;
+        this.sha256 = sha256;
+    }
+
+    public Entry getEntry() {
+        return entry;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    @Override
+    public String toString() {
+        switch (status) {
+        case MISSING:
+            return "MISSING " + file + " for entry " + entry.getId();
+        case CORRUPT:
+            return "CORRUPT " + file + " for entry " + entry.getId() + " has length " + length
+                    + (sha256 == null ? "" : " and hash " + sha256) + " but the feed has length "
+                    + entry.getLength() + " and hash " + entry.getSha256();
+        default:
+            return "VALID " + file + " for entry " + entry.getId();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates executors running each task on its own virtual thread. Virtual
+ * threads need Java 21, this version is used on earlier versions of Java where
+ * they aren't supported - the library jar is a multi-release jar with the
+ * version used on Java 21 and later under <code>META-INF/versions/21</code>.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running version of Java supports virtual threads
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @param namePrefix prefix of the name of each thread, followed by a number
+     * @return an executor starting a new virtual thread for each task
+     * @throws UnsupportedOperationException if virtual threads aren't supported
+     */
+    static ExecutorService newExecutor(String namePrefix) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running on Java "
+                + System.getProperty("java.version"));
+    }
+}
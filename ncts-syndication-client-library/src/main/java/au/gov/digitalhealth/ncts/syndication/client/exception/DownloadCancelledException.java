@@ -0,0 +1,17 @@
+package au.gov.digitalhealth.ncts.syndication.client.exception;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Download stopped because it was cancelled, any transfer in progress is
+ * aborted and the partly downloaded content discarded
+ */
+public class DownloadCancelledException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DownloadCancelledException(String message) {
+        super(message);
+    }
+
+}
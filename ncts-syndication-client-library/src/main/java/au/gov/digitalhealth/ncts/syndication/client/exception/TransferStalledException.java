@@ -0,0 +1,17 @@
+package au.gov.digitalhealth.ncts.syndication.client.exception;
+
+import java.io.IOException;
+
+/**
+ * Transfer aborted because it was receiving less than the minimum throughput
+ * of the retry policy in use
+ */
+public class TransferStalledException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TransferStalledException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,29 @@
+package au.gov.digitalhealth.ncts.syndication.client.exception;
+
+import org.apache.http.client.HttpResponseException;
+
+/**
+ * Response with a status indicating the request may succeed if it is retried,
+ * such as 503 Service Unavailable, carrying any delay the server asked for in a
+ * <code>Retry-After</code> header.
+ */
+public class TransientHttpResponseException extends HttpResponseException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfter;
+
+    public TransientHttpResponseException(int statusCode, String message, long retryAfter) {
+        super(statusCode, message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return milliseconds the server asked to wait before retrying, or -1 if it
+     *         didn't say
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,20 @@
+package au.gov.digitalhealth.ncts.syndication.client.exception;
+
+import au.gov.digitalhealth.ncts.syndication.client.VerificationReport;
+
+public class VerificationFailureException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient VerificationReport report;
+
+    public VerificationFailureException(VerificationReport report) {
+        super(report.toString());
+        this.report = report;
+    }
+
+    public VerificationReport getReport() {
+        return report;
+    }
+
+}
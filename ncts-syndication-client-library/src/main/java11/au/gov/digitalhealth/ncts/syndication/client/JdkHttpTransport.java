@@ -0,0 +1,177 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link Transport} making requests with the JDK HTTP client, negotiating
+ * HTTP/2 with servers supporting it so concurrent requests to a host are
+ * multiplexed over one connection. This is the version used on Java 11 and
+ * later, packaged under <code>META-INF/versions/11</code> of the multi-release
+ * library jar.
+ */
+final class JdkHttpTransport implements Transport {
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    private JdkHttpTransport(int connectTimeout, int requestTimeout) {
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofMillis(connectTimeout))
+            .build();
+        this.requestTimeout = Duration.ofMillis(requestTimeout);
+    }
+
+    /**
+     * @return true if the running version of Java has the JDK HTTP client
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @param connectTimeout time in milliseconds to wait to establish a
+     *            connection
+     * @param requestTimeout time in milliseconds to wait for the response to a
+     *            request to start
+     * @return a new transport using its own JDK HTTP client
+     */
+    static Transport create(int connectTimeout, int requestTimeout) {
+        return new JdkHttpTransport(connectTimeout, requestTimeout);
+    }
+
+    /**
+     * Fetches the feed compressed with gzip, as the JDK HTTP client doesn't ask
+     * for or decode compressed content itself
+     */
+    @Override
+    public TransportResponse fetchFeed(TransportRequest request) throws IOException {
+        return send(request, newRequest(request).header("Accept-Encoding", "gzip").GET());
+    }
+
+    @Override
+    public TransportResponse fetchToken(TransportRequest request, Map<String, String> form) throws IOException {
+        StringJoiner body = new StringJoiner("&");
+        for (Map.Entry<String, String> parameter : form.entrySet()) {
+            body.add(encode(parameter.getKey()) + "=" + encode(parameter.getValue()));
+        }
+        return send(request, newRequest(request).POST(HttpRequest.BodyPublishers.ofString(body.toString())));
+    }
+
+    @Override
+    public TransportResponse openStream(TransportRequest request) throws IOException {
+        return send(request, newRequest(request).GET());
+    }
+
+    /**
+     * Closes the client on Java 21 and later, where it can be closed, earlier
+     * versions release its resources once it is no longer referenced
+     */
+    @Override
+    public void close() throws IOException {
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                throw new IOException("Cannot close HTTP client", e);
+            }
+        }
+    }
+
+    private HttpRequest.Builder newRequest(TransportRequest request) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri()).timeout(requestTimeout);
+        request.getHeaders().forEach(builder::header);
+        return builder;
+    }
+
+    /**
+     * Sends the request asynchronously so it can be aborted both while waiting for
+     * the response, by cancelling the exchange, and while reading its body, by
+     * closing the body which makes a blocked read fail
+     */
+    private TransportResponse send(TransportRequest request, HttpRequest.Builder builder) throws IOException {
+        CompletableFuture<HttpResponse<InputStream>> exchange = client.sendAsync(builder.build(),
+            HttpResponse.BodyHandlers.ofInputStream());
+        request.setAbortHandler(() -> {
+            exchange.cancel(true);
+            exchange.thenAccept(Response::closeQuietly);
+        });
+        try {
+            return new Response(exchange.get());
+        } catch (InterruptedException e) {
+            exchange.cancel(true);
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted requesting " + request);
+            interrupted.initCause(e);
+            throw interrupted;
+        } catch (CancellationException e) {
+            throw new IOException("Request to " + request + " aborted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Request to " + request + " failed", e.getCause());
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+    private static final class Response implements TransportResponse {
+        private final HttpResponse<InputStream> response;
+        private InputStream body;
+
+        Response(HttpResponse<InputStream> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatus() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = "gzip".equalsIgnoreCase(getHeader("Content-Encoding"))
+                        ? new GZIPInputStream(response.body())
+                        : response.body();
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            response.body().close();
+        }
+
+        static void closeQuietly(HttpResponse<InputStream> response) {
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                // the request is being aborted, so a failure closing it doesn't matter
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors running each task on its own virtual thread. This is the
+ * version used on Java 21 and later, packaged under
+ * <code>META-INF/versions/21</code> of the multi-release library jar.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running version of Java supports virtual threads
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @param namePrefix prefix of the name of each thread, followed by a number
+     * @return an executor starting a new virtual thread for each task
+     */
+    static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+}
@@ -0,0 +1,188 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.mockserver.client.server.MockServerClient;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * Runs against the packaged multi-release jar, so on Java 11 and later the JDK
+ * HTTP client version of {@link JdkHttpTransport} is loaded rather than the
+ * base version the unit tests see
+ */
+public class JdkHttpTransportIT {
+
+    private static final int PORT = 1084;
+    private static final String BASE_URL = "http://localhost:" + PORT;
+    private static final String PROTECTED_CONTENT = "protected content";
+    private static final File outDir = new File("target/jdk-transport-output");
+    private static final long ARTEFACT_SIZE = 64 * 1024 + 7;
+    private static final int SEGMENTS = 3;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(3)
+        .setArtefactSize(ARTEFACT_SIZE);
+
+    private ClientAndServer mockServer;
+    private MockServerClient mockServerClient;
+    private Transport transport;
+
+    @Test(description = "The feed is read compressed over the JDK transport")
+    public void readsFeed() throws IOException {
+        Entry entry = readLatestEntry();
+
+        int latest = generator.getLatestEntry(0);
+        assertEquals(entry.getUrl(), BASE_URL + "/artefacts/" + generator.getArtefactName(latest));
+        assertEquals(entry.getSha256(), generator.getArtefactSha256(latest));
+        assertEquals(entry.getLength(), ARTEFACT_SIZE);
+        mockServerClient.verify(
+            HttpRequest.request().withPath("/syndication.xml").withHeader("Accept-Encoding", ".*gzip.*"),
+            VerificationTimes.atLeast(1));
+    }
+
+    @Test(description = "A segmented download requests each range over the JDK transport")
+    public void downloadsRanges() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = readLatestEntry();
+        try (OAuthTokenProvider tokenProvider = new OAuthTokenProvider(transport, URI.create(BASE_URL + "/token"),
+            "test", "test");
+                NctsFileDownloader downloader = new NctsFileDownloader(tokenProvider, transport,
+                    new TransferEngine()).setSegments(SEGMENTS).setMinSegmentedLength(0)) {
+            DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+            try (InputStream expected = generator.openArtefact(generator.getLatestEntry(0));
+                    InputStream actual = Files.newInputStream(result.getFile().toPath())) {
+                assertTrue(IOUtils.contentEquals(expected, actual), "the download should match the artefact");
+            }
+        }
+        for (long[] range : getSegmentRanges()) {
+            mockServerClient.verify(HttpRequest.request()
+                .withPath("/artefacts/" + generator.getArtefactName(generator.getLatestEntry(0)))
+                .withHeader("Range", "bytes=" + range[0] + "-" + range[1])
+                .withHeader("Authorization", "Bearer valid"), VerificationTimes.exactly(1));
+        }
+    }
+
+    @Test(description = "A download rejected with a 401 is retried once with a new token over the JDK transport")
+    public void retriesRejectedToken() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (OAuthTokenProvider tokenProvider = new OAuthTokenProvider(transport,
+            URI.create(BASE_URL + "/rotatingToken"), "test", "test");
+                NctsFileDownloader downloader = new NctsFileDownloader(tokenProvider, transport,
+                    new TransferEngine())) {
+            Entry entry = new Entry("urn:uuid:protected", DigestUtils.sha256Hex(PROTECTED_CONTENT),
+                BASE_URL + "/protected.txt", PROTECTED_CONTENT.length(), "http://snomed.info/sct/32506021000036107",
+                "http://snomed.info/sct/32506021000036107/version/20171231", "SCT_RF2_TEST",
+                "http://ns.electronichealth.net.au/ncts/syndication/asf/scheme/1.0.0");
+
+            DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+            assertEquals(new String(Files.readAllBytes(result.getFile().toPath()), StandardCharsets.UTF_8),
+                PROTECTED_CONTENT);
+        }
+        mockServerClient.verify(HttpRequest.request().withPath("/rotatingToken"), VerificationTimes.exactly(2));
+        mockServerClient.verify(HttpRequest.request().withPath("/protected.txt"), VerificationTimes.exactly(2));
+    }
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            throw new SkipException("The JDK HTTP client needs Java 11 or later, running on Java " + version);
+        }
+        assertTrue(TransportType.JDK.isSupported(), "the Java 11 version of the transport should be loaded");
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+
+        mockServer = startClientAndServer(PORT);
+        mockServerClient = new MockServerClient("localhost", PORT);
+        File feed = generator.writeFeed(new File(outDir, "syndication.xml"), BASE_URL + "/artefacts");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            Files.copy(feed.toPath(), out);
+        }
+        mockServerClient
+            .when(HttpRequest.request().withPath("/syndication.xml").withHeader("Accept-Encoding", ".*gzip.*"))
+            .respond(HttpResponse.response()
+                .withHeader("Content-Type", "application/atom+xml")
+                .withHeader("Content-Encoding", "gzip")
+                .withBody(compressed.toByteArray()));
+        mockServerClient.when(HttpRequest.request().withPath("/token"))
+            .respond(HttpResponse.response().withBody("{ \"access_token\":\"valid\", \"expires_in\":3600}"));
+
+        byte[] artefact;
+        try (InputStream content = generator.openArtefact(generator.getLatestEntry(0))) {
+            artefact = IOUtils.toByteArray(content);
+        }
+        for (long[] range : getSegmentRanges()) {
+            mockServerClient
+                .when(HttpRequest.request()
+                    .withPath("/artefacts/" + generator.getArtefactName(generator.getLatestEntry(0)))
+                    .withHeader("Range", "bytes=" + range[0] + "-" + range[1]))
+                .respond(HttpResponse.response()
+                    .withStatusCode(206)
+                    .withHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + ARTEFACT_SIZE)
+                    .withBody(Arrays.copyOfRange(artefact, (int) range[0], (int) range[1] + 1)));
+        }
+
+        mockServerClient.when(HttpRequest.request().withPath("/rotatingToken"), Times.once())
+            .respond(HttpResponse.response().withBody("{ \"access_token\":\"first\", \"expires_in\":120}"));
+        mockServerClient.when(HttpRequest.request().withPath("/rotatingToken"))
+            .respond(HttpResponse.response().withBody("{ \"access_token\":\"second\", \"expires_in\":120}"));
+        mockServerClient
+            .when(HttpRequest.request().withPath("/protected.txt").withHeader("Authorization", "Bearer second"))
+            .respond(HttpResponse.response().withBody(PROTECTED_CONTENT));
+        mockServerClient.when(HttpRequest.request().withPath("/protected.txt"))
+            .respond(HttpResponse.response().withStatusCode(401));
+
+        transport = JdkHttpTransport.create(30000, 60000);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown() throws IOException {
+        if (transport != null) {
+            transport.close();
+        }
+        if (mockServer != null) {
+            mockServer.stop();
+        }
+    }
+
+    private Entry readLatestEntry() throws IOException {
+        return new NctsFeedReader(transport, BASE_URL + "/syndication.xml", category -> true, null,
+            RetryPolicy.none()).getLatestMatchingEntry(generator.getCategory(0));
+    }
+
+    private static long[][] getSegmentRanges() {
+        long segmentLength = (ARTEFACT_SIZE + SEGMENTS - 1) / SEGMENTS;
+        long[][] ranges = new long[SEGMENTS][];
+        for (int i = 0; i < SEGMENTS; i++) {
+            long start = i * segmentLength;
+            ranges[i] = new long[] { start, Math.min(ARTEFACT_SIZE, start + segmentLength) - 1 };
+        }
+        return ranges;
+    }
+}
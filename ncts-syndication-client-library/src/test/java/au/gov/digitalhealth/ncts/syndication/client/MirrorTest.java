@@ -0,0 +1,224 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+public class MirrorTest {
+
+    private static final File outDir = new File("target/mirror-output");
+    private static final File mirrorDir = new File("target/mirror-directory");
+    private static final File emptyMirrorDir = new File("target/mirror-empty");
+    private static final long ARTEFACT_SIZE = 16 * 1024;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(4)
+        .setCategories(2)
+        .setArtefactSize(ARTEFACT_SIZE);
+
+    @Test(description = "Entries are copied from a mirror directory by file name rather than downloaded")
+    public void copiesFromDirectoryByName()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        generator.writeArtefacts(mirrorDir);
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                SyndicationClient client = newClient(origin, mirrorDir.toURI())) {
+            List<DownloadResult> results = downloadAll(client);
+
+            assertEquals(results.size(), generator.getEntries());
+            assertValid(results);
+            assertEquals(origin.getArtefactRequests(), 0, "every entry should come from the mirror");
+        }
+    }
+
+    @Test(description = "Content is found by SHA256 when the file by name doesn't match the feed")
+    public void findsContentBySha256()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        mirrorDir.mkdirs();
+        for (int i = 0; i < generator.getEntries(); i++) {
+            try (InputStream content = generator.openArtefact(i)) {
+                Files.copy(content, new File(mirrorDir, generator.getArtefactSha256(i)).toPath());
+            }
+        }
+        // same length as the entry, but not its content
+        Files.write(new File(mirrorDir, generator.getArtefactName(0)).toPath(), new byte[(int) ARTEFACT_SIZE]);
+
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                SyndicationClient client = newClient(origin, emptyMirrorDir.toURI(), mirrorDir.toURI())) {
+            List<DownloadResult> results = downloadAll(client);
+
+            assertValid(results);
+            assertEquals(origin.getArtefactRequests(), 0, "every entry should come from the mirror");
+        }
+    }
+
+    @Test(description = "Entries no mirror has matching content for are downloaded from the feed URL")
+    public void fallsBackToOrigin() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        SyntheticFeedGenerator stale = new SyntheticFeedGenerator().setEntries(generator.getEntries())
+            .setCategories(generator.getCategories())
+            .setArtefactSize(ARTEFACT_SIZE)
+            .setSeed(generator.getSeed() + 1);
+        try (LocalNctsServer origin = new LocalNctsServer(generator);
+                RecordingMirror mirror = new RecordingMirror(stale);
+                SyndicationClient client = newClient(origin, URI.create(mirror.getBaseUrl() + "/ncts/"),
+                    emptyMirrorDir.toURI())) {
+            List<DownloadResult> results = downloadAll(client);
+
+            assertValid(results);
+            assertEquals(origin.getArtefactRequests(), generator.getEntries(),
+                "every entry should come from the origin");
+            assertTrue(mirror.requests.size() >= generator.getEntries(), "the mirror should be tried first");
+            for (String authorization : mirror.authorizations) {
+                assertNull(authorization, "the bearer token should not be sent to a mirror");
+            }
+        }
+    }
+
+    @Test(description = "A corrupt mirror doesn't discard a part file kept to resume a download from the feed URL")
+    public void corruptMirrorKeepsResumablePart()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer origin = new LocalNctsServer(generator)) {
+            Entry entry = new NctsFeedReader(origin.getFeedUrl())
+                .getLatestMatchingEntry(generator.getCategory(0));
+            String name = generator.getArtefactName(generator.getLatestEntry(0));
+            File part = new File(outDir, name + NctsFileDownloader.PART_SUFFIX);
+            File resumeState = new File(outDir, name + NctsFileDownloader.RESUME_STATE_SUFFIX);
+
+            origin.addArtefactFault(LocalNctsServer.Fault.reset(ARTEFACT_SIZE / 2));
+            try (NctsFileDownloader downloader = newDownloader(origin).setRetryPolicy(RetryPolicy.none())) {
+                downloader.downloadEntry(entry, outDir);
+                fail("Expected the dropped connection to fail the download");
+            } catch (IOException e) {
+                assertTrue(part.length() > 0, "the content received should be kept in the part file");
+                assertTrue(resumeState.isFile(), "the resume state should be kept");
+            }
+            long offset = part.length();
+
+            // same length as the entry, but not its content
+            Files.write(new File(mirrorDir, name).toPath(), new byte[(int) ARTEFACT_SIZE]);
+            try (NctsFileDownloader downloader = newDownloader(origin)
+                .setMirrors(Collections.singletonList(mirrorDir.toURI()))) {
+                assertValid(Collections.singletonList(downloader.downloadEntry(entry, outDir)));
+            }
+
+            List<String> ranges = origin.getArtefactRanges();
+            assertEquals(ranges.get(ranges.size() - 1), "bytes=" + offset + "-",
+                "the origin download should resume from the part file");
+            assertFalse(new File(outDir, name + NctsFileDownloader.MIRROR_PART_SUFFIX).exists(),
+                "the mirror's content should be discarded");
+        }
+    }
+
+    @Test(description = "Only http, https and file mirrors are accepted")
+    public void rejectsOtherSchemes() {
+        try {
+            new SyndicationClient().setMirrors(Collections.singletonList(URI.create("ftp://mirror/ncts")));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("ftp://mirror/ncts"), e.getMessage());
+        }
+    }
+
+    @BeforeMethod
+    public void cleanDirectories() throws IOException {
+        for (File dir : new File[] { outDir, mirrorDir, emptyMirrorDir }) {
+            dir.mkdirs();
+            FileUtils.cleanDirectory(dir);
+        }
+    }
+
+    private static SyndicationClient newClient(LocalNctsServer origin, URI... mirrors) {
+        return new SyndicationClient(origin.getFeedUrl(), origin.getTokenUrl(), outDir, "test", "test")
+            .setMirrors(Arrays.asList(mirrors));
+    }
+
+    private static NctsFileDownloader newDownloader(LocalNctsServer origin) {
+        return new NctsFileDownloader(URI.create(origin.getTokenUrl()), "test", "test");
+    }
+
+    private List<DownloadResult> downloadAll(SyndicationClient client)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Map<String, List<DownloadResult>> results = client.download(false, generator.getCategory(0),
+            generator.getCategory(1));
+        List<DownloadResult> all = new ArrayList<>();
+        results.values().forEach(all::addAll);
+        return all;
+    }
+
+    private void assertValid(List<DownloadResult> results) throws IOException {
+        for (DownloadResult result : results) {
+            int entry = generator.getEntry(result.getFile().getName());
+            try (InputStream expected = generator.openArtefact(entry);
+                    InputStream actual = Files.newInputStream(result.getFile().toPath())) {
+                assertTrue(IOUtils.contentEquals(expected, actual), result.getFile() + " should match the feed");
+            }
+        }
+    }
+
+    /**
+     * Mirror serving stale content for every artefact, recording the requests it
+     * receives and their <code>Authorization</code> headers
+     */
+    private static class RecordingMirror implements AutoCloseable {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        final List<String> authorizations = Collections.synchronizedList(new ArrayList<>());
+        private final SyntheticFeedGenerator content;
+        private final HttpServer server;
+
+        RecordingMirror(SyntheticFeedGenerator content) throws IOException {
+            this.content = content;
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/ncts/", this::serve);
+            server.start();
+        }
+
+        String getBaseUrl() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        private void serve(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            requests.add(path);
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            int entry = content.getEntry(path.substring(path.lastIndexOf('/') + 1));
+            if (entry < 0) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, content.getArtefactSize());
+            try (InputStream in = content.openArtefact(entry); OutputStream out = exchange.getResponseBody()) {
+                IOUtils.copy(in, out);
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.UUID;
 
@@ -9,6 +11,7 @@ import org.testng.annotations.Test;
 
 import au.gov.digitalhealth.ncts.syndication.client.exception.MismatchingContentItemIdentifierException;
 import au.gov.digitalhealth.ncts.syndication.client.exception.MismatchingEntryVersionFormatException;
+import de.skuzzle.semantic.Version.VersionFormatException;
 
 public class NctsEntryVersionComparatorTest {
     private static final String TEST_GREATER_SCT_VERSION = "http://snomed.info/sct/123/version/20180228";
@@ -145,6 +148,44 @@ public class NctsEntryVersionComparatorTest {
         comparator.compare(createEntry("123"), createEntry("1.2.3"));
     }
 
+    @Test(description = "compare entries with mismatching formats - sem ver and SCT URI", expectedExceptions = {
+            UnsupportedVersionFormatException.class })
+    public void compareMismatchingFormatSemVerAndSctUri() {
+        comparator.compare(createEntry("1.2.3"), createEntry(TEST_SCT_VERSION));
+    }
+
+    @Test(description = "compare entries with mismatching formats - number and SCT URI", expectedExceptions = {
+            MismatchingEntryVersionFormatException.class })
+    public void compareMismatchingFormatNumberAndSctUri() {
+        comparator.compare(createEntry("123"), createEntry(TEST_SCT_VERSION));
+    }
+
+    @Test(description = "an unsupported version format fails every comparison it is used in")
+    public void compareUnsupportedVersionFormatRepeatedly() {
+        Entry unsupported = createEntry("1.0");
+        for (int i = 0; i < 2; i++) {
+            try {
+                comparator.compare(createEntry("1.0.0"), unsupported);
+                fail("Expected an UnsupportedVersionFormatException");
+            } catch (UnsupportedVersionFormatException e) {
+                assertTrue(e.getCause() instanceof VersionFormatException, "the parse failure should be the cause");
+            }
+        }
+    }
+
+    @Test(description = "an entry's version is parsed once and reused by later comparisons")
+    public void versionKeyIsParsedOnce() {
+        Entry entry = createEntry(TEST_SCT_VERSION);
+        EntryVersion key = entry.getVersionKey();
+
+        comparator.compare(entry, createEntry(TEST_GREATER_SCT_VERSION));
+        comparator.compare(createEntry(TEST_SCT_VERSION), entry);
+
+        assertSame(entry.getVersionKey(), key, "the parsed version should be cached on the entry");
+        assertEquals(key.getModule(), "123");
+        assertEquals(key.getNumber(), "20180131");
+    }
+
     private Entry createEntry(String version) {
         return createEntry(version, "contentItemIdentifier");
     }
@@ -0,0 +1,266 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.mockserver.client.server.MockServerClient;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.MismatchingContentItemIdentifierException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.SyndicationFeedException;
+
+public class NctsFeedReaderTest {
+
+    private static final int PORT = 1083;
+    private static final String BASE_URL = "http://localhost:" + PORT;
+    private static final String LAST_MODIFIED = "Thu, 19 Apr 2018 06:50:11 GMT";
+    private static final File feedDir = new File("target/feed-reader");
+    private static final File cacheDir = new File("target/feed-cache");
+    private static final String CATEGORY = "<category term=\"SCT_RF2_TEST\" scheme=\"http://scheme\" />";
+    private static final String LINK = "<link rel=\"alternate\" href=\"http://localhost/test.zip\" length=\"11\" "
+            + "ncts:sha256Hash=\"abc\" />";
+
+    private ClientAndServer mockServer;
+    private MockServerClient mockServerClient;
+
+    @Test(description = "Reads the fields of each entry, skipping unrelated elements")
+    public void readsEntryFields() throws IOException {
+        NctsFeedReader reader = read("valid.xml",
+            entry("urn:uuid:1", CATEGORY, LINK, "<rights>All rights reserved</rights>"
+                    + "<author><name>Agency</name><id>urn:uuid:author</id></author>"
+                    + "<summary type=\"html\">&lt;p&gt;summary&lt;/p&gt;</summary>"));
+
+        Set<Entry> entries = reader.getMatchingEntries("SCT_RF2_TEST");
+        assertEquals(entries.size(), 1);
+        Entry entry = entries.iterator().next();
+        assertEquals(entry.getId(), "urn:uuid:1", "the author id should not be mistaken for the entry id");
+        assertEquals(entry.getUrl(), "http://localhost/test.zip");
+        assertEquals(entry.getLength(), 11);
+        assertEquals(entry.getSha256(), "abc");
+        assertEquals(entry.getCategory(), "SCT_RF2_TEST");
+        assertEquals(entry.getContentItemIdentifier(), "http://snomed.info/sct/32506021000036107");
+        assertEquals(entry.getContentItemVersion(), "http://snomed.info/sct/32506021000036107/version/20171231");
+    }
+
+    @Test(description = "Entries share their repeated values and keep hashes as they appear in the feed")
+    public void entriesAreCompact() {
+        String sha256 = "63640264849a87c90356129d99ea165e37aa5fabc1fea46906df1a7ca50db492";
+        Entry first = new Entry("urn:uuid:1", sha256, "http://localhost/1.zip", 11, new String("http://item"), "1",
+            new String("SCT_RF2_TEST"), new String("http://scheme"));
+        Entry second = new Entry("urn:uuid:2", sha256.toUpperCase(), "http://localhost/2.zip", 11,
+            new String("http://item"), "2", new String("SCT_RF2_TEST"), new String("http://scheme"));
+
+        assertEquals(first.getSha256(), sha256);
+        assertEquals(second.getSha256(), sha256.toUpperCase(), "a hash which can't be held as bytes is kept as is");
+        assertSame(first.getCategory(), second.getCategory());
+        assertSame(first.getCategoryScheme(), second.getCategoryScheme());
+        assertSame(first.getContentItemIdentifier(), second.getContentItemIdentifier());
+        assertEquals(first.getContentItemVersion(), "1");
+    }
+
+    @Test(description = "An entry with more than one category is rejected", expectedExceptions = SyndicationFeedException.class, expectedExceptionsMessageRegExp = ".*exactly one category")
+    public void multipleCategoriesThrowsException() throws IOException {
+        read("categories.xml", entry("urn:uuid:1", CATEGORY + CATEGORY, LINK, ""));
+    }
+
+    @Test(description = "An entry without a link is rejected", expectedExceptions = SyndicationFeedException.class, expectedExceptionsMessageRegExp = ".*exactly one link")
+    public void missingLinkThrowsException() throws IOException {
+        read("links.xml", entry("urn:uuid:1", CATEGORY, "", ""));
+    }
+
+    @Test(description = "A feed with duplicate entry ids is rejected", expectedExceptions = SyndicationFeedException.class, expectedExceptionsMessageRegExp = ".*duplicate entries.*")
+    public void duplicateIdThrowsException() throws IOException {
+        read("duplicates.xml", entry("urn:uuid:1", CATEGORY, LINK, "") + entry("urn:uuid:1", CATEGORY, LINK, ""));
+    }
+
+    @Test(description = "Entries in categories not matching the filter are discarded while reading")
+    public void filtersEntriesByCategory() throws IOException {
+        String other = "<category term=\"SCT_RF2_OTHER\" scheme=\"http://scheme\" />";
+        NctsFeedReader reader = read("filtered.xml",
+            entry("urn:uuid:1", CATEGORY, LINK, "") + entry("urn:uuid:2", other, LINK, "")
+                    + entry("urn:uuid:2", other, LINK, "") + entry("urn:uuid:3", other, "", ""),
+            "SCT_RF2_TEST"::equals);
+
+        Map<String, Set<Entry>> entries = reader.getMatchingEntries(false, "SCT_RF2_TEST", "SCT_RF2_OTHER");
+        assertEquals(entries.keySet(), Collections.singleton("SCT_RF2_TEST"),
+            "only the filtered category should be kept, without checking the discarded entries");
+        assertEquals(entries.get("SCT_RF2_TEST").iterator().next().getId(), "urn:uuid:1");
+    }
+
+    @Test(description = "Duplicates are still detected in the categories kept by the filter", expectedExceptions = SyndicationFeedException.class, expectedExceptionsMessageRegExp = ".*duplicate entries.*")
+    public void filteredDuplicateIdThrowsException() throws IOException {
+        read("filtered-duplicates.xml",
+            entry("urn:uuid:1", CATEGORY, LINK, "") + entry("urn:uuid:1", CATEGORY, LINK, ""), "SCT_RF2_TEST"::equals);
+    }
+
+    @Test(description = "The latest entry of each category and the entries grouped by content item are precomputed")
+    public void indexesEntriesByCategory() throws IOException {
+        NctsFeedReader reader = read("indexed.xml",
+            versionedEntry("urn:uuid:1", "http://item/1", "1") + versionedEntry("urn:uuid:2", "http://item/1", "3")
+                    + versionedEntry("urn:uuid:3", "http://item/1", "2"));
+
+        assertEquals(reader.getLatestMatchingEntry("SCT_RF2_TEST").getId(), "urn:uuid:2");
+        assertSame(reader.getMatchingEntries(true, "SCT_RF2_TEST").get("SCT_RF2_TEST"),
+            reader.getMatchingEntries(true, "SCT_RF2_TEST").get("SCT_RF2_TEST"),
+            "the latest entry should be computed once rather than for every query");
+        assertEquals(reader.getMatchingEntries(false, "SCT_RF2_TEST").get("SCT_RF2_TEST").size(), 3);
+        assertEquals(reader.getEntriesByContentItemIdentifier("SCT_RF2_TEST").get("http://item/1").stream()
+            .map(Entry::getId).collect(Collectors.toList()), Arrays.asList("urn:uuid:2", "urn:uuid:3", "urn:uuid:1"),
+            "entries should be sorted latest first");
+        assertTrue(reader.getEntriesByContentItemIdentifier("SCT_RF2_MISSING").isEmpty());
+    }
+
+    @Test(description = "A category whose latest entry cannot be determined fails only requests for the latest entry")
+    public void latestEntryFailureIsReportedOnRequest() throws IOException {
+        NctsFeedReader reader = read("mixed.xml",
+            versionedEntry("urn:uuid:1", "http://item/1", "1") + versionedEntry("urn:uuid:2", "http://item/2", "2"));
+
+        assertEquals(reader.getMatchingEntries(false, "SCT_RF2_TEST").get("SCT_RF2_TEST").size(), 2);
+        for (int i = 0; i < 2; i++) {
+            try {
+                reader.getMatchingEntries(true, "SCT_RF2_TEST");
+                fail("Expected a MismatchingContentItemIdentifierException");
+            } catch (MismatchingContentItemIdentifierException e) {
+                // expected on every request
+            }
+        }
+    }
+
+    @Test(description = "A malformed feed is rejected", expectedExceptions = SyndicationFeedException.class)
+    public void malformedFeedThrowsException() throws IOException {
+        read("malformed.xml", "<entry><id>urn:uuid:1</entry>");
+    }
+
+    @Test(description = "An unchanged feed is requested with its ETag and read from the cache")
+    public void unchangedFeedIsReadFromCache() throws IOException {
+        try (CloseableHttpClient httpClient = PooledHttpClientFactory.create()) {
+            NctsFeedReader first = new NctsFeedReader(BASE_URL + "/etag.xml", httpClient, c -> true, cacheDir);
+            NctsFeedReader second = new NctsFeedReader(BASE_URL + "/etag.xml", httpClient, c -> true, cacheDir);
+
+            assertFalse(first.isReadFromCache(), "the first read should download the feed");
+            assertTrue(second.isReadFromCache(), "the unchanged feed should be read from the cache");
+            assertEquals(second.getUpdated(), "2018-04-19T06:50:11Z");
+            assertEquals(second.getMatchingEntries("SCT_RF2_TEST"), first.getMatchingEntries("SCT_RF2_TEST"));
+        }
+        mockServerClient.verify(HttpRequest.request().withPath("/etag.xml").withHeader("If-None-Match", "\"v1\""),
+            VerificationTimes.exactly(1));
+        mockServerClient.verify(HttpRequest.request().withPath("/etag.xml").withHeader("Accept-Encoding", ".*gzip.*"),
+            VerificationTimes.exactly(2));
+    }
+
+    @Test(description = "A feed without an ETag is requested with its Last-Modified time and read from the cache")
+    public void unmodifiedFeedIsReadFromCache() throws IOException {
+        try (CloseableHttpClient httpClient = PooledHttpClientFactory.create()) {
+            new NctsFeedReader(BASE_URL + "/modified.xml", httpClient, c -> true, cacheDir);
+            NctsFeedReader second = new NctsFeedReader(BASE_URL + "/modified.xml", httpClient,
+                "SCT_RF2_TEST"::equals, cacheDir);
+
+            assertTrue(second.isReadFromCache(), "the unmodified feed should be read from the cache");
+            assertEquals(second.getMatchingEntries("SCT_RF2_TEST").size(), 1);
+        }
+    }
+
+    @Test(description = "A feed which cannot be parsed does not replace the cached feed")
+    public void unparseableFeedIsNotCached() throws IOException {
+        try (CloseableHttpClient httpClient = PooledHttpClientFactory.create()) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    new NctsFeedReader(BASE_URL + "/broken.xml", httpClient, c -> true, cacheDir);
+                    fail("Expected a SyndicationFeedException");
+                } catch (SyndicationFeedException e) {
+                    // expected
+                }
+            }
+        }
+        mockServerClient.verify(HttpRequest.request().withPath("/broken.xml").withHeader("If-None-Match", ".*"),
+            VerificationTimes.exactly(0));
+        assertFalse(Files.list(cacheDir.toPath()).anyMatch(f -> f.toString().endsWith(".tmp")),
+            "the downloaded feed should be deleted");
+    }
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        feedDir.mkdirs();
+        cacheDir.mkdirs();
+        FileUtils.cleanDirectory(cacheDir);
+
+        String feed = feed(entry("urn:uuid:1", CATEGORY, LINK, ""));
+        mockServer = startClientAndServer(PORT);
+        mockServerClient = new MockServerClient("localhost", PORT);
+        mockServerClient.when(HttpRequest.request().withPath("/etag.xml").withHeader("If-None-Match", "\"v1\""))
+            .respond(HttpResponse.response().withStatusCode(304));
+        mockServerClient.when(HttpRequest.request().withPath("/etag.xml"))
+            .respond(HttpResponse.response().withHeader("ETag", "\"v1\"").withBody(feed));
+        mockServerClient
+            .when(HttpRequest.request().withPath("/modified.xml").withHeader("If-Modified-Since", LAST_MODIFIED))
+            .respond(HttpResponse.response().withStatusCode(304));
+        mockServerClient.when(HttpRequest.request().withPath("/modified.xml"))
+            .respond(HttpResponse.response().withHeader("Last-Modified", LAST_MODIFIED).withBody(feed));
+        mockServerClient.when(HttpRequest.request().withPath("/broken.xml").withHeader("If-None-Match", "\"v1\""))
+            .respond(HttpResponse.response().withStatusCode(304));
+        mockServerClient.when(HttpRequest.request().withPath("/broken.xml"))
+            .respond(HttpResponse.response().withHeader("ETag", "\"v1\"").withBody("<feed><entry>"));
+    }
+
+    @AfterClass
+    public void tearDownMockServer() {
+        mockServer.stop();
+    }
+
+    private NctsFeedReader read(String filename, String entries) throws IOException {
+        return read(filename, entries, category -> true);
+    }
+
+    private NctsFeedReader read(String filename, String entries, Predicate<String> categoryFilter)
+            throws IOException {
+        File feed = new File(feedDir, filename);
+        Files.write(feed.toPath(), feed(entries).getBytes(StandardCharsets.UTF_8));
+        return new NctsFeedReader(feed.toURI().toString(), null, categoryFilter);
+    }
+
+    private String feed(String entries) {
+        return "<feed xmlns=\"http://www.w3.org/2005/Atom\" "
+                + "xmlns:ncts=\"http://ns.electronichealth.net.au/ncts/syndication/asf/extensions/1.0.0\">"
+                + "<title>Test feed</title><id>urn:uuid:feed</id><updated>2018-04-19T06:50:11Z</updated>" + entries
+                + "</feed>";
+    }
+
+    private String entry(String id, String categories, String links, String other) {
+        return entry(id, categories, links, other, "http://snomed.info/sct/32506021000036107",
+            "http://snomed.info/sct/32506021000036107/version/20171231");
+    }
+
+    private String versionedEntry(String id, String contentItemIdentifier, String contentItemVersion) {
+        return entry(id, CATEGORY, LINK, "", contentItemIdentifier, contentItemVersion);
+    }
+
+    private String entry(String id, String categories, String links, String other, String contentItemIdentifier,
+            String contentItemVersion) {
+        return "<entry><title>Test</title>" + links + categories + other + "<id>" + id + "</id>"
+                + "<ncts:contentItemIdentifier>" + contentItemIdentifier + "</ncts:contentItemIdentifier>"
+                + "<ncts:contentItemVersion>" + contentItemVersion + "</ncts:contentItemVersion></entry>";
+    }
+}
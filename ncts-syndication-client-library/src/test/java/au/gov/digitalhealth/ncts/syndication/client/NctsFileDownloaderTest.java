@@ -0,0 +1,450 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.mockserver.client.server.MockServerClient;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.ConnectionOptions;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+public class NctsFileDownloaderTest {
+
+    private static final int PORT = 1081;
+    private static final String BASE_URL = "http://localhost:" + PORT;
+    private static final URI TOKEN_URL = URI.create(BASE_URL + "/mockToken");
+    private static final String BLUE_SHA256 = "63640264849a87c90356129d99ea165e37aa5fabc1fea46906df1a7ca50db492";
+    private static final int LARGE_FILE_LENGTH = 20 * 1024 + 17;
+    private static final int SEGMENTS = 3;
+    private static final int RESUME_OFFSET = 12 * 1024 + 5;
+    private static final File outDir = new File("target/downloader-output");
+
+    private ClientAndServer mockServer;
+    private MockServerClient mockServerClient;
+    private byte[] largeFile;
+    private String largeFileSha256;
+
+    @Test(description = "Downloads a file spanning many blocks and validates its hash and length")
+    public void downloadsMultiBlockFile()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        TransferEngine engine = new TransferEngine(1024);
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test", engine);
+
+        DownloadResult result = downloader.downloadEntry(
+            createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH), outDir);
+
+        assertTrue(result.isFreshlyDownloaded(), "the file should be freshly downloaded");
+        assertEquals(Files.readAllBytes(result.getFile().toPath()), largeFile,
+            "the downloaded file should match the served content");
+        assertEquals(engine.getPooledBufferCount(), 1, "the single buffer used should be returned to the pool");
+    }
+
+    @Test(description = "Downloads a file with a buffer smaller than the file and not a divisor of its length")
+    public void downloadsWithTinyBuffer() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test", new TransferEngine(3));
+
+        Entry entry = createEntry("blue1.r2", BLUE_SHA256, 11);
+        DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+        assertTrue(result.isFreshlyDownloaded(), "the file should be freshly downloaded");
+        assertSame(result.getEntry(), entry, "the result should refer to the entry downloaded");
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(result.getFile().toPath())), BLUE_SHA256,
+            "the downloaded file should have the advertised hash");
+    }
+
+    @Test(description = "An existing file matching the feed is validated and not downloaded again")
+    public void existingFileIsNotRedownloaded()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test", new TransferEngine(1024));
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+
+        downloader.downloadEntry(entry, outDir);
+        DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+        assertFalse(result.isFreshlyDownloaded(), "the existing file should have been used");
+    }
+
+    @Test(description = "An existing file unchanged since it was verified is trusted without being hashed again")
+    public void unchangedFileIsTrustedFromVerificationCache()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        File out = downloadAndClose(entry);
+        assertTrue(new File(outDir, NctsFileDownloader.VERIFICATION_CACHE_FILE).isFile(),
+            "the verification cache should be written");
+
+        corruptKeepingAttributes(out);
+
+        DownloadResult result = new NctsFileDownloader(TOKEN_URL, "test", "test").downloadEntry(entry, outDir);
+        assertFalse(result.isFreshlyDownloaded(), "the cached verification should have been trusted");
+    }
+
+    @Test(description = "Forcing verification hashes existing files even if they are in the verification cache")
+    public void forcedVerificationIgnoresVerificationCache()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        File out = downloadAndClose(entry);
+
+        corruptKeepingAttributes(out);
+
+        DownloadResult result = new NctsFileDownloader(TOKEN_URL, "test", "test").setForceVerification(true)
+            .downloadEntry(entry, outDir);
+        assertTrue(result.isFreshlyDownloaded(), "the corrupted file should be detected and downloaded again");
+        assertEquals(Files.readAllBytes(out.toPath()), largeFile, "the file should be repaired");
+    }
+
+    @Test(description = "A modified file is hashed again even if it is in the verification cache")
+    public void modifiedFileIsVerifiedAgain()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        File out = downloadAndClose(entry);
+
+        long lastModified = out.lastModified();
+        corruptKeepingAttributes(out);
+        assertTrue(out.setLastModified(lastModified - 10000));
+
+        DownloadResult result = new NctsFileDownloader(TOKEN_URL, "test", "test").downloadEntry(entry, outDir);
+        assertTrue(result.isFreshlyDownloaded(), "the modified file should be detected and downloaded again");
+    }
+
+    @Test(description = "A file rewritten within the same millisecond it was verified is hashed again")
+    public void rewriteInSameMillisecondIsVerifiedAgain()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        File out = downloadAndClose(entry);
+
+        FileTime verified = Files.getLastModifiedTime(out.toPath());
+        corruptKeepingAttributes(out);
+        long micros = verified.to(TimeUnit.MICROSECONDS);
+        FileTime rewritten = FileTime.from(micros % 1000 == 1 ? micros + 1 : micros - micros % 1000 + 1,
+            TimeUnit.MICROSECONDS);
+        Files.setLastModifiedTime(out.toPath(), rewritten);
+        if (!Files.getLastModifiedTime(out.toPath()).equals(rewritten)) {
+            throw new SkipException("The file system doesn't record modification times in microseconds");
+        }
+        assertEquals(rewritten.toMillis(), verified.toMillis(), "the rewrite should be in the same millisecond");
+
+        DownloadResult result = new NctsFileDownloader(TOKEN_URL, "test", "test").downloadEntry(entry, outDir);
+        assertTrue(result.isFreshlyDownloaded(), "the rewritten file should be detected and downloaded again");
+    }
+
+    @Test(description = "The verification cache is written once a batch is synced rather than for every file")
+    public void verificationCacheIsWrittenOnSync()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test");
+        downloader.downloadEntry(createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH), outDir);
+        downloader.downloadEntry(createEntry("blue1.r2", BLUE_SHA256, 11), outDir);
+
+        File cache = new File(outDir, NctsFileDownloader.VERIFICATION_CACHE_FILE);
+        assertFalse(cache.exists(), "the verification cache should not be written for each file");
+
+        downloader.sync();
+        String written = new String(Files.readAllBytes(cache.toPath()), StandardCharsets.UTF_8);
+        assertTrue(written.contains("large.bin") && written.contains("blue1.r2"), written);
+    }
+
+    @Test(description = "With a per file fsync policy each file is verified once forced and renamed into place")
+    public void perFileFsyncRecordsVerification()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test")
+            .setFsyncPolicy(FsyncPolicy.PER_FILE);
+        DownloadResult result = downloader.downloadEntry(entry, outDir);
+        downloader.sync();
+
+        assertEquals(Files.readAllBytes(result.getFile().toPath()), largeFile,
+            "the downloaded file should match the served content");
+        assertFalse(new File(outDir, "large.bin" + NctsFileDownloader.PART_SUFFIX).exists(),
+            "the part file should be renamed into place");
+        assertTrue(new File(outDir, NctsFileDownloader.VERIFICATION_CACHE_FILE).isFile(),
+            "the forced file should be recorded in the verification cache");
+    }
+
+    @Test(description = "With a per batch fsync policy files are only trusted once they have been synced")
+    public void perBatchFsyncRecordsVerificationOnSync()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test")
+            .setFsyncPolicy(FsyncPolicy.PER_BATCH);
+        File out = downloader.downloadEntry(entry, outDir).getFile();
+
+        assertFalse(new File(outDir, NctsFileDownloader.VERIFICATION_CACHE_FILE).exists(),
+            "the file should not be trusted before it is synced");
+
+        downloader.sync();
+        corruptKeepingAttributes(out);
+
+        DownloadResult result = new NctsFileDownloader(TOKEN_URL, "test", "test").downloadEntry(entry, outDir);
+        assertFalse(result.isFreshlyDownloaded(), "the synced file should be trusted from the verification cache");
+    }
+
+    @Test(description = "A downloaded file with a mismatching hash is deleted and an exception thrown")
+    public void hashMismatchThrowsException() throws IOException, NoSuchAlgorithmException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test");
+        try {
+            downloader.downloadEntry(createEntry("large.bin", BLUE_SHA256, LARGE_FILE_LENGTH), outDir);
+            fail("Expected a HashValidationFailureException");
+        } catch (HashValidationFailureException e) {
+            assertFalse(new File(outDir, "large.bin").exists(), "the invalid download should be deleted");
+        }
+    }
+
+    @Test(description = "A downloaded file with a mismatching length is deleted and an exception thrown", expectedExceptions = HashValidationFailureException.class)
+    public void lengthMismatchThrowsException()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test");
+        downloader.downloadEntry(createEntry("blue1.r2", BLUE_SHA256, 12), outDir);
+    }
+
+    @Test(description = "Downloads a file as concurrent byte ranges written into place")
+    public void downloadsSegmentedFile() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test", new TransferEngine(1024))
+            .setSegments(SEGMENTS)
+            .setMinSegmentedLength(1);
+
+        DownloadResult result = downloader.downloadEntry(
+            createEntry("segmented.bin", largeFileSha256, LARGE_FILE_LENGTH), outDir);
+
+        assertTrue(result.isFreshlyDownloaded(), "the file should be freshly downloaded");
+        assertEquals(Files.readAllBytes(result.getFile().toPath()), largeFile,
+            "the reassembled file should match the served content");
+        for (long[] range : getSegmentRanges()) {
+            mockServerClient.verify(HttpRequest.request()
+                .withPath("/segmented.bin")
+                .withHeader("Range", "bytes=" + range[0] + "-" + range[1]), VerificationTimes.atLeast(1));
+        }
+    }
+
+    @Test(description = "Falls back to a single stream when the server ignores range requests")
+    public void segmentedDownloadFallsBackToSingleStream()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test")
+            .setSegments(SEGMENTS)
+            .setMinSegmentedLength(1);
+
+        DownloadResult result = downloader.downloadEntry(
+            createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH), outDir);
+
+        assertEquals(Files.readAllBytes(result.getFile().toPath()), largeFile,
+            "the downloaded file should match the served content");
+    }
+
+    @Test(description = "A segmented download is still validated against the feed hash")
+    public void segmentedDownloadValidatesHash() throws IOException, NoSuchAlgorithmException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test")
+            .setSegments(SEGMENTS)
+            .setMinSegmentedLength(1);
+        try {
+            downloader.downloadEntry(createEntry("segmented.bin", BLUE_SHA256, LARGE_FILE_LENGTH), outDir);
+            fail("Expected a HashValidationFailureException");
+        } catch (HashValidationFailureException e) {
+            assertFalse(new File(outDir, "segmented.bin").exists(), "the invalid download should be deleted");
+        }
+    }
+
+    @Test(description = "An interrupted download is resumed from the end of the part file with a range request")
+    public void resumesInterruptedDownload()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test", new TransferEngine(1024));
+        Entry entry = createEntry("resumable.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        File part = new File(outDir, "resumable.bin" + NctsFileDownloader.PART_SUFFIX);
+        File resumeState = new File(outDir, "resumable.bin" + NctsFileDownloader.RESUME_STATE_SUFFIX);
+
+        try {
+            downloader.downloadEntry(entry, outDir);
+            fail("Expected the truncated response to fail the download");
+        } catch (IOException e) {
+            assertEquals(part.length(), RESUME_OFFSET, "the content received should be kept in the part file");
+            assertTrue(resumeState.exists(), "the resume state should be kept");
+        }
+
+        DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+        assertTrue(result.isFreshlyDownloaded(), "the file should be freshly downloaded");
+        assertEquals(Files.readAllBytes(result.getFile().toPath()), largeFile,
+            "the resumed file should match the served content");
+        assertFalse(part.exists(), "the part file should be moved into place");
+        assertFalse(resumeState.exists(), "the resume state should be removed");
+        mockServerClient.verify(HttpRequest.request()
+            .withPath("/resumable.bin")
+            .withHeader("Range", "bytes=" + RESUME_OFFSET + "-"), VerificationTimes.exactly(1));
+    }
+
+    @Test(description = "Entries with the same content are downloaded and stored once and linked to their names")
+    public void sameContentIsStoredOnce() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        File store = new File(outDir, "store");
+        NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test")
+            .setContentStoreDirectory(store);
+
+        DownloadResult first = downloader.downloadEntry(createEntry("stored.bin", largeFileSha256, LARGE_FILE_LENGTH),
+            outDir);
+        DownloadResult second = downloader
+            .downloadEntry(createEntry("stored-copy.bin", largeFileSha256, LARGE_FILE_LENGTH), outDir);
+        DownloadResult again = downloader.downloadEntry(createEntry("stored.bin", largeFileSha256, LARGE_FILE_LENGTH),
+            outDir);
+
+        assertTrue(first.isFreshlyDownloaded(), "the first entry should be downloaded");
+        assertFalse(second.isFreshlyDownloaded(), "the stored content should be reused");
+        assertFalse(again.isFreshlyDownloaded(), "the linked file should be found in the store");
+        File stored = new File(store, largeFileSha256);
+        assertTrue(Files.isSameFile(first.getFile().toPath(), stored.toPath()), "the file should link to the store");
+        assertTrue(Files.isSameFile(second.getFile().toPath(), stored.toPath()), "the file should link to the store");
+        assertEquals(Files.readAllBytes(second.getFile().toPath()), largeFile,
+            "the linked file should have the downloaded content");
+        mockServerClient.verify(HttpRequest.request().withPath("/stored.bin"), VerificationTimes.exactly(1));
+        mockServerClient.verify(HttpRequest.request().withPath("/stored-copy.bin"), VerificationTimes.exactly(0));
+    }
+
+    @Test(description = "An existing file matching the feed is moved into the content store rather than downloaded")
+    public void existingFileIsMovedIntoStore()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        Entry entry = createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH);
+        new NctsFileDownloader(TOKEN_URL, "test", "test").downloadEntry(entry, outDir);
+
+        File store = new File(outDir, "store");
+        DownloadResult result = new NctsFileDownloader(TOKEN_URL, "test", "test").setContentStoreDirectory(store)
+            .downloadEntry(entry, outDir);
+
+        assertFalse(result.isFreshlyDownloaded(), "the existing file should be used");
+        assertTrue(Files.isSameFile(result.getFile().toPath(), new File(store, largeFileSha256).toPath()),
+            "the existing file should be moved into the store and linked");
+        assertEquals(Files.readAllBytes(result.getFile().toPath()), largeFile, "the file should be unchanged");
+    }
+
+    @Test(description = "The token and download requests share and reuse a single pooled connection")
+    public void reusesPooledConnection() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        try (CloseableHttpClient httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+                NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test",
+                    new TransferEngine(), httpClient)) {
+            downloader.downloadEntry(createEntry("blue1.r2", BLUE_SHA256, 11), outDir);
+            downloader.downloadEntry(createEntry("large.bin", largeFileSha256, LARGE_FILE_LENGTH), outDir);
+
+            PoolStats stats = connectionManager.getTotalStats();
+            assertEquals(stats.getLeased(), 0, "all connections should be released back to the pool");
+            assertEquals(stats.getAvailable(), 1, "a single kept alive connection should serve every request");
+        }
+    }
+
+    @Test(description = "Buffer sizes must be positive", expectedExceptions = IllegalArgumentException.class)
+    public void invalidBufferSize() {
+        new TransferEngine(0);
+    }
+
+    @BeforeClass
+    public void setUpMockServer() throws IOException {
+        outDir.mkdirs();
+        largeFile = new byte[LARGE_FILE_LENGTH];
+        new Random(42).nextBytes(largeFile);
+        largeFileSha256 = DigestUtils.sha256Hex(largeFile);
+
+        mockServer = startClientAndServer(PORT);
+        mockServerClient = new MockServerClient("localhost", PORT);
+        mockServerClient
+            .when(HttpRequest.request().withPath("/resumable.bin").withHeader("Range", "bytes=" + RESUME_OFFSET + "-"))
+            .respond(HttpResponse.response()
+                .withStatusCode(206)
+                .withHeader("Content-Range",
+                    "bytes " + RESUME_OFFSET + "-" + (LARGE_FILE_LENGTH - 1) + "/" + LARGE_FILE_LENGTH)
+                .withBody(Arrays.copyOfRange(largeFile, RESUME_OFFSET, LARGE_FILE_LENGTH)));
+        mockServerClient.when(HttpRequest.request().withPath("/resumable.bin"))
+            .respond(HttpResponse.response()
+                .withBody(Arrays.copyOf(largeFile, RESUME_OFFSET))
+                .withConnectionOptions(ConnectionOptions.connectionOptions()
+                    .withContentLengthHeaderOverride(LARGE_FILE_LENGTH)
+                    .withCloseSocket(true)));
+        mockServerClient.when(HttpRequest.request().withPath("/large.bin"))
+            .respond(HttpResponse.response().withBody(largeFile));
+        mockServerClient.when(HttpRequest.request().withPath("/stored.bin"))
+            .respond(HttpResponse.response().withBody(largeFile));
+        mockServerClient.when(HttpRequest.request().withPath("/stored-copy.bin"))
+            .respond(HttpResponse.response().withBody(largeFile));
+        for (long[] range : getSegmentRanges()) {
+            String bytes = range[0] + "-" + range[1];
+            mockServerClient
+                .when(HttpRequest.request().withPath("/segmented.bin").withHeader("Range", "bytes=" + bytes))
+                .respond(HttpResponse.response()
+                    .withStatusCode(206)
+                    .withHeader("Content-Range", "bytes " + bytes + "/" + LARGE_FILE_LENGTH)
+                    .withBody(Arrays.copyOfRange(largeFile, (int) range[0], (int) range[1] + 1)));
+        }
+        mockServerClient.when(HttpRequest.request().withPath("/blue1.r2"))
+            .respond(HttpResponse.response()
+                .withBody(Files.readAllBytes(new File("target/test-classes/blue1.r2").toPath())));
+        mockServerClient.when(HttpRequest.request().withPath("/mockToken"))
+            .respond(HttpResponse.response().withBody("{ \"access_token\":\"123\"}"));
+    }
+
+    @BeforeMethod(alwaysRun = true)
+    public void deleteAllFilesInOutputFolder() throws IOException {
+        FileUtils.cleanDirectory(outDir);
+    }
+
+    @AfterClass
+    public void tearDownMockServer() {
+        mockServer.stop();
+    }
+
+    private File downloadAndClose(Entry entry)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (NctsFileDownloader downloader = new NctsFileDownloader(TOKEN_URL, "test", "test")) {
+            return downloader.downloadEntry(entry, outDir).getFile();
+        }
+    }
+
+    private void corruptKeepingAttributes(File file) throws IOException {
+        FileTime lastModified = Files.getLastModifiedTime(file.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(~largeFile[0]);
+        }
+        Files.setLastModifiedTime(file.toPath(), lastModified);
+        assertEquals(Files.getLastModifiedTime(file.toPath()), lastModified,
+            "the modification time should be restored");
+    }
+
+    private long[][] getSegmentRanges() {
+        long segmentLength = (LARGE_FILE_LENGTH + SEGMENTS - 1) / SEGMENTS;
+        long[][] ranges = new long[SEGMENTS][];
+        for (int i = 0; i < SEGMENTS; i++) {
+            ranges[i] = new long[] { i * segmentLength, Math.min(LARGE_FILE_LENGTH, (i + 1) * segmentLength) - 1 };
+        }
+        return ranges;
+    }
+
+    private Entry createEntry(String filename, String sha256, long length) {
+        return new Entry("urn:uuid:" + filename, sha256, BASE_URL + "/" + filename, length,
+            "http://snomed.info/sct/32506021000036107",
+            "http://snomed.info/sct/32506021000036107/version/20171231", "SCT_RF2_TEST",
+            "http://ns.electronichealth.net.au/ncts/syndication/asf/scheme/1.0.0");
+    }
+}
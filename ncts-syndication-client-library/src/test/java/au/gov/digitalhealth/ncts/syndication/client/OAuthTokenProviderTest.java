@@ -0,0 +1,160 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.mockserver.client.server.MockServerClient;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.AuthenticationException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+public class OAuthTokenProviderTest {
+
+    private static final int PORT = 1082;
+    private static final String BASE_URL = "http://localhost:" + PORT;
+    private static final String PROTECTED_CONTENT = "protected content";
+    private static final File outDir = new File("target/token-output");
+
+    private ClientAndServer mockServer;
+    private MockServerClient mockServerClient;
+
+    @Test(description = "Concurrent callers without a token share a single token request")
+    public void concurrentCallersShareOneRequest() throws Exception {
+        OAuthTokenProvider provider = createProvider("/sharedToken");
+        int callers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                tokens.add(executor.submit(() -> {
+                    start.await();
+                    return provider.getToken();
+                }));
+            }
+            start.countDown();
+            for (Future<String> token : tokens) {
+                assertEquals(token.get(10, TimeUnit.SECONDS), "shared", "every caller should get the token");
+            }
+        } finally {
+            executor.shutdownNow();
+            provider.close();
+        }
+
+        mockServerClient.verify(HttpRequest.request().withPath("/sharedToken"), VerificationTimes.exactly(1));
+    }
+
+    @Test(description = "A token is requested again once it has expired")
+    public void expiredTokenIsReplaced() throws IOException {
+        AtomicLong now = new AtomicLong();
+        try (OAuthTokenProvider provider = createProvider("/expiringToken").setClock(now::get)
+                .setRefreshAhead(0)) {
+            assertEquals(provider.getToken(), "first");
+            now.addAndGet(119000);
+            assertEquals(provider.getToken(), "first", "the token is still valid");
+            now.addAndGet(2000);
+            assertEquals(provider.getToken(), "second", "the expired token should be replaced");
+        }
+    }
+
+    @Test(description = "A token about to expire is still used while its replacement is requested in the background")
+    public void tokenIsRefreshedAheadOfExpiry() throws IOException, InterruptedException {
+        AtomicLong now = new AtomicLong();
+        try (OAuthTokenProvider provider = createProvider("/refreshingToken").setClock(now::get)) {
+            assertEquals(provider.getToken(), "first");
+            now.addAndGet(90000);
+            assertEquals(provider.getToken(), "first", "the current token should be returned without waiting");
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!provider.getToken().equals("second") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(provider.getToken(), "second", "the token should have been refreshed in the background");
+        }
+    }
+
+    @Test(description = "A download rejected with a 401 is retried once with a new token")
+    public void rejectedTokenIsReplacedAndRequestRetried()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (OAuthTokenProvider provider = createProvider("/rotatingToken");
+                NctsFileDownloader downloader = new NctsFileDownloader(provider, new TransferEngine(), null)) {
+            Entry entry = new Entry("urn:uuid:protected", DigestUtils.sha256Hex(PROTECTED_CONTENT),
+                BASE_URL + "/protected.txt", PROTECTED_CONTENT.length(), "http://snomed.info/sct/32506021000036107",
+                "http://snomed.info/sct/32506021000036107/version/20171231", "SCT_RF2_TEST",
+                "http://ns.electronichealth.net.au/ncts/syndication/asf/scheme/1.0.0");
+
+            DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+            assertEquals(new String(Files.readAllBytes(result.getFile().toPath()), StandardCharsets.UTF_8),
+                PROTECTED_CONTENT);
+        }
+        mockServerClient.verify(HttpRequest.request().withPath("/rotatingToken"), VerificationTimes.exactly(2));
+    }
+
+    @Test(description = "A token response without an access token fails authentication", expectedExceptions = AuthenticationException.class)
+    public void missingAccessTokenThrowsException() throws IOException {
+        try (OAuthTokenProvider provider = createProvider("/noToken")) {
+            provider.getToken();
+        }
+    }
+
+    @BeforeClass
+    public void setUpMockServer() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+
+        mockServer = startClientAndServer(PORT);
+        mockServerClient = new MockServerClient("localhost", PORT);
+        mockServerClient.when(HttpRequest.request().withPath("/sharedToken"))
+            .respond(HttpResponse.response()
+                .withBody("{ \"access_token\":\"shared\", \"expires_in\":3600}")
+                .withDelay(TimeUnit.MILLISECONDS, 200));
+        for (String path : new String[] { "/expiringToken", "/refreshingToken", "/rotatingToken" }) {
+            mockServerClient.when(HttpRequest.request().withPath(path), Times.once())
+                .respond(HttpResponse.response().withBody("{ \"access_token\":\"first\", \"expires_in\":120}"));
+            mockServerClient.when(HttpRequest.request().withPath(path))
+                .respond(HttpResponse.response().withBody("{ \"access_token\":\"second\", \"expires_in\":120}"));
+        }
+        mockServerClient.when(HttpRequest.request().withPath("/noToken"))
+            .respond(HttpResponse.response().withBody("{ \"token_type\":\"bearer\"}"));
+        mockServerClient
+            .when(HttpRequest.request().withPath("/protected.txt").withHeader("Authorization", "Bearer second"))
+            .respond(HttpResponse.response().withBody(PROTECTED_CONTENT));
+        mockServerClient.when(HttpRequest.request().withPath("/protected.txt"))
+            .respond(HttpResponse.response().withStatusCode(401));
+    }
+
+    @AfterClass
+    public void tearDownMockServer() {
+        mockServer.stop();
+    }
+
+    private OAuthTokenProvider createProvider(String path) {
+        return new OAuthTokenProvider(URI.create(BASE_URL + path), "test", "test");
+    }
+}
@@ -0,0 +1,270 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.HttpResponseException;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.LocalNctsServer.Fault;
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.TransferStalledException;
+import au.gov.digitalhealth.ncts.syndication.client.exception.TransientHttpResponseException;
+
+public class RetryPolicyTest {
+
+    private static final File outDir = new File("target/retry-output");
+    private static final long ARTEFACT_SIZE = 64 * 1024 + 5;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(2)
+        .setArtefactSize(ARTEFACT_SIZE);
+    private final List<Long> delays = Collections.synchronizedList(new ArrayList<>());
+    private RetryPolicy policy;
+
+    @Test(description = "A feed request answered with 503 is retried after the delay asked for by Retry-After")
+    public void retriesFeedHonouringRetryAfter()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addFeedFault(Fault.status(503, "2")).addFeedFault(Fault.status(503, "2"));
+
+            assertDownloadsLatest(client);
+
+            assertEquals(server.getFeedRequests(), 3, "the feed should be requested until it is served");
+            assertEquals(delays, Arrays.asList(2000L, 2000L), "each retry should wait for the Retry-After delay");
+        }
+    }
+
+    @Test(description = "A feed dropped part way through is read again")
+    public void retriesFeedDroppedWhileReading()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addFeedFault(Fault.reset(600));
+
+            assertDownloadsLatest(client);
+
+            assertEquals(server.getFeedRequests(), 2, "the feed should be requested again");
+        }
+    }
+
+    @Test(description = "A token request answered with 500 is retried")
+    public void retriesTokenRequest() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addTokenFault(Fault.status(500, null));
+
+            assertDownloadsLatest(client);
+
+            assertEquals(server.getTokenRequests(), 2, "the token should be requested again");
+        }
+    }
+
+    @Test(description = "A download dropped part way through is retried, resuming from the content received")
+    public void resumesDroppedDownload() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addArtefactFault(Fault.reset(20000));
+
+            assertDownloadsLatest(client);
+
+            assertEquals(server.getArtefactRequests(), 2, "the artefact should be requested again");
+            assertEquals(delays, Arrays.asList(100L), "the retry should wait for the initial backoff");
+        }
+    }
+
+    @Test(description = "A download receiving less than the minimum throughput is aborted and retried")
+    public void retriesStalledDownload() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        policy.setMinThroughput(1024).setStallWindow(200);
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addArtefactFault(Fault.stall(1000));
+
+            long start = System.currentTimeMillis();
+            assertDownloadsLatest(client);
+
+            assertTrue(System.currentTimeMillis() - start < 10000, "the stalled download should be aborted promptly");
+            assertEquals(server.getArtefactRequests(), 2, "the artefact should be requested again");
+        }
+    }
+
+    @Test(description = "A stalled download is reported as stalled once the attempts are used up")
+    public void reportsStalledDownload() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        policy.setMaxAttempts(1).setMinThroughput(1024).setStallWindow(200);
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addArtefactFault(Fault.stall(1000));
+
+            client.downloadLatest(generator.getCategory(0));
+            fail("Expected a TransferStalledException");
+        } catch (TransferStalledException e) {
+            assertNotNull(e.getCause(), "the failure of the aborted read should be the cause");
+        }
+    }
+
+    @Test(description = "Waiting for a slow server to start responding doesn't count towards the minimum throughput")
+    public void slowResponseIsNotStalled() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        policy.setMinThroughput(1024).setStallWindow(200);
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addArtefactFault(Fault.delay(1000));
+
+            assertDownloadsLatest(client);
+
+            assertEquals(server.getArtefactRequests(), 1, "the slow response should not be retried");
+        }
+    }
+
+    @Test(description = "Stalled transfers are only detected once a minimum throughput is set")
+    public void stallDetectionIsOffByDefault() {
+        assertEquals(new RetryPolicy().getMinThroughput(), 0);
+    }
+
+    @Test(description = "Downloads failing with transient statuses are attempted at most the maximum number of times with growing delays")
+    public void givesUpAfterMaxAttempts() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        policy.setMaxAttempts(3);
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            for (int i = 0; i < 3; i++) {
+                server.addArtefactFault(Fault.status(503, null));
+            }
+            try {
+                client.downloadLatest(generator.getCategory(0));
+                fail("Expected a TransientHttpResponseException");
+            } catch (TransientHttpResponseException e) {
+                assertEquals(e.getStatusCode(), 503);
+            }
+
+            assertEquals(server.getArtefactRequests(), 3, "the artefact should be requested the maximum times");
+            assertEquals(delays, Arrays.asList(100L, 200L), "the delay should double for each retry");
+        }
+    }
+
+    @Test(description = "Responses which won't succeed if retried are not retried")
+    public void doesNotRetryClientErrors() throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addArtefactFault(Fault.status(404, null));
+            try {
+                client.downloadLatest(generator.getCategory(0));
+                fail("Expected an HttpResponseException");
+            } catch (HttpResponseException e) {
+                assertEquals(e.getStatusCode(), 404);
+                assertTrue(!(e instanceof TransientHttpResponseException), "a 404 should not be transient");
+            }
+
+            assertEquals(server.getArtefactRequests(), 1, "the artefact should only be requested once");
+            assertTrue(delays.isEmpty(), "there should be no retries");
+        }
+    }
+
+    @Test(description = "Backoff grows exponentially to the maximum with up to the jitter fraction taken off")
+    public void backoffIsJitteredAndCapped() {
+        RetryPolicy jittered = new RetryPolicy().setInitialBackoff(1000).setMaxBackoff(3000).setJitter(0.5);
+        IOException failure = new SocketException("Connection reset");
+        for (int i = 0; i < 100; i++) {
+            assertBetween(jittered.getDelay(1, failure), 500, 1000);
+            assertBetween(jittered.getDelay(2, failure), 1000, 2000);
+            assertBetween(jittered.getDelay(5, failure), 1500, 3000);
+        }
+    }
+
+    @Test(description = "Retry-After is read as seconds or an HTTP date, and capped at the maximum")
+    public void readsRetryAfter() {
+        StubResponse response = new StubResponse(503);
+        assertEquals(RetryPolicy.getRetryAfter(response), -1);
+
+        response.setHeader("Retry-After", "3");
+        assertEquals(RetryPolicy.getRetryAfter(response), 3000);
+
+        response.setHeader("Retry-After", "Thu, 01 Jan 1970 00:00:00 GMT");
+        assertEquals(RetryPolicy.getRetryAfter(response), 0, "a date in the past should not delay");
+
+        response.setHeader("Retry-After", "soon");
+        assertEquals(RetryPolicy.getRetryAfter(response), -1, "an invalid header should be ignored");
+
+        response.setHeader("Retry-After", "3600");
+        IOException failure = RetryPolicy.failure(response, "Cannot download");
+        assertEquals(new RetryPolicy().setMaxRetryAfter(5000).getDelay(1, failure), 5000);
+    }
+
+    @BeforeMethod
+    public void cleanOutputDirectory() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+        delays.clear();
+        policy = new RetryPolicy().setInitialBackoff(100).setJitter(0).setMinThroughput(0).setSleeper(delays::add);
+    }
+
+    private SyndicationClient createClient(LocalNctsServer server) {
+        return new SyndicationClient(server.getFeedUrl(), server.getTokenUrl(), outDir, "test", "test")
+            .setRetryPolicy(policy);
+    }
+
+    private void assertDownloadsLatest(SyndicationClient client)
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        DownloadResult result = client.downloadLatest(generator.getCategory(0));
+        assertEquals(result.getFile().length(), ARTEFACT_SIZE);
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(result.getFile().toPath())),
+            result.getEntry().getSha256(), "the downloaded artefact should match the feed");
+    }
+
+    private void assertBetween(long value, long min, long max) {
+        assertTrue(value >= min && value <= max, value + " should be between " + min + " and " + max);
+    }
+
+    /**
+     * Response with a status and headers but no body
+     */
+    private static class StubResponse implements TransportResponse {
+        private final int status;
+        private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        StubResponse(int status) {
+            this.status = status;
+        }
+
+        void setHeader(String name, String value) {
+            headers.put(name, value);
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
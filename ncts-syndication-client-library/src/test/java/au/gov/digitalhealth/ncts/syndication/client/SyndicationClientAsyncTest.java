@@ -0,0 +1,160 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.client.HttpResponseException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.LocalNctsServer.Fault;
+
+public class SyndicationClientAsyncTest {
+
+    private static final File outDir = new File("target/async-output");
+    private static final long ARTEFACT_SIZE = 64 * 1024;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(4)
+        .setCategories(2)
+        .setArtefactSize(ARTEFACT_SIZE);
+    private ExecutorService executor;
+
+    @Test(description = "Downloads all the entries of the categories without blocking the caller")
+    public void downloadsAsynchronously() throws Exception {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            Map<String, List<DownloadResult>> results = client
+                .downloadAsync(false, executor, generator.getCategory(0), generator.getCategory(1))
+                .get(30, TimeUnit.SECONDS);
+
+            assertEquals(results.size(), 2);
+            for (List<DownloadResult> categoryResults : results.values()) {
+                assertEquals(categoryResults.size(), 2);
+                for (DownloadResult result : categoryResults) {
+                    assertTrue(result.isFreshlyDownloaded());
+                    assertEquals(result.getFile().length(), ARTEFACT_SIZE);
+                }
+            }
+            assertEquals(server.getArtefactRequests(), 4);
+
+            DownloadResult latest = client.downloadLatestAsync(generator.getCategory(1), executor)
+                .get(30, TimeUnit.SECONDS);
+            assertFalse(latest.isFreshlyDownloaded(), "the latest entry should already be downloaded");
+            assertEquals(latest.getFile().getName(), generator.getArtefactName(generator.getLatestEntry(1)));
+        }
+    }
+
+    @Test(description = "Each entry can be downloaded with its own future")
+    public void downloadsEntriesSeparately() throws Exception {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            Set<Entry> entries = client.getEntries(false, generator.getCategory(0)).get(generator.getCategory(0));
+            assertEquals(entries.size(), 2);
+
+            List<CompletableFuture<DownloadResult>> futures = new ArrayList<>();
+            for (Entry entry : entries) {
+                futures.add(client.downloadEntryAsync(entry, executor));
+            }
+            for (CompletableFuture<DownloadResult> future : futures) {
+                DownloadResult result = future.get(30, TimeUnit.SECONDS);
+                assertTrue(result.isFreshlyDownloaded());
+                assertEquals(result.getFile().length(), ARTEFACT_SIZE);
+            }
+        }
+    }
+
+    @Test(description = "A failed download fails the future once the other downloads have finished")
+    public void failureCompletesExceptionally() throws Exception {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server).setRetryPolicy(RetryPolicy.none())) {
+            server.addArtefactFault(Fault.status(404, null));
+            try {
+                client.downloadAsync(false, executor, generator.getCategory(0)).get(30, TimeUnit.SECONDS);
+                fail("Expected an ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof HttpResponseException, "unexpected failure " + e.getCause());
+            }
+            assertEquals(server.getArtefactRequests(), 2, "the other entry should still be downloaded");
+        }
+    }
+
+    @Test(description = "Cancelling aborts a transfer in progress and deletes the partly downloaded file")
+    public void cancellingAbortsTransfer() throws Exception {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            server.addArtefactFault(Fault.stall(1000));
+            CompletableFuture<DownloadResult> future = client.downloadLatestAsync(generator.getCategory(0), executor);
+
+            File out = new File(outDir, generator.getArtefactName(generator.getLatestEntry(0)));
+            File part = new File(outDir, out.getName() + NctsFileDownloader.PART_SUFFIX);
+            long waitUntil = System.currentTimeMillis() + 10000;
+            while ((server.getArtefactRequests() == 0 || !part.exists()) && System.currentTimeMillis() < waitUntil) {
+                Thread.sleep(20);
+            }
+            assertTrue(part.exists(), "the download should have started");
+            // let the client receive the start of the body before the transfer stalls
+            Thread.sleep(200);
+            assertFalse(future.isDone(), "the download should have stalled");
+
+            assertTrue(future.cancel(true));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "the stalled transfer should be aborted");
+
+            assertFalse(part.exists(), "the partly downloaded file should be deleted");
+            assertFalse(new File(outDir, out.getName() + NctsFileDownloader.RESUME_STATE_SUFFIX).exists());
+            assertFalse(out.exists());
+            assertEquals(server.getArtefactRequests(), 1, "a cancelled download should not be retried");
+        }
+    }
+
+    @Test(description = "Cancelling before the downloads start skips them")
+    public void cancellingSkipsPendingDownloads() throws Exception {
+        List<Runnable> pending = new ArrayList<>();
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = createClient(server)) {
+            CompletableFuture<Map<String, List<DownloadResult>>> future = client.downloadAsync(false, pending::add,
+                generator.getCategory(0));
+            // reads the feed, which submits the downloads
+            pending.remove(0).run();
+            assertEquals(pending.size(), 2);
+
+            assertTrue(future.cancel(true));
+            pending.forEach(Runnable::run);
+
+            assertEquals(server.getArtefactRequests(), 0, "no artefact should be downloaded");
+            assertEquals(outDir.list().length, 0, "no files should be written");
+        }
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private SyndicationClient createClient(LocalNctsServer server) {
+        return new SyndicationClient(server.getFeedUrl(), server.getTokenUrl(), outDir, "test", "test");
+    }
+}
@@ -5,6 +5,7 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
@@ -31,6 +32,7 @@ import org.mockserver.client.server.MockServerClient;
 import org.mockserver.integration.ClientAndServer;
 import org.mockserver.model.HttpRequest;
 import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -45,14 +47,17 @@ public class SyndicationClientTest {
     private static final String SCT_RF2_RED_CATEGORY = "SCT_RF2_RED";
     private static final String SCT_RF2_PURPLE_CATEGORY = "SCT_RF2_PURPLE";
     private static final String SCT_RF2_BLUE_CATEGORY = "SCT_RF2_BLUE";
+    private static final String SCT_RF2_ORANGE_CATEGORY = "SCT_RF2_ORANGE";
     private static final String feedURL = "http://localhost:1080/syndication.xml";
+    private static final String snapshotFeedURL = "http://localhost:1080/snapshot-syndication.xml";
     private static final String tokenURL = "http://localhost:1080/mockToken";
     private static final String clientID = "test";
     private static final String secret = "test";
     private static final String serverDir = "target/test-classes/"; // where the server resources are
     private static final File outDir = new File("target/client-output"); // where the client under test will download to
     private static final String[] serverFileList = { // That are contained in the test resources folder
-            "blue1.r2", "blue2.r2", "red1.r2", "purple1.r2", "purple2.r2", "green1.r2" };
+            "blue1.r2", "blue2.r2", "red1.r2", "purple1.r2", "purple2.r2", "green1.r2", "orange1.r2",
+            "orange2.r2" };
 
     private SyndicationClient testClient;
     private ClientAndServer mockServer;
@@ -229,6 +234,89 @@ public class SyndicationClientTest {
         assertTrue(filesInClientFolder.contains("blue2.r2"), "blue2.r2 file should be in the download directory");
     }
 
+    @Test(priority = 9, groups = "downloading", description = "Tests that the client downloads all files from multiple categories concurrently", enabled = true)
+    public void downloadsAllFilesFromMultipleCategoriesInParallel()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        testClient = new SyndicationClient(feedURL, tokenURL, outDir, clientID, secret).setParallelDownloads(true)
+            .setMaxConcurrentDownloads(2);
+        Map<String, List<DownloadResult>> result = testClient.download(false, SCT_RF2_PURPLE_CATEGORY,
+            SCT_RF2_RED_CATEGORY, SCT_RF2_BLUE_CATEGORY);
+
+        assertEquals(result.keySet().size(), 3, "response from the client should contain 3 catagories");
+        assertEquals(getDownloadedFileNames(result.get(SCT_RF2_PURPLE_CATEGORY)).size(), 2,
+            "2 purple files should be reported by the client as downloaded");
+        assertEquals(getDownloadedFileNames(result.get(SCT_RF2_RED_CATEGORY)).size(), 1,
+            "1 red file should be reported by the client as downloaded");
+        assertEquals(getDownloadedFileNames(result.get(SCT_RF2_BLUE_CATEGORY)).size(), 2,
+            "2 blue files should be reported by the client as downloaded");
+
+        List<String> filesInClientFolder = getFilenamesInDownloadsDirectory();
+        assertEquals(filesInClientFolder.size(), 5,
+            "exactly 5 files should be in the download directory for the client");
+    }
+
+    @Test(priority = 9, groups = "downloading", description = "Tests that concurrent downloads report every failure once all downloads have completed", enabled = true)
+    public void parallelDownloadReportsAllFailures() throws IOException, NoSuchAlgorithmException {
+        testClient = new SyndicationClient(feedURL, tokenURL, outDir, clientID, secret).setParallelDownloads(true);
+        try {
+            testClient.download(false, SCT_RF2_ORANGE_CATEGORY, SCT_RF2_BLUE_CATEGORY);
+            fail("Expected a HashValidationFailureException");
+        } catch (HashValidationFailureException e) {
+            assertEquals(e.getSuppressed().length, 1, "the second orange failure should be suppressed by the first");
+            assertTrue(e.getSuppressed()[0] instanceof HashValidationFailureException,
+                "the suppressed failure should be a HashValidationFailureException");
+        }
+
+        List<String> filesInClientFolder = getFilenamesInDownloadsDirectory();
+        assertEquals(filesInClientFolder.size(), 2,
+            "the blue files should still be downloaded despite the orange failures");
+        assertTrue(filesInClientFolder.contains("blue1.r2"), "blue1.r2 file should be in the download directory");
+        assertTrue(filesInClientFolder.contains("blue2.r2"), "blue2.r2 file should be in the download directory");
+    }
+
+    @Test(priority = 9, groups = "downloading", description = "Tests that calls within the feed time to live share one read of the feed", enabled = true)
+    public void reusesFeedWithinTimeToLive()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        long[] now = { 0 };
+        testClient = new SyndicationClient(snapshotFeedURL, tokenURL, outDir, clientID, secret)
+            .setFeedTimeToLive(1000)
+            .setClock(() -> now[0]);
+
+        assertEquals(testClient.downloadLatest(SCT_RF2_PURPLE_CATEGORY).getFile().getName(), "purple2.r2");
+        assertEquals(testClient.downloadLatest(SCT_RF2_RED_CATEGORY).getFile().getName(), "red1.r2");
+        now[0] = 999;
+        assertEquals(testClient.download(false, SCT_RF2_BLUE_CATEGORY).get(SCT_RF2_BLUE_CATEGORY).size(), 2);
+        verifyFeedRequests(1);
+
+        now[0] = 1000;
+        testClient.downloadLatest(SCT_RF2_PURPLE_CATEGORY);
+        verifyFeedRequests(2);
+
+        testClient.refreshFeed();
+        testClient.downloadLatest(SCT_RF2_RED_CATEGORY);
+        verifyFeedRequests(3);
+    }
+
+    @Test(priority = 9, groups = "downloading", description = "Tests that verification reports valid, missing and corrupt files without downloading", enabled = true)
+    public void verifiesLocalFilesWithoutDownloading() throws IOException, NoSuchAlgorithmException {
+        Files.copy(Paths.get(serverDir, "blue1.r2"), outDir.toPath().resolve("blue1.r2"));
+        Files.write(Paths.get(outDir + "/purple2.r2"), Arrays.asList("dummy file"), Charset.forName("UTF-8"));
+
+        testClient = new SyndicationClient(feedURL, tokenURL, outDir, clientID, secret).setVerificationThreads(2);
+        VerificationReport report = testClient.verify(false, SCT_RF2_BLUE_CATEGORY, SCT_RF2_PURPLE_CATEGORY);
+
+        assertFalse(report.isValid(), "the report should not be valid with missing and corrupt files");
+        assertEquals(report.getResults().get(SCT_RF2_BLUE_CATEGORY).size(), 2, "both blue entries should be verified");
+        assertEquals(getVerifiedFileNames(report.getValid()), Arrays.asList("blue1.r2"));
+        assertEquals(getVerifiedFileNames(report.getMissing()), Arrays.asList("blue2.r2", "purple1.r2"));
+        assertEquals(getVerifiedFileNames(report.getCorrupt()), Arrays.asList("purple2.r2"));
+
+        List<String> filesInClientFolder = getFilenamesInDownloadsDirectory();
+        assertEquals(filesInClientFolder.size(), 2, "verification should not download any files");
+        assertEquals(Files.readAllLines(Paths.get(outDir + "/purple2.r2")).get(0), "dummy file",
+            "verification should not replace a corrupt file");
+    }
+
     @Test(priority = 10, groups = "authentication", description = "Tests that Authentication Exception is thrown when token can not be obtained", enabled = true, expectedExceptions = AuthenticationException.class)
     public void cannotGetTokenException() throws IOException, URISyntaxException, NoSuchAlgorithmException,
             JDOMException, HashValidationFailureException {
@@ -263,6 +351,8 @@ public class SyndicationClientTest {
         // Handle request for syndication file
         mockServerClient.when(HttpRequest.request().withPath("/syndication.xml"))
                 .respond(HttpResponse.response().withBody(syndFile));
+        mockServerClient.when(HttpRequest.request().withPath("/snapshot-syndication.xml"))
+                .respond(HttpResponse.response().withBody(syndFile));
 
         // Handle request for token (return meaningless Access token, mock server
         // doesn't need token)
@@ -281,6 +371,11 @@ public class SyndicationClientTest {
         mockServer.stop();
     }
 
+    private void verifyFeedRequests(int count) {
+        mockServerClient.verify(HttpRequest.request().withPath("/snapshot-syndication.xml"),
+            VerificationTimes.exactly(count));
+    }
+
     /**
      * Returns a flat list of file names of the files in the location the NCTS
      * syndication client under test is downloading to
@@ -290,6 +385,7 @@ public class SyndicationClientTest {
      */
     private List<String> getFilenamesInDownloadsDirectory() throws IOException {
         List<String> filesInClientFolder = Files.list(outDir.toPath()).map(file -> file.getFileName().toString())
+                .filter(name -> !name.equals(NctsFileDownloader.VERIFICATION_CACHE_FILE))
                 .collect(Collectors.toList());
         return filesInClientFolder;
     }
@@ -303,6 +399,10 @@ public class SyndicationClientTest {
      * @return List<String> of just the filename portion of each of the files in the
      *         input List<DownloadedResult>
      */
+    private List<String> getVerifiedFileNames(List<VerificationResult> results) {
+        return results.stream().map(result -> result.getFile().getName()).sorted().collect(Collectors.toList());
+    }
+
     private List<String> getDownloadedFileNames(List<DownloadResult> downloadResults) {
         return downloadResults.stream().map(file -> file.getFile().getName()).collect(Collectors.toList());
     }
@@ -0,0 +1,95 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.SyntheticFeedGenerator.VersionFormat;
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+public class SyntheticFeedGeneratorTest {
+
+    private static final File outDir = new File("target/synthetic-output");
+
+    @Test(description = "Generated feeds in every version format are read with the latest entry of each category")
+    public void generatedFeedIsReadable() throws IOException {
+        for (VersionFormat format : VersionFormat.values()) {
+            SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(1003)
+                .setCategories(4)
+                .setVersionFormat(format)
+                .setArtefactSize(16);
+            try (LocalNctsServer server = new LocalNctsServer(generator)) {
+                NctsFeedReader reader = new NctsFeedReader(server.getFeedUrl());
+
+                for (int category = 0; category < 4; category++) {
+                    String term = generator.getCategory(category);
+                    Set<Entry> entries = reader.getMatchingEntries(term);
+                    assertEquals(entries.size(), category < 3 ? 251 : 250, format + " entries in " + term);
+                    assertEquals(reader.getLatestMatchingEntry(term).getUrl(), server.getBaseUrl() + "/artefacts/"
+                            + generator.getArtefactName(generator.getLatestEntry(category)),
+                        format + " latest entry in " + term);
+                }
+            }
+        }
+    }
+
+    @Test(description = "The client downloads and verifies generated artefacts from the local server")
+    public void clientDownloadsGeneratedArtefacts()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(12)
+            .setCategories(3)
+            .setArtefactSize(100 * 1024 + 3);
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = new SyndicationClient(server.getFeedUrl(), server.getTokenUrl(), outDir,
+                    "test", "test").setDownloadSegments(3).setMinSegmentedDownloadLength(0)) {
+            Map<String, List<DownloadResult>> results = client.download(false, generator.getCategory(0),
+                generator.getCategory(2));
+
+            assertEquals(results.get(generator.getCategory(0)).size(), 4);
+            assertEquals(results.get(generator.getCategory(2)).size(), 4);
+            for (List<DownloadResult> categoryResults : results.values()) {
+                for (DownloadResult result : categoryResults) {
+                    assertEquals(result.getFile().length(), generator.getArtefactSize());
+                    assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(result.getFile().toPath())),
+                        result.getEntry().getSha256());
+                }
+            }
+            assertEquals(server.getFeedRequests(), 1);
+            assertEquals(server.getArtefactRequests(), 8 * 3, "each artefact should be downloaded in 3 ranges");
+        }
+    }
+
+    @Test(description = "Written artefacts match the hashes in the feed")
+    public void writtenArtefactsMatchFeed() throws IOException {
+        SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(3).setArtefactSize(10000).setSeed(7);
+        generator.writeArtefacts(outDir);
+
+        for (int entry = 0; entry < 3; entry++) {
+            File artefact = new File(outDir, generator.getArtefactName(entry));
+            assertEquals(artefact.length(), 10000);
+            assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(artefact.toPath())),
+                generator.getArtefactSha256(entry));
+            assertEquals(generator.getEntry(artefact.getName()), entry);
+        }
+        assertTrue(!generator.getArtefactSha256(0).equals(generator.setSeed(8).getArtefactSha256(0)),
+            "artefacts should differ between seeds");
+    }
+
+    @BeforeMethod
+    public void cleanOutputDirectory() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+    }
+}
@@ -0,0 +1,131 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+public class TransportTest {
+
+    private static final File outDir = new File("target/transport-output");
+    private static final long ARTEFACT_SIZE = 64 * 1024;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(2)
+        .setArtefactSize(ARTEFACT_SIZE);
+
+    @Test(description = "The feed, token and download requests are all made through the transport supplied")
+    public void makesRequestsThroughTransport()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                RecordingTransport transport = new RecordingTransport(new ApacheHttpTransport());
+                OAuthTokenProvider tokenProvider = new OAuthTokenProvider(transport,
+                    URI.create(server.getTokenUrl()), "test", "test");
+                NctsFileDownloader downloader = new NctsFileDownloader(tokenProvider, transport,
+                    new TransferEngine()).setSegments(2).setMinSegmentedLength(0)) {
+            NctsFeedReader reader = new NctsFeedReader(transport, server.getFeedUrl(), category -> true, null,
+                RetryPolicy.none());
+            Entry entry = reader.getLatestMatchingEntry(generator.getCategory(0));
+
+            DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+            assertEquals(result.getFile().length(), ARTEFACT_SIZE);
+            assertEquals(transport.feeds.get(), 1);
+            assertEquals(transport.tokens.get(), 1);
+            assertEquals(transport.streams, Collections.nCopies(2, entry.getUrl()),
+                "each segment should be requested through the transport");
+        }
+    }
+
+    @Test(description = "A request aborted before it is sent fails once it is sent")
+    public void abortsBeforeSending() throws IOException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                ApacheHttpTransport transport = new ApacheHttpTransport()) {
+            TransportRequest request = new TransportRequest(server.getFeedUrl());
+            request.abort();
+            assertTrue(request.isAborted());
+
+            try (TransportResponse response = transport.fetchFeed(request)) {
+                fail("Expected the aborted request to fail, but received status " + response.getStatus());
+            } catch (IOException e) {
+                // expected
+            }
+            assertEquals(server.getFeedRequests(), 0, "the aborted request should not reach the server");
+        }
+    }
+
+    @Test(description = "The JDK transport can only be selected where Java has the JDK HTTP client")
+    public void jdkTransportNeedsJava11() {
+        assertTrue(TransportType.APACHE.isSupported());
+        if (System.getProperty("java.specification.version").startsWith("1.")) {
+            assertFalse(TransportType.JDK.isSupported(), "Java 8 doesn't have the JDK HTTP client");
+        }
+        // the Java 11 version of the transport is only used from the multi-release jar
+        if (TransportType.JDK.isSupported()) {
+            assertEquals(new SyndicationClient().setTransportType(TransportType.JDK).getTransportType(),
+                TransportType.JDK);
+            return;
+        }
+        try {
+            new SyndicationClient().setTransportType(TransportType.JDK);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("JDK"), e.getMessage());
+        }
+    }
+
+    @BeforeMethod
+    public void cleanOutputDirectory() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+    }
+
+    private static class RecordingTransport implements Transport {
+        final Transport transport;
+        final AtomicInteger feeds = new AtomicInteger();
+        final AtomicInteger tokens = new AtomicInteger();
+        final List<String> streams = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public TransportResponse fetchFeed(TransportRequest request) throws IOException {
+            feeds.incrementAndGet();
+            return transport.fetchFeed(request);
+        }
+
+        @Override
+        public TransportResponse fetchToken(TransportRequest request, Map<String, String> form) throws IOException {
+            tokens.incrementAndGet();
+            return transport.fetchToken(request, form);
+        }
+
+        @Override
+        public TransportResponse openStream(TransportRequest request) throws IOException {
+            streams.add(request.getUri().toString());
+            return transport.openStream(request);
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+/**
+ * Runs against the packaged multi-release jar, so on Java 21 the Java 21
+ * version of {@link VirtualThreads} is loaded rather than the base version the
+ * unit tests see
+ */
+public class VirtualThreadsIT {
+
+    private static final File outDir = new File("target/virtual-threads-it-output");
+    private static final long ARTEFACT_SIZE = 256 * 1024;
+    private static final int SEGMENTS = 4;
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(1)
+        .setArtefactSize(ARTEFACT_SIZE);
+
+    @BeforeClass
+    public void requireJava21() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.") || Integer.parseInt(version) < 21) {
+            throw new SkipException("Virtual threads need Java 21 or later, running on Java " + version);
+        }
+    }
+
+    @Test(description = "The Java 21 version of the virtual threads support is loaded from the jar")
+    public void loadsJava21Version() {
+        URL loaded = VirtualThreads.class.getResource("VirtualThreads.class");
+        assertTrue(loaded.toString().startsWith("jar:"), "should be loaded from the jar, not " + loaded);
+        assertTrue(loaded.toString().endsWith("!/META-INF/versions/21/" + VirtualThreads.class.getName()
+            .replace('.', '/') + ".class"), "should be the Java 21 version, not " + loaded);
+        assertTrue(SyndicationClient.isVirtualThreadsSupported());
+        assertTrue(new SyndicationClient().setVirtualThreads(true).isVirtualThreads());
+    }
+
+    @Test(description = "Download segments are fetched on virtual threads")
+    public void downloadsSegmentsOnVirtualThreads()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException, ReflectiveOperationException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                ThreadRecordingTransport transport = new ThreadRecordingTransport(new ApacheHttpTransport());
+                OAuthTokenProvider tokenProvider = new OAuthTokenProvider(transport,
+                    URI.create(server.getTokenUrl()), "test", "test");
+                NctsFileDownloader downloader = new NctsFileDownloader(tokenProvider, transport,
+                    new TransferEngine()).setSegments(SEGMENTS)
+                        .setMinSegmentedLength(0)
+                        .setVirtualThreads(true)) {
+            Entry entry = new NctsFeedReader(transport, server.getFeedUrl(), category -> true, null,
+                RetryPolicy.none()).getLatestMatchingEntry(generator.getCategory(0));
+
+            DownloadResult result = downloader.downloadEntry(entry, outDir);
+
+            try (InputStream expected = generator.openArtefact(0);
+                    InputStream actual = Files.newInputStream(result.getFile().toPath())) {
+                assertTrue(IOUtils.contentEquals(expected, actual), "the download should match the artefact");
+            }
+            assertEquals(transport.threads.size(), SEGMENTS, "each segment should be requested");
+            List<Thread> segmentThreads = new ArrayList<>();
+            for (Thread thread : transport.threads) {
+                if (thread.getName().startsWith("ncts-segment-")) {
+                    segmentThreads.add(thread);
+                }
+            }
+            assertFalse(segmentThreads.isEmpty(), "segments should run on the segment executor's threads");
+            for (Thread thread : segmentThreads) {
+                assertTrue(isVirtual(thread), thread + " should be a virtual thread");
+            }
+        }
+    }
+
+    @Test(description = "Parallel downloads and verification complete with virtual threads")
+    public void downloadsAndVerifiesInParallel()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        SyntheticFeedGenerator many = new SyntheticFeedGenerator().setEntries(40).setArtefactSize(16 * 1024);
+        try (LocalNctsServer server = new LocalNctsServer(many);
+                SyndicationClient client = new SyndicationClient(server.getFeedUrl(), server.getTokenUrl(), outDir,
+                    "test", "test").setParallelDownloads(true)
+                        .setVirtualThreads(true)
+                        .setMaxConnectionsPerRoute(40)) {
+            Map<String, List<DownloadResult>> results = client.download(false, many.getCategory(0));
+
+            assertEquals(results.get(many.getCategory(0)).size(), 40);
+            assertTrue(client.verify(false, many.getCategory(0)).isValid());
+        }
+    }
+
+    @BeforeMethod
+    public void cleanOutputDirectory() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+    }
+
+    private static boolean isVirtual(Thread thread) throws ReflectiveOperationException {
+        // the tests are compiled for Java 8, which doesn't have Thread.isVirtual()
+        return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+    }
+
+    /**
+     * Records the thread each artefact request is made on
+     */
+    private static class ThreadRecordingTransport implements Transport {
+        final Transport transport;
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+
+        ThreadRecordingTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public TransportResponse fetchFeed(TransportRequest request) throws IOException {
+            return transport.fetchFeed(request);
+        }
+
+        @Override
+        public TransportResponse fetchToken(TransportRequest request, Map<String, String> form) throws IOException {
+            return transport.fetchToken(request, form);
+        }
+
+        @Override
+        public TransportResponse openStream(TransportRequest request) throws IOException {
+            threads.add(Thread.currentThread());
+            return transport.openStream(request);
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import au.gov.digitalhealth.ncts.syndication.client.exception.HashValidationFailureException;
+
+public class VirtualThreadsTest {
+
+    private static final File outDir = new File("target/virtual-threads-output");
+
+    private final SyntheticFeedGenerator generator = new SyntheticFeedGenerator().setEntries(40)
+        .setCategories(2)
+        .setArtefactSize(16 * 1024);
+
+    @Test(description = "Virtual threads can only be enabled where Java supports them")
+    public void virtualThreadsNeedJava21() {
+        boolean java21 = !System.getProperty("java.specification.version").startsWith("1.")
+                && Integer.parseInt(System.getProperty("java.specification.version")) >= 21;
+        if (java21 && SyndicationClient.isVirtualThreadsSupported()) {
+            assertTrue(new SyndicationClient().setVirtualThreads(true).isVirtualThreads());
+            return;
+        }
+        // the Java 21 version of the class is only used from the multi-release jar
+        assertFalse(SyndicationClient.isVirtualThreadsSupported());
+        try {
+            new SyndicationClient().setVirtualThreads(true);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("Java 21"), e.getMessage());
+        }
+        try {
+            new NctsFileDownloader(URI.create("http://localhost/token"), "test", "test").setVirtualThreads(true);
+            fail("Expected an UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("Java 21"), e.getMessage());
+        }
+    }
+
+    @Test(description = "Parallel downloads and verification work in whichever thread mode is supported")
+    public void downloadsAndVerifiesEveryEntryConcurrently()
+            throws IOException, NoSuchAlgorithmException, HashValidationFailureException {
+        try (LocalNctsServer server = new LocalNctsServer(generator);
+                SyndicationClient client = new SyndicationClient(server.getFeedUrl(), server.getTokenUrl(), outDir,
+                    "test", "test")) {
+            client.setParallelDownloads(true)
+                .setVirtualThreads(SyndicationClient.isVirtualThreadsSupported())
+                .setMaxConnectionsPerRoute(40)
+                .setDownloadSegments(2)
+                .setMinSegmentedDownloadLength(0);
+
+            Map<String, List<DownloadResult>> results = client.download(false, generator.getCategory(0),
+                generator.getCategory(1));
+
+            assertEquals(results.values().stream().mapToInt(List::size).sum(), 40);
+            assertTrue(results.values().stream().flatMap(List::stream).allMatch(DownloadResult::isFreshlyDownloaded));
+            assertTrue(client.verify(false, generator.getCategory(0), generator.getCategory(1)).isValid());
+        }
+    }
+
+    @BeforeMethod
+    public void cleanOutputDirectory() throws IOException {
+        outDir.mkdirs();
+        FileUtils.cleanDirectory(outDir);
+    }
+}
@@ -1,6 +1,10 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.stream.Collectors;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -35,6 +39,20 @@ public class DownloadSyndicationArtefactMojo extends AbstractMojo {
     @Parameter
     String clientSecret;
 
+    /**
+     * HTTP client to make requests with, APACHE by default or JDK for the JDK
+     * HTTP client using HTTP/2, which needs Java 11 or later
+     */
+    @Parameter(property = "synd.transport")
+    TransportType transport;
+
+    /**
+     * Base URLs of mirrors to try in order for each entry before the URL in the
+     * feed, http or https URLs or file URLs of directories
+     */
+    @Parameter
+    String[] mirrors;
+
     SyndicationClient client = new SyndicationClient();
 
     @Override
@@ -45,10 +63,22 @@ public class DownloadSyndicationArtefactMojo extends AbstractMojo {
                 .setOutputDirectory(outputDirectory)
                 .setClientId(clientId)
                 .setClientSecret(clientSecret);
+            if (transport != null) {
+                client.setTransportType(transport);
+            }
+            if (mirrors != null) {
+                client.setMirrors(Arrays.stream(mirrors).map(URI::create).collect(Collectors.toList()));
+            }
 
             client.download(latestOnly, categories);
         } catch (Exception e) {
             throw new MojoExecutionException("Failed reading syndication feed", e);
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                getLog().warn("Failed releasing syndication client connections", e);
+            }
         }
     }
 }
@@ -0,0 +1,88 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Verifies previously downloaded syndication artefacts against the feed without
+ * downloading anything
+ */
+@Mojo(name = "verify-syndication-artefact", defaultPhase = LifecyclePhase.VERIFY)
+public class VerifySyndicationArtefactMojo extends AbstractMojo {
+
+    @Parameter(property = "synd.url", defaultValue = SyndicationClient.FEED_URL)
+    String feedUrl;
+
+    @Parameter(property = "synd.token.url", defaultValue = SyndicationClient.TOKEN_URL)
+    String tokenUrl;
+
+    @Parameter(required = true)
+    File outputDirectory;
+
+    @Parameter(required = true)
+    String[] categories;
+
+    @Parameter(defaultValue = "true")
+    boolean latestOnly;
+
+    @Parameter
+    String clientId;
+
+    @Parameter
+    String clientSecret;
+
+    /**
+     * HTTP client to make requests with, APACHE by default or JDK for the JDK
+     * HTTP client using HTTP/2, which needs Java 11 or later
+     */
+    @Parameter(property = "synd.transport")
+    TransportType transport;
+
+    @Parameter(defaultValue = "true")
+    boolean failOnInvalid;
+
+    SyndicationClient client = new SyndicationClient();
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        VerificationReport report;
+        try {
+            client.setFeedUrl(feedUrl)
+                .setTokenUrl(tokenUrl)
+                .setOutputDirectory(outputDirectory)
+                .setClientId(clientId)
+                .setClientSecret(clientSecret);
+            if (transport != null) {
+                client.setTransportType(transport);
+            }
+
+            report = client.verify(latestOnly, categories);
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed verifying syndication artefacts", e);
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                getLog().warn("Failed releasing syndication client connections", e);
+            }
+        }
+
+        if (report.isValid()) {
+            getLog().info(report.toString());
+        } else if (failOnInvalid) {
+            getLog().error(report.toString());
+            throw new MojoFailureException("Syndication artefacts in " + outputDirectory
+                    + " are missing or corrupt, " + report.getMissing().size() + " missing and "
+                    + report.getCorrupt().size() + " corrupt");
+        } else {
+            getLog().warn(report.toString());
+        }
+    }
+}
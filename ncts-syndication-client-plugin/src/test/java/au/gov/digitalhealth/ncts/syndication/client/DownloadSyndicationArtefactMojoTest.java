@@ -1,10 +1,13 @@
 package au.gov.digitalhealth.ncts.syndication.client;
 
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.easymock.EasyMockSupport;
@@ -38,6 +41,8 @@ public class DownloadSyndicationArtefactMojoTest extends EasyMockSupport {
         expect(mojo.client.setClientId(TEST_CLIENT_ID)).andReturn(mojo.client);
         expect(mojo.client.setClientSecret(TEST_SECRET)).andReturn(mojo.client);
         expect(mojo.client.download(false, "foo")).andReturn(null);
+        mojo.client.close();
+        expectLastCall();
         replayAll();
 
         mojo.categories = new String[] { "foo" };
@@ -62,6 +67,8 @@ public class DownloadSyndicationArtefactMojoTest extends EasyMockSupport {
         expect(mojo.client.setClientId(TEST_CLIENT_ID)).andReturn(mojo.client);
         expect(mojo.client.setClientSecret(TEST_SECRET)).andReturn(mojo.client);
         expect(mojo.client.download(true, "foo")).andReturn(null);
+        mojo.client.close();
+        expectLastCall();
         replayAll();
 
         mojo.categories = new String[] { "foo" };
@@ -76,4 +83,61 @@ public class DownloadSyndicationArtefactMojoTest extends EasyMockSupport {
 
         verifyAll();
     }
+
+    @Test(description = "mirrors set")
+    public void mirrorsSet()
+            throws NoSuchAlgorithmException, IOException, HashValidationFailureException, MojoExecutionException {
+        expect(mojo.client.setFeedUrl(TEST_FEED_URL)).andReturn(mojo.client);
+        expect(mojo.client.setTokenUrl(TEST_TOKEN_URL)).andReturn(mojo.client);
+        expect(mojo.client.setOutputDirectory(new File(TEST_OUT_PATH))).andReturn(mojo.client);
+        expect(mojo.client.setClientId(TEST_CLIENT_ID)).andReturn(mojo.client);
+        expect(mojo.client.setClientSecret(TEST_SECRET)).andReturn(mojo.client);
+        expect(mojo.client.setMirrors(Arrays.asList(URI.create("http://mirror:8080/artefacts"),
+            URI.create("file:/shared/ncts")))).andReturn(mojo.client);
+        expect(mojo.client.download(true, "foo")).andReturn(null);
+        mojo.client.close();
+        expectLastCall();
+        replayAll();
+
+        mojo.categories = new String[] { "foo" };
+        mojo.feedUrl = TEST_FEED_URL;
+        mojo.tokenUrl = TEST_TOKEN_URL;
+        mojo.outputDirectory = new File(TEST_OUT_PATH);
+        mojo.clientId = TEST_CLIENT_ID;
+        mojo.clientSecret = TEST_SECRET;
+        mojo.latestOnly = true;
+        mojo.mirrors = new String[] { "http://mirror:8080/artefacts", "file:/shared/ncts" };
+
+        mojo.execute();
+
+        verifyAll();
+    }
+
+    @Test(description = "transport selected")
+    public void transportSelected()
+            throws NoSuchAlgorithmException, IOException, HashValidationFailureException, MojoExecutionException {
+        expect(mojo.client.setFeedUrl(TEST_FEED_URL)).andReturn(mojo.client);
+        expect(mojo.client.setTokenUrl(TEST_TOKEN_URL)).andReturn(mojo.client);
+        expect(mojo.client.setOutputDirectory(new File(TEST_OUT_PATH))).andReturn(mojo.client);
+        expect(mojo.client.setClientId(TEST_CLIENT_ID)).andReturn(mojo.client);
+        expect(mojo.client.setClientSecret(TEST_SECRET)).andReturn(mojo.client);
+        expect(mojo.client.setTransportType(TransportType.JDK)).andReturn(mojo.client);
+        expect(mojo.client.download(true, "foo")).andReturn(null);
+        mojo.client.close();
+        expectLastCall();
+        replayAll();
+
+        mojo.categories = new String[] { "foo" };
+        mojo.feedUrl = TEST_FEED_URL;
+        mojo.tokenUrl = TEST_TOKEN_URL;
+        mojo.outputDirectory = new File(TEST_OUT_PATH);
+        mojo.clientId = TEST_CLIENT_ID;
+        mojo.clientSecret = TEST_SECRET;
+        mojo.latestOnly = true;
+        mojo.transport = TransportType.JDK;
+
+        mojo.execute();
+
+        verifyAll();
+    }
 }
@@ -0,0 +1,101 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.easymock.EasyMockSupport;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class VerifySyndicationArtefactMojoTest extends EasyMockSupport {
+    private static final String TEST_SECRET = "clientSecret";
+    private static final String TEST_OUT_PATH = "/tmp";
+    private static final String TEST_CLIENT_ID = "clientid";
+    private static final String TEST_TOKEN_URL = "http://token.url";
+    private static final String TEST_FEED_URL = "http://feed.url";
+
+    VerifySyndicationArtefactMojo mojo;
+
+    @BeforeMethod
+    public void setUp() {
+        mojo = new VerifySyndicationArtefactMojo();
+        mojo.client = mock(SyndicationClient.class);
+        mojo.categories = new String[] { "foo" };
+        mojo.feedUrl = TEST_FEED_URL;
+        mojo.tokenUrl = TEST_TOKEN_URL;
+        mojo.outputDirectory = new File(TEST_OUT_PATH);
+        mojo.clientId = TEST_CLIENT_ID;
+        mojo.clientSecret = TEST_SECRET;
+        mojo.latestOnly = true;
+        mojo.failOnInvalid = true;
+        resetAll();
+    }
+
+    @Test(description = "valid artefacts")
+    public void validArtefacts()
+            throws NoSuchAlgorithmException, IOException, MojoExecutionException, MojoFailureException {
+        expectSettings();
+        expect(mojo.client.verify(true, "foo")).andReturn(new VerificationReport(Collections.emptyMap()));
+        mojo.client.close();
+        expectLastCall();
+        replayAll();
+
+        mojo.execute();
+
+        verifyAll();
+    }
+
+    @Test(description = "missing artefact", expectedExceptions = { MojoFailureException.class })
+    public void missingArtefact()
+            throws NoSuchAlgorithmException, IOException, MojoExecutionException, MojoFailureException {
+        expectSettings();
+        expect(mojo.client.verify(true, "foo")).andReturn(missingReport());
+        mojo.client.close();
+        expectLastCall();
+        replayAll();
+
+        try {
+            mojo.execute();
+        } finally {
+            verifyAll();
+        }
+    }
+
+    @Test(description = "missing artefact without failing the build")
+    public void missingArtefactNotFailing()
+            throws NoSuchAlgorithmException, IOException, MojoExecutionException, MojoFailureException {
+        expectSettings();
+        expect(mojo.client.verify(true, "foo")).andReturn(missingReport());
+        mojo.client.close();
+        expectLastCall();
+        replayAll();
+
+        mojo.failOnInvalid = false;
+        mojo.execute();
+
+        verifyAll();
+    }
+
+    private void expectSettings() {
+        expect(mojo.client.setFeedUrl(TEST_FEED_URL)).andReturn(mojo.client);
+        expect(mojo.client.setTokenUrl(TEST_TOKEN_URL)).andReturn(mojo.client);
+        expect(mojo.client.setOutputDirectory(new File(TEST_OUT_PATH))).andReturn(mojo.client);
+        expect(mojo.client.setClientId(TEST_CLIENT_ID)).andReturn(mojo.client);
+        expect(mojo.client.setClientSecret(TEST_SECRET)).andReturn(mojo.client);
+    }
+
+    private VerificationReport missingReport() {
+        Entry entry = new Entry("id", "sha256", "http://feed.url/missing.zip", 123, "contentItemIdentifier", "1",
+            "foo", "categoryScheme");
+        VerificationResult missing = new VerificationResult(entry, new File(TEST_OUT_PATH, "missing.zip"),
+            VerificationResult.Status.MISSING, -1, null);
+        return new VerificationReport(Collections.singletonMap("foo", Collections.singletonList(missing)));
+    }
+}
@@ -0,0 +1,373 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the NCTS on an ephemeral port, serving an access
+ * token, a feed from a {@link SyntheticFeedGenerator} and the feed's artefacts,
+ * honouring single byte range requests for the artefacts.
+ * <p>
+ * The feed is generated into a temporary file when the server starts, and
+ * artefacts are generated as they are requested unless they are cached, see
+ * {@link #setCacheArtefacts(boolean)}.
+ * <p>
+ * Faults can be queued for each kind of request to test how clients cope with
+ * them - see {@link #addTokenFault(Fault)}, {@link #addFeedFault(Fault)} and
+ * {@link #addArtefactFault(Fault)}. Each request takes the next fault queued
+ * for its kind, if there is one, and is otherwise served normally.
+ */
+public class LocalNctsServer implements Closeable {
+
+    public static final String ACCESS_TOKEN = "synthetic-token";
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    /**
+     * Longest time in milliseconds a stalled response waits before the
+     * connection is dropped
+     */
+    private static final long STALL_LIMIT = 60000;
+
+    private final SyntheticFeedGenerator generator;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final File feed;
+    private final AtomicInteger feedRequests = new AtomicInteger();
+    private final AtomicInteger artefactRequests = new AtomicInteger();
+    private final List<String> artefactRanges = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<Integer, byte[]> artefactCache = new ConcurrentHashMap<>();
+    private final Queue<Fault> tokenFaults = new ConcurrentLinkedQueue<>();
+    private final Queue<Fault> feedFaults = new ConcurrentLinkedQueue<>();
+    private final Queue<Fault> artefactFaults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile boolean cacheArtefacts;
+
+    /**
+     * A fault injected into the response to a request
+     */
+    public static final class Fault {
+        private final int status;
+        private final String retryAfter;
+        private final long bodyBytes;
+        private final boolean stall;
+        private final long delay;
+
+        private Fault(int status, String retryAfter, long bodyBytes, boolean stall, long delay) {
+            this.status = status;
+            this.retryAfter = retryAfter;
+            this.bodyBytes = bodyBytes;
+            this.stall = stall;
+            this.delay = delay;
+        }
+
+        /**
+         * @param status status to respond with instead of serving the request
+         * @param retryAfter value of the <code>Retry-After</code> header, or
+         *            null for no header
+         * @return a fault responding with the status and no body
+         */
+        public static Fault status(int status, String retryAfter) {
+            return new Fault(status, retryAfter, -1, false, 0);
+        }
+
+        /**
+         * @param bodyBytes number of bytes of the body to send
+         * @return a fault closing the connection after sending part of the body
+         */
+        public static Fault reset(long bodyBytes) {
+            return new Fault(0, null, bodyBytes, false, 0);
+        }
+
+        /**
+         * @param bodyBytes number of bytes of the body to send
+         * @return a fault sending nothing more after part of the body until the
+         *         client gives up or the server is closed
+         */
+        public static Fault stall(long bodyBytes) {
+            return new Fault(0, null, bodyBytes, true, 0);
+        }
+
+        /**
+         * @param delay time in milliseconds to wait before responding
+         * @return a fault sending the whole response once the delay has passed
+         */
+        public static Fault delay(long delay) {
+            return new Fault(0, null, Long.MAX_VALUE, false, delay);
+        }
+    }
+
+    /**
+     * Generates the feed and starts serving it
+     *
+     * @param generator generator of the feed and its artefacts
+     * @throws IOException if the feed cannot be generated or the server cannot
+     *             be started
+     */
+    public LocalNctsServer(SyntheticFeedGenerator generator) throws IOException {
+        this.generator = generator;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        feed = generator.writeFeed(File.createTempFile("synthetic-feed-", ".xml"), getBaseUrl() + "/artefacts");
+        server.createContext("/token", this::serveToken);
+        server.createContext("/syndication.xml", this::serveFeed);
+        server.createContext("/artefacts/", this::serveArtefact);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String getFeedUrl() {
+        return getBaseUrl() + "/syndication.xml";
+    }
+
+    public String getTokenUrl() {
+        return getBaseUrl() + "/token";
+    }
+
+    /**
+     * Sets whether artefacts are kept in memory once generated, so serving them
+     * again costs no more than serving a file. Defaults to false.
+     *
+     * @param cacheArtefacts true to keep generated artefacts in memory
+     * @return this server
+     */
+    public LocalNctsServer setCacheArtefacts(boolean cacheArtefacts) {
+        this.cacheArtefacts = cacheArtefacts;
+        if (!cacheArtefacts) {
+            artefactCache.clear();
+        }
+        return this;
+    }
+
+    /**
+     * Queues a fault for a later token request
+     *
+     * @param fault the fault
+     * @return this server
+     */
+    public LocalNctsServer addTokenFault(Fault fault) {
+        tokenFaults.add(fault);
+        return this;
+    }
+
+    /**
+     * Queues a fault for a later feed request
+     *
+     * @param fault the fault
+     * @return this server
+     */
+    public LocalNctsServer addFeedFault(Fault fault) {
+        feedFaults.add(fault);
+        return this;
+    }
+
+    /**
+     * Queues a fault for a later artefact request
+     *
+     * @param fault the fault
+     * @return this server
+     */
+    public LocalNctsServer addArtefactFault(Fault fault) {
+        artefactFaults.add(fault);
+        return this;
+    }
+
+    /**
+     * @return number of requests received for a token
+     */
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    /**
+     * @return number of requests received for the feed
+     */
+    public int getFeedRequests() {
+        return feedRequests.get();
+    }
+
+    /**
+     * @return number of requests received for artefacts, counting each range
+     *         separately
+     */
+    public int getArtefactRequests() {
+        return artefactRequests.get();
+    }
+
+    /**
+     * @return the <code>Range</code> header of each request received for an
+     *         artefact in the order received, null where the whole artefact was
+     *         requested
+     */
+    public List<String> getArtefactRanges() {
+        return new ArrayList<>(artefactRanges);
+    }
+
+    private void serveToken(HttpExchange exchange) throws IOException {
+        tokenRequests.incrementAndGet();
+        byte[] token = ("{\"access_token\":\"" + ACCESS_TOKEN + "\",\"expires_in\":\"3600\"}")
+            .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        Fault fault = tokenFaults.poll();
+        if (fault != null) {
+            injectFault(exchange, fault, 200, token.length, new ByteArrayInputStream(token));
+            return;
+        }
+        exchange.sendResponseHeaders(200, token.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(token);
+        }
+    }
+
+    private void serveFeed(HttpExchange exchange) throws IOException {
+        feedRequests.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", "application/atom+xml");
+        Fault fault = feedFaults.poll();
+        if (fault != null) {
+            try (InputStream content = Files.newInputStream(feed.toPath())) {
+                injectFault(exchange, fault, 200, feed.length(), content);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, feed.length());
+        try (OutputStream out = exchange.getResponseBody()) {
+            Files.copy(feed.toPath(), out);
+        }
+    }
+
+    private void serveArtefact(HttpExchange exchange) throws IOException {
+        artefactRequests.incrementAndGet();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        artefactRanges.add(range);
+        Fault fault = artefactFaults.poll();
+        String path = exchange.getRequestURI().getPath();
+        int entry = generator.getEntry(path.substring(path.lastIndexOf('/') + 1));
+        if (entry < 0) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        long length = generator.getArtefactSize();
+        long start = 0;
+        long end = length - 1;
+        int status = 200;
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (matcher != null && matcher.matches()) {
+            start = Long.parseLong(matcher.group(1));
+            if (!matcher.group(2).isEmpty()) {
+                end = Math.min(Long.parseLong(matcher.group(2)), length - 1);
+            }
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/zip");
+        if (fault != null) {
+            try (InputStream content = generator.openArtefact(entry)) {
+                IOUtils.skipFully(content, start);
+                injectFault(exchange, fault, status, end - start + 1, content);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(status, end - start + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (cacheArtefacts) {
+                byte[] content = artefactCache.computeIfAbsent(entry, this::generateArtefact);
+                out.write(content, (int) start, (int) (end - start + 1));
+            } else {
+                try (InputStream content = generator.openArtefact(entry)) {
+                    IOUtils.skipFully(content, start);
+                    IOUtils.copyLarge(content, out, 0, end - start + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the fault's delay, then responds with its status, or sends part
+     * of the content and then drops the connection or stalls
+     */
+    private void injectFault(HttpExchange exchange, Fault fault, int status, long length, InputStream content)
+            throws IOException {
+        if (fault.delay > 0) {
+            try {
+                closed.await(fault.delay, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (fault.bodyBytes < 0) {
+            if (fault.retryAfter != null) {
+                exchange.getResponseHeaders().set("Retry-After", fault.retryAfter);
+            }
+            exchange.sendResponseHeaders(fault.status, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, length);
+        OutputStream out = exchange.getResponseBody();
+        IOUtils.copyLarge(content, out, 0, Math.min(fault.bodyBytes, length));
+        out.flush();
+        if (fault.stall) {
+            try {
+                closed.await(STALL_LIMIT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // closing the exchange before the whole body is sent drops the connection
+        exchange.close();
+    }
+
+    private byte[] generateArtefact(int entry) {
+        try (InputStream content = generator.openArtefact(entry)) {
+            return IOUtils.toByteArray(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops the server and deletes the generated feed
+     */
+    @Override
+    public void close() throws IOException {
+        closed.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+        Files.deleteIfExists(feed.toPath());
+    }
+}
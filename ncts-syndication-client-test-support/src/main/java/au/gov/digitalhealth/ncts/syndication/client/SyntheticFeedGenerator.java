@@ -0,0 +1,283 @@
+package au.gov.digitalhealth.ncts.syndication.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Generates valid NCTS syndication feeds of any size, and the artefacts their
+ * entries link to, for driving the client at production scale in tests and
+ * benchmarks, for example with {@link LocalNctsServer}.
+ * <p>
+ * Entries are spread evenly across the categories, each category being one
+ * content item whose entries have increasing versions in the configured
+ * format. Each entry has an artefact of the configured size whose content is
+ * generated from the seed and entry number, so artefacts don't need to be kept
+ * in memory or on disk and the feed always has their correct
+ * <code>sha256Hash</code> and <code>length</code>.
+ */
+public class SyntheticFeedGenerator {
+
+    public static final String CATEGORY_PREFIX = "SCT_RF2_SYNTHETIC_";
+    public static final String NCTS_NAMESPACE =
+            "http://ns.electronichealth.net.au/ncts/syndication/asf/extensions/1.0.0";
+    public static final String SCHEME = "http://ns.electronichealth.net.au/ncts/syndication/asf/scheme/1.0.0";
+
+    private static final String MODULE = "32506021000036107";
+    private static final int BLOCK_SIZE = 8192;
+    private static final String RIGHTS = "Copyright 2018 Australian Digital Health Agency. This content contains "
+            + "information which is protected by copyright. All Rights Reserved.";
+
+    /**
+     * Formats of content item version supported by the client
+     */
+    public enum VersionFormat {
+        /** SNOMED CT version URIs with increasing effective times */
+        SNOMED {
+            @Override
+            String version(int category, int number) {
+                return "http://snomed.info/sct/" + module(category) + "/version/" + (20000101 + number);
+            }
+        },
+        /**
+         * whole numbers, padded with leading zeros to the same length so they
+         * order the same as strings and by value
+         */
+        NUMBER {
+            @Override
+            String version(int category, int number) {
+                return String.format("%010d", number);
+            }
+        },
+        /** semantic versions, every third one a pre-release */
+        SEMANTIC {
+            @Override
+            String version(int category, int number) {
+                return (1 + number / 10000) + "." + (number / 100 % 100) + "." + (number % 100)
+                        + (number % 3 == 0 ? "-beta" : "");
+            }
+        };
+
+        abstract String version(int category, int number);
+    }
+
+    private int entries = 10;
+    private int categories = 1;
+    private VersionFormat versionFormat = VersionFormat.SNOMED;
+    private long artefactSize = 1024;
+    private long seed;
+
+    /**
+     * Writes the feed, linking each entry to its artefact under the specified
+     * base URL, see {@link #getArtefactName(int)}
+     *
+     * @param file file to write the feed to
+     * @param artefactBaseUrl URL the artefacts are served under
+     * @return the file written
+     * @throws IOException if the feed cannot be written
+     */
+    public File writeFeed(File file, String artefactBaseUrl) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed xmlns=\"http://www.w3.org/2005/Atom\""
+                    + " xmlns:ncts=\"" + NCTS_NAMESPACE + "\">\n<title>Synthetic Syndication Feed</title>\n"
+                    + "<id>urn:uuid:synthetic-feed-" + seed + "</id>\n<updated>2018-04-19T06:50:11Z</updated>\n");
+            for (int i = 0; i < entries; i++) {
+                writer.write(entry(i, artefactBaseUrl));
+            }
+            writer.write("</feed>\n");
+        }
+        return file;
+    }
+
+    /**
+     * Writes every entry's artefact to the specified directory, named by
+     * {@link #getArtefactName(int)}
+     *
+     * @param directory directory to write the artefacts to
+     * @throws IOException if an artefact cannot be written
+     */
+    public void writeArtefacts(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        for (int i = 0; i < entries; i++) {
+            try (InputStream content = openArtefact(i)) {
+                Files.copy(content, new File(directory, getArtefactName(i)).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * @param entry number of the entry, from 0
+     * @return a new stream of the entry's artefact content
+     */
+    public InputStream openArtefact(int entry) {
+        return new GeneratedContent(new Random(seed * 31 + entry), artefactSize);
+    }
+
+    /**
+     * @param entry number of the entry, from 0
+     * @return SHA256 of the entry's artefact in hexadecimal
+     * @throws IOException never, the content is generated in memory
+     */
+    public String getArtefactSha256(int entry) throws IOException {
+        try (InputStream content = openArtefact(entry)) {
+            return DigestUtils.sha256Hex(content);
+        }
+    }
+
+    /**
+     * @param entry number of the entry, from 0
+     * @return file name of the entry's artefact
+     */
+    public String getArtefactName(int entry) {
+        return getCategory(entry % categories).toLowerCase() + "-" + entry / categories + ".zip";
+    }
+
+    /**
+     * @param artefactName file name of an artefact
+     * @return the entry number the artefact name belongs to, or -1 if it isn't
+     *         the name of one of the artefacts
+     */
+    public int getEntry(String artefactName) {
+        for (int category = 0; category < categories; category++) {
+            String prefix = getCategory(category).toLowerCase() + "-";
+            if (artefactName.startsWith(prefix) && artefactName.endsWith(".zip")) {
+                try {
+                    int entry = Integer.parseInt(artefactName.substring(prefix.length(),
+                        artefactName.length() - ".zip".length())) * categories + category;
+                    return entry < entries ? entry : -1;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param category number of the category, from 0
+     * @return the category's term
+     */
+    public String getCategory(int category) {
+        return CATEGORY_PREFIX + category;
+    }
+
+    /**
+     * @param category number of the category, from 0
+     * @return the entry number of the category's latest version
+     */
+    public int getLatestEntry(int category) {
+        return (entries - 1 - category) / categories * categories + category;
+    }
+
+    private String entry(int i, String artefactBaseUrl) throws IOException {
+        int category = i % categories;
+        return "<entry>\n<title>Synthetic entry " + i + "</title>\n"
+                + "<link rel=\"alternate\" type=\"application/zip\" href=\"" + artefactBaseUrl + "/"
+                + getArtefactName(i) + "\" length=\"" + artefactSize + "\" ncts:sha256Hash=\""
+                + getArtefactSha256(i) + "\"/>\n"
+                + "<category term=\"" + getCategory(category) + "\" scheme=\"" + SCHEME + "\"/>\n"
+                + "<author><name>Australian Digital Health Agency</name><uri>http://www.digitalhealth.gov.au</uri>"
+                + "</author>\n<id>urn:uuid:synthetic-" + seed + "-" + i + "</id>\n<rights>" + RIGHTS + "</rights>\n"
+                + "<updated>2018-04-19T06:50:11Z</updated>\n<summary>Synthetic entry " + i + "</summary>\n"
+                + "<ncts:contentItemIdentifier>http://snomed.info/sct/" + module(category)
+                + "</ncts:contentItemIdentifier>\n<ncts:contentItemVersion>"
+                + versionFormat.version(category, i / categories) + "</ncts:contentItemVersion>\n</entry>\n";
+    }
+
+    private static String module(int category) {
+        return MODULE + category;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public SyntheticFeedGenerator setEntries(int entries) {
+        this.entries = entries;
+        return this;
+    }
+
+    public int getCategories() {
+        return categories;
+    }
+
+    public SyntheticFeedGenerator setCategories(int categories) {
+        if (categories < 1) {
+            throw new IllegalArgumentException("Categories must be at least 1 but was " + categories);
+        }
+        this.categories = categories;
+        return this;
+    }
+
+    public VersionFormat getVersionFormat() {
+        return versionFormat;
+    }
+
+    public SyntheticFeedGenerator setVersionFormat(VersionFormat versionFormat) {
+        this.versionFormat = versionFormat;
+        return this;
+    }
+
+    public long getArtefactSize() {
+        return artefactSize;
+    }
+
+    public SyntheticFeedGenerator setArtefactSize(long artefactSize) {
+        this.artefactSize = artefactSize;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public SyntheticFeedGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Pseudo-random content generated a block at a time
+     */
+    private static class GeneratedContent extends InputStream {
+        private final Random random;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private long remaining;
+        private int position = BLOCK_SIZE;
+
+        GeneratedContent(Random random, long length) {
+            this.random = random;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining == 0) {
+                return -1;
+            }
+            if (position == BLOCK_SIZE) {
+                random.nextBytes(block);
+                position = 0;
+            }
+            int count = (int) Math.min(Math.min(length, BLOCK_SIZE - position), remaining);
+            System.arraycopy(block, position, buffer, offset, count);
+            position += count;
+            remaining -= count;
+            return count;
+        }
+    }
+}